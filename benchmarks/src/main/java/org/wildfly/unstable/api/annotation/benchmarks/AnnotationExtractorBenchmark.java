@@ -0,0 +1,73 @@
+package org.wildfly.unstable.api.annotation.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wildfly.unstable.api.annotation.benchmarks.fixtures.Fixtures;
+import org.wildfly.unstable.api.annotation.classpath.index.JarAnnotationIndex;
+import org.wildfly.unstable.api.annotation.classpath.index.JarAnnotationIndexer;
+import org.wildfly.unstable.api.annotation.classpath.index.corpus.CorpusGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares finding the annotations in a jar by building a Jandex index with reading the annotation attributes
+ * directly, see {@link JarAnnotationIndexer#setUseStreamingExtractor(boolean)}. The API jar of a corpus generated by
+ * {@link CorpusGenerator} is used, since all of its classes contain the annotation and so get past the constant pool
+ * prefilter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class AnnotationExtractorBenchmark {
+
+    @Param({"100", "1000"})
+    public int apiClasses;
+
+    private Fixtures fixtures;
+    private File jar;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        fixtures = Fixtures.create();
+        jar = new CorpusGenerator()
+                .setClasses(0)
+                .setApiClasses(apiClasses)
+                .generate(fixtures.getDirectory().resolve("corpus"))
+                .getApiJar()
+                .toFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fixtures.close();
+    }
+
+    @Benchmark
+    public JarAnnotationIndex jandex() throws IOException {
+        return new JarAnnotationIndexer(jar, CorpusGenerator.ANNOTATION, Collections.emptySet()).scanForAnnotation();
+    }
+
+    @Benchmark
+    public JarAnnotationIndex streaming() throws IOException {
+        JarAnnotationIndexer indexer = new JarAnnotationIndexer(jar, CorpusGenerator.ANNOTATION, Collections.emptySet());
+        indexer.setUseStreamingExtractor(true);
+        return indexer.scanForAnnotation();
+    }
+}
@@ -0,0 +1,29 @@
+package org.wildfly.unstable.api.annotation.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks in this module. This accepts the same arguments as the standard JMH main class, e.g. a regular
+ * expression to select the benchmarks to run, but always adds the GC profiler. That reports the number of bytes
+ * allocated per operation ({@code gc.alloc.rate.norm}) as well as the allocation rate and GC counts and times,
+ * so allocation regressions show up alongside the timings.
+ *
+ * Build with {@code mvn package -pl benchmarks -am}, and run with {@code java -jar benchmarks/target/benchmarks.jar}.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+                .parent(commandLineOptions)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,82 @@
+package org.wildfly.unstable.api.annotation.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex;
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex.ByteArrayKey;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures hashing and comparing {@link ByteArrayKey}s. The bytes are in the modified UTF-8 format used in class
+ * files, as they would be when looking up the references found in the constant pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ByteArrayKeyBenchmark {
+    private static final String CLASS_NAME = "org/wildfly/unstable/api/annotation/benchmarks/fixtures/ApiWithUnstableMembers";
+    private static final String OTHER_CLASS_NAME = "org/wildfly/unstable/api/annotation/benchmarks/fixtures/ApiWithUnstableMembert";
+
+    private byte[] bytes;
+    private int length;
+    private ByteArrayKey key;
+    private ByteArrayKey equalKey;
+    private ByteArrayKey otherKey;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bout)) {
+            out.writeUTF(CLASS_NAME);
+            out.writeUTF(CLASS_NAME);
+            out.writeUTF(OTHER_CLASS_NAME);
+        }
+        bytes = bout.toByteArray();
+        length = bytes.length / 3;
+        key = ByteArrayKey.create(bytes, 0, length);
+        equalKey = ByteArrayKey.create(bytes, length, length);
+        otherKey = ByteArrayKey.create(bytes, length * 2, length);
+    }
+
+    /**
+     * Hashes the bytes in the same way as a key does, which is what happens for each constant pool entry looked up
+     */
+    @Benchmark
+    public int hashCodeUncached() {
+        return RuntimeIndex.hashUtf8(bytes, 0);
+    }
+
+    @Benchmark
+    public int hashCodeCached() {
+        return key.hashCode();
+    }
+
+    @Benchmark
+    public boolean equalsEqual() {
+        return key.equals(equalKey);
+    }
+
+    /**
+     * The keys have the same length and only differ in the last byte, which is the worst case for a miss
+     */
+    @Benchmark
+    public boolean equalsDifferent() {
+        return key.equals(otherKey);
+    }
+}
@@ -0,0 +1,60 @@
+package org.wildfly.unstable.api.annotation.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wildfly.unstable.api.annotation.benchmarks.fixtures.Fixtures;
+import org.wildfly.unstable.api.annotation.benchmarks.fixtures.HitHeavyUser;
+import org.wildfly.unstable.api.annotation.benchmarks.fixtures.MissHeavyUser;
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ClassInfoScanner;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ClassInfoScanner#scanClass(byte[], int, int)} for a class where most references are to indexed
+ * members ({@code hit}), and for one where none are ({@code miss}). The latter is the common case, and should not
+ * allocate, i.e. {@code gc.alloc.rate.norm} should be close to zero with {@code -p references=miss}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ClassInfoScannerBenchmark {
+
+    @Param({"hit", "miss"})
+    public String references;
+
+    private RuntimeIndex runtimeIndex;
+    private byte[] classBytes;
+    private ClassInfoScanner scanner;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        try (Fixtures fixtures = Fixtures.create()) {
+            runtimeIndex = RuntimeIndex.load(fixtures.getIndex("txt"));
+        }
+        classBytes = Fixtures.getClassBytes(references.equals("hit") ? HitHeavyUser.class : MissHeavyUser.class);
+        // The scanner is reused as it would be when scanning a deployment. The usages found are kept in a set, so
+        // scanning the same class again does not make it grow.
+        scanner = new ClassInfoScanner(runtimeIndex);
+    }
+
+    @Benchmark
+    public ClassInfoScanner scanClass() throws IOException {
+        scanner.scanClass(classBytes, 0, classBytes.length);
+        return scanner;
+    }
+}
@@ -0,0 +1,176 @@
+package org.wildfly.unstable.api.annotation.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wildfly.unstable.api.annotation.benchmarks.fixtures.Fixtures;
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex;
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex.ByteArrayKey;
+import org.wildfly.unstable.api.annotation.classpath.index.corpus.Corpus;
+import org.wildfly.unstable.api.annotation.classpath.index.corpus.CorpusGenerator;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.BytecodeTags;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures looking up the field and method references in the constant pools of a corpus generated by
+ * {@link CorpusGenerator}, for different ratios of hits. Half of the misses are references to library classes, which
+ * the class name filter of the {@link RuntimeIndex} rejects, and the other half are references to members of the API
+ * which are not annotated, which pass it. {@code filtered} uses {@link RuntimeIndex#getAnnotationMaskForMethod(byte[], int, int, int)}
+ * etc., as {@code ClassInfoScanner} does, while {@code unfiltered} looks up the same hash tables with
+ * {@link ByteArrayKey}s. The score is the time to look up one reference.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ClassNameFilterBenchmark {
+    private static final int REFERENCES = 10000;
+
+    @Param({"0", "0.05", "0.5"})
+    public double hitRatio;
+
+    private RuntimeIndex runtimeIndex;
+    private References refs;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        try (Fixtures fixtures = Fixtures.create()) {
+            Corpus corpus = new CorpusGenerator()
+                    .setHitRatio(hitRatio)
+                    .generate(fixtures.getDirectory().resolve("corpus"));
+            Path index = fixtures.getDirectory().resolve("corpus.txt");
+            corpus.getOverallIndex().save(index);
+            runtimeIndex = RuntimeIndex.load(index);
+            refs = new References();
+            for (byte[] bytes : corpus.getUserClasses()) {
+                if (refs.count == REFERENCES) {
+                    break;
+                }
+                refs.addClass(bytes);
+            }
+            if (refs.count < REFERENCES) {
+                throw new IllegalStateException("Only " + refs.count + " references in the corpus");
+            }
+            refs.complete();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REFERENCES)
+    public long filtered() {
+        long result = 0;
+        for (int i = 0; i < REFERENCES; i++) {
+            if (refs.descriptorOffsets[i] < 0) {
+                result |= runtimeIndex.getAnnotationMaskForField(refs.bytes, refs.classOffsets[i], refs.nameOffsets[i]);
+            } else {
+                result |= runtimeIndex.getAnnotationMaskForMethod(refs.bytes, refs.classOffsets[i], refs.nameOffsets[i], refs.descriptorOffsets[i]);
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REFERENCES)
+    public long unfiltered() {
+        long result = 0;
+        for (int i = 0; i < REFERENCES; i++) {
+            // Create the keys each time, so that their hashes are calculated each time as in the filtered lookups
+            ByteArrayKey classKey = refs.key(refs.classOffsets[i]);
+            ByteArrayKey nameKey = refs.key(refs.nameOffsets[i]);
+            if (refs.descriptorOffsets[i] < 0) {
+                if (runtimeIndex.getAnnotationsForField(classKey, nameKey) != null) {
+                    result++;
+                }
+            } else if (runtimeIndex.getAnnotationsForMethod(classKey, nameKey, refs.key(refs.descriptorOffsets[i])) != null) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The field and method references found in the constant pools. The UTF8 entries of all the classes are copied into
+     * one array, and the offsets of the class name, name and descriptor (or -1 for fields) of each reference are kept.
+     */
+    private static class References {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] bytes;
+        int count;
+        final int[] classOffsets = new int[REFERENCES];
+        final int[] nameOffsets = new int[REFERENCES];
+        final int[] descriptorOffsets = new int[REFERENCES];
+
+        void addClass(byte[] clazz) throws IOException {
+            int poolSize = readShort(clazz, 8);
+            int[] tags = new int[poolSize];
+            int[] offsets = new int[poolSize];
+            int pos = 10;
+            for (int i = 1; i < poolSize; i++) {
+                int tag = clazz[pos] & 0xff;
+                tags[i] = tag;
+                offsets[i] = pos + 1;
+                int length = BytecodeTags.constantLength(clazz, pos + 1, clazz.length, tag);
+                if (length < 0) {
+                    throw new IOException("Unknown constant pool tag " + tag);
+                }
+                pos += 1 + length;
+                if (tag == BytecodeTags.CONSTANT_LONG || tag == BytecodeTags.CONSTANT_DOUBLE) {
+                    i++;
+                }
+            }
+
+            // Copy the UTF8 entries, and remember where they ended up
+            int base = out.size();
+            int[] utfOffsets = new int[poolSize];
+            for (int i = 1; i < poolSize; i++) {
+                if (tags[i] == BytecodeTags.CONSTANT_UTF8) {
+                    int length = 2 + readShort(clazz, offsets[i]);
+                    utfOffsets[i] = base;
+                    out.write(clazz, offsets[i], length);
+                    base += length;
+                }
+            }
+
+            for (int i = 1; i < poolSize && count < REFERENCES; i++) {
+                if (tags[i] == BytecodeTags.CONSTANT_FIELDREF || tags[i] == BytecodeTags.CONSTANT_METHODREF
+                        || tags[i] == BytecodeTags.CONSTANT_INTERFACEMETHODREF) {
+                    int classUtf = readShort(clazz, offsets[readShort(clazz, offsets[i])]);
+                    int nameAndType = readShort(clazz, offsets[i] + 2);
+                    classOffsets[count] = utfOffsets[classUtf];
+                    nameOffsets[count] = utfOffsets[readShort(clazz, offsets[nameAndType])];
+                    descriptorOffsets[count] = tags[i] == BytecodeTags.CONSTANT_FIELDREF
+                            ? -1 : utfOffsets[readShort(clazz, offsets[nameAndType] + 2)];
+                    count++;
+                }
+            }
+        }
+
+        void complete() {
+            bytes = out.toByteArray();
+        }
+
+        ByteArrayKey key(int offset) {
+            return ByteArrayKey.create(bytes, offset, 2 + readShort(bytes, offset));
+        }
+
+        private static int readShort(byte[] bytes, int offset) {
+            return ((bytes[offset] & 0xff) << 8) | (bytes[offset + 1] & 0xff);
+        }
+    }
+}
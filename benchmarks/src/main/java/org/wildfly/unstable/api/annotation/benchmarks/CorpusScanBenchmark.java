@@ -0,0 +1,75 @@
+package org.wildfly.unstable.api.annotation.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wildfly.unstable.api.annotation.benchmarks.fixtures.Fixtures;
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex;
+import org.wildfly.unstable.api.annotation.classpath.index.corpus.Corpus;
+import org.wildfly.unstable.api.annotation.classpath.index.corpus.CorpusGenerator;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ClassInfoScanner;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ClassInfoScanner#scanClass(byte[], int, int)} over a corpus generated by {@link CorpusGenerator},
+ * for different hit ratios and constant pool sizes. The corpus is the same for the same parameters, so the results
+ * can be compared across commits and machines. The score is the time to scan one class.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CorpusScanBenchmark {
+    private static final int CLASSES = 1000;
+
+    @Param({"0", "0.05", "0.5"})
+    public double hitRatio;
+
+    @Param({"100", "1000"})
+    public int constantPoolSize;
+
+    private List<byte[]> classes;
+    private ClassInfoScanner scanner;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        RuntimeIndex runtimeIndex;
+        try (Fixtures fixtures = Fixtures.create()) {
+            Corpus corpus = new CorpusGenerator()
+                    .setClasses(CLASSES)
+                    .setConstantPoolSize(constantPoolSize)
+                    .setHitRatio(hitRatio)
+                    .generate(fixtures.getDirectory().resolve("corpus"));
+            Path index = fixtures.getDirectory().resolve("corpus.txt");
+            corpus.getOverallIndex().save(index);
+            runtimeIndex = RuntimeIndex.load(index);
+            classes = corpus.getUserClasses();
+        }
+        scanner = new ClassInfoScanner(runtimeIndex);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CLASSES)
+    public ClassInfoScanner scanClasses() throws IOException {
+        for (byte[] bytes : classes) {
+            scanner.scanClass(bytes, 0, bytes.length);
+        }
+        return scanner;
+    }
+}
@@ -0,0 +1,111 @@
+package org.wildfly.unstable.api.annotation.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wildfly.unstable.api.annotation.benchmarks.fixtures.Fixtures;
+import org.wildfly.unstable.api.annotation.classpath.index.IncrementalRuntimeIndex;
+import org.wildfly.unstable.api.annotation.classpath.index.OverallIndex;
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex;
+import org.wildfly.unstable.api.annotation.classpath.index.corpus.CorpusGenerator;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures updating an {@link IncrementalRuntimeIndex} holding a few large contributions when a small one is added
+ * ({@code add}) or removed ({@code remove}), against loading the index from all the serialized indexes again
+ * ({@code reload}). The indexes are for corpora generated by {@link CorpusGenerator}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class IncrementalRuntimeIndexBenchmark {
+    private static final int INDEXES = 4;
+    private static final String ADDED = "added";
+
+    private Fixtures fixtures;
+    private List<URL> urls;
+    private OverallIndex added;
+    private IncrementalRuntimeIndex incremental;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        fixtures = Fixtures.create();
+        urls = new ArrayList<>();
+        incremental = new IncrementalRuntimeIndex();
+        for (int i = 0; i <= INDEXES; i++) {
+            OverallIndex overallIndex = new CorpusGenerator()
+                    .setSeed(i)
+                    .setClasses(0)
+                    .setApiClasses(i < INDEXES ? 500 : 20)
+                    .generate(fixtures.getDirectory().resolve("corpus-" + i))
+                    .getOverallIndex();
+            Path index = fixtures.getDirectory().resolve("index-" + i + ".txt");
+            overallIndex.save(index);
+            urls.add(index.toUri().toURL());
+            if (i < INDEXES) {
+                incremental.add("index-" + i, overallIndex);
+            } else {
+                added = overallIndex;
+            }
+        }
+        // Start from a combined index, as after a removal
+        incremental.add(ADDED, added);
+        incremental.remove(ADDED);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fixtures.close();
+    }
+
+    @State(Scope.Benchmark)
+    public static class Added {
+        @Setup(Level.Invocation)
+        public void add(IncrementalRuntimeIndexBenchmark benchmark) {
+            benchmark.incremental.add(ADDED, benchmark.added);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Removed {
+        @TearDown(Level.Invocation)
+        public void remove(IncrementalRuntimeIndexBenchmark benchmark) {
+            benchmark.incremental.remove(ADDED);
+        }
+    }
+
+    @Benchmark
+    public RuntimeIndex add(Removed removed) {
+        incremental.add(ADDED, added);
+        return incremental.getRuntimeIndex();
+    }
+
+    @Benchmark
+    public RuntimeIndex remove(Added added) {
+        incremental.remove(ADDED);
+        return incremental.getRuntimeIndex();
+    }
+
+    @Benchmark
+    public RuntimeIndex reload() throws IOException {
+        return RuntimeIndex.load(urls);
+    }
+}
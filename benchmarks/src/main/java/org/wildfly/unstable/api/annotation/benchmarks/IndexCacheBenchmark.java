@@ -0,0 +1,98 @@
+package org.wildfly.unstable.api.annotation.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wildfly.unstable.api.annotation.benchmarks.fixtures.Fixtures;
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex;
+import org.wildfly.unstable.api.annotation.classpath.index.corpus.CorpusGenerator;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures what a server restart costs for loading its indexes with {@link RuntimeIndex#loadCached(List, Path)}:
+ * {@code cold} is the first start with an empty cache, so the index is built and written to the cache, and
+ * {@code warm} is a later start reading the cache. {@code uncached} is {@link RuntimeIndex#load(List)} for
+ * comparison. The indexes are for corpora generated by {@link CorpusGenerator}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class IndexCacheBenchmark {
+    private static final int INDEXES = 4;
+
+    private Fixtures fixtures;
+    private List<URL> urls;
+    private Path coldCache;
+    private Path warmCache;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        fixtures = Fixtures.create();
+        urls = new ArrayList<>();
+        for (int i = 0; i < INDEXES; i++) {
+            Path index = fixtures.getDirectory().resolve("index-" + i + ".txt");
+            new CorpusGenerator()
+                    .setSeed(i)
+                    .setClasses(0)
+                    .setApiClasses(500)
+                    .generate(fixtures.getDirectory().resolve("corpus-" + i))
+                    .getOverallIndex()
+                    .save(index);
+            urls.add(index.toUri().toURL());
+        }
+        coldCache = fixtures.getDirectory().resolve("cold-cache");
+        warmCache = fixtures.getDirectory().resolve("warm-cache");
+        RuntimeIndex.loadCached(urls, warmCache);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearColdCache() throws IOException {
+        if (Files.exists(coldCache)) {
+            try (Stream<Path> files = Files.list(coldCache)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fixtures.close();
+    }
+
+    @Benchmark
+    public RuntimeIndex uncached() throws IOException {
+        return RuntimeIndex.load(urls);
+    }
+
+    @Benchmark
+    public RuntimeIndex cold() throws IOException {
+        return RuntimeIndex.loadCached(urls, coldCache);
+    }
+
+    @Benchmark
+    public RuntimeIndex warm() throws IOException {
+        return RuntimeIndex.loadCached(urls, warmCache);
+    }
+}
@@ -0,0 +1,76 @@
+package org.wildfly.unstable.api.annotation.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wildfly.unstable.api.annotation.benchmarks.fixtures.Fixtures;
+import org.wildfly.unstable.api.annotation.classpath.index.JarAnnotationIndex;
+import org.wildfly.unstable.api.annotation.classpath.index.JarAnnotationIndexer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures indexing the fixture jar for the {@link org.wildfly.unstable.api.annotation.benchmarks.fixtures.Unstable}
+ * annotation, and for it and two other annotations either with one indexer per annotation or one for all of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class JarAnnotationIndexerBenchmark {
+
+    private static final List<String> ANNOTATIONS = List.of(Fixtures.ANNOTATION, "org.acme.Experimental", "org.acme.Incubating");
+
+    private Fixtures fixtures;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        fixtures = Fixtures.create();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fixtures.close();
+    }
+
+    @Benchmark
+    public JarAnnotationIndex scanForAnnotation() throws IOException {
+        return new JarAnnotationIndexer(fixtures.getJar().toFile(), Fixtures.ANNOTATION, Collections.emptySet()).scanForAnnotation();
+    }
+
+    @Benchmark
+    public List<JarAnnotationIndex> scanForThreeAnnotationsSeparately() throws IOException {
+        List<JarAnnotationIndex> results = new ArrayList<>();
+        for (String annotation : ANNOTATIONS) {
+            results.add(new JarAnnotationIndexer(fixtures.getJar().toFile(), annotation, Collections.emptySet()).scanForAnnotation());
+        }
+        return results;
+    }
+
+    @Benchmark
+    public Map<String, JarAnnotationIndex> scanForThreeAnnotationsTogether() throws IOException {
+        Map<String, Set<String>> excludedClassesByAnnotation = new LinkedHashMap<>();
+        for (String annotation : ANNOTATIONS) {
+            excludedClassesByAnnotation.put(annotation, Collections.emptySet());
+        }
+        return new JarAnnotationIndexer(fixtures.getJar().toFile(), excludedClassesByAnnotation).scanForAnnotations();
+    }
+}
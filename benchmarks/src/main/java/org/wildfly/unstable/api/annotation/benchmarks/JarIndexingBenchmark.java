@@ -0,0 +1,135 @@
+package org.wildfly.unstable.api.annotation.benchmarks;
+
+import org.jboss.jandex.Index;
+import org.jboss.jandex.Indexer;
+import org.jboss.jandex.JarIndexer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wildfly.unstable.api.annotation.benchmarks.fixtures.Fixtures;
+import org.wildfly.unstable.api.annotation.classpath.index.JarAnnotationIndex;
+import org.wildfly.unstable.api.annotation.classpath.index.JarAnnotationIndexer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares indexing the fixture jar with {@link JarIndexer#createJarIndex}, which is how {@link JarAnnotationIndexer}
+ * used to do it, with the current {@link JarAnnotationIndexer}. As well as the time, the {@code bytesWrittenPerOp}
+ * counter reports the bytes written by the benchmark process per operation, as reported by {@code /proc/self/io} on
+ * Linux. It is -1 where that is not available. The {@code embeddedIndex} benchmark shows the effect of using the Jandex
+ * index shipped in a jar, see {@link JarAnnotationIndexer#setUseEmbeddedIndex(boolean)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class JarIndexingBenchmark {
+
+    private Fixtures fixtures;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        fixtures = Fixtures.create();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fixtures.close();
+    }
+
+    /**
+     * Also writes a copy of the jar containing the index next to the jar
+     */
+    @Benchmark
+    public Index jarIndexer(BytesWritten bytesWritten) throws IOException {
+        long start = bytesWritten.start();
+        Index index = JarIndexer.createJarIndex(fixtures.getJar().toFile(), new Indexer(), false, true, false).getIndex();
+        bytesWritten.end(start);
+        return index;
+    }
+
+    @Benchmark
+    public JarAnnotationIndex jarAnnotationIndexer(BytesWritten bytesWritten) throws IOException {
+        long start = bytesWritten.start();
+        JarAnnotationIndex index = new JarAnnotationIndexer(fixtures.getJar().toFile(), Fixtures.ANNOTATION, Collections.emptySet()).scanForAnnotation();
+        bytesWritten.end(start);
+        return index;
+    }
+
+    /**
+     * Uses the index embedded in a copy of the fixture jar
+     */
+    @Benchmark
+    public JarAnnotationIndex embeddedIndex(BytesWritten bytesWritten) throws IOException {
+        long start = bytesWritten.start();
+        JarAnnotationIndexer indexer = new JarAnnotationIndexer(fixtures.getJarWithIndex().toFile(), Fixtures.ANNOTATION, Collections.emptySet());
+        indexer.setUseEmbeddedIndex(true);
+        JarAnnotationIndex index = indexer.scanForAnnotation();
+        bytesWritten.end(start);
+        return index;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class BytesWritten {
+        private static final Path PROC_SELF_IO = Paths.get("/proc/self/io");
+
+        private long total;
+        private long ops;
+
+        public long bytesWrittenPerOp;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            total = 0;
+            ops = 0;
+            bytesWrittenPerOp = 0;
+        }
+
+        long start() throws IOException {
+            return readBytesWritten();
+        }
+
+        void end(long start) throws IOException {
+            if (start < 0) {
+                bytesWrittenPerOp = -1;
+                return;
+            }
+            total += readBytesWritten() - start;
+            ops++;
+            bytesWrittenPerOp = total / ops;
+        }
+
+        private static long readBytesWritten() throws IOException {
+            if (!Files.isReadable(PROC_SELF_IO)) {
+                return -1;
+            }
+            // wchar is the number of bytes passed to write() and similar, whether or not they reached the disk yet
+            List<String> lines = Files.readAllLines(PROC_SELF_IO);
+            for (String line : lines) {
+                if (line.startsWith("wchar:")) {
+                    return Long.parseLong(line.substring("wchar:".length()).trim());
+                }
+            }
+            return -1;
+        }
+    }
+}
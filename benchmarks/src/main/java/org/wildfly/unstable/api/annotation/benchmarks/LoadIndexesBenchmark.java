@@ -0,0 +1,84 @@
+package org.wildfly.unstable.api.annotation.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wildfly.unstable.api.annotation.benchmarks.fixtures.Fixtures;
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex;
+import org.wildfly.unstable.api.annotation.classpath.index.corpus.CorpusGenerator;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading a {@link RuntimeIndex} from several index files, as WildFly does with one index per feature pack,
+ * either one after the other with {@link RuntimeIndex#load(List)} or concurrently with
+ * {@link RuntimeIndex#load(List, java.util.concurrent.Executor)}. The indexes are for corpora generated by
+ * {@link CorpusGenerator}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class LoadIndexesBenchmark {
+    private static final int INDEXES = 8;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private Fixtures fixtures;
+    private List<URL> urls;
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        fixtures = Fixtures.create();
+        urls = new ArrayList<>();
+        for (int i = 0; i < INDEXES; i++) {
+            Path index = fixtures.getDirectory().resolve("index-" + i + ".txt");
+            new CorpusGenerator()
+                    .setSeed(i)
+                    .setClasses(0)
+                    .setApiClasses(500)
+                    .generate(fixtures.getDirectory().resolve("corpus-" + i))
+                    .getOverallIndex()
+                    .save(index);
+            urls.add(index.toUri().toURL());
+        }
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        fixtures.close();
+    }
+
+    @Benchmark
+    public RuntimeIndex sequential() throws IOException {
+        return RuntimeIndex.load(urls);
+    }
+
+    @Benchmark
+    public RuntimeIndex parallel() throws IOException {
+        return RuntimeIndex.load(urls, executor);
+    }
+}
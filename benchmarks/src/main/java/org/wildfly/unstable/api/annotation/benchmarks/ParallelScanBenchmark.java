@@ -0,0 +1,83 @@
+package org.wildfly.unstable.api.annotation.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wildfly.unstable.api.annotation.benchmarks.fixtures.Fixtures;
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex;
+import org.wildfly.unstable.api.annotation.classpath.index.corpus.Corpus;
+import org.wildfly.unstable.api.annotation.classpath.index.corpus.CorpusGenerator;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ParallelClassInfoScanner;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ParallelClassInfoScanner.ClassSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how {@link ParallelClassInfoScanner#scanClasses(List)} scales with the number of threads, over a corpus
+ * generated by {@link CorpusGenerator}. The classes are held in memory, so this measures the scanning rather than
+ * reading the classes. The score is the time to scan one class; compare it with {@link CorpusScanBenchmark} for
+ * scanning the classes one after the other.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ParallelScanBenchmark {
+    private static final int CLASSES = 5000;
+
+    @Param({"1", "2", "4"})
+    public int threads;
+
+    private RuntimeIndex runtimeIndex;
+    private List<ClassSource> sources;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        try (Fixtures fixtures = Fixtures.create()) {
+            Corpus corpus = new CorpusGenerator()
+                    .setClasses(CLASSES)
+                    .generate(fixtures.getDirectory().resolve("corpus"));
+            Path index = fixtures.getDirectory().resolve("corpus.txt");
+            corpus.getOverallIndex().save(index);
+            runtimeIndex = RuntimeIndex.load(index);
+            sources = new ArrayList<>();
+            for (byte[] bytes : corpus.getUserClasses()) {
+                sources.add(() -> new ByteArrayInputStream(bytes));
+            }
+        }
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CLASSES)
+    public ParallelClassInfoScanner scanClasses() throws IOException {
+        ParallelClassInfoScanner scanner = new ParallelClassInfoScanner(runtimeIndex, pool, threads);
+        scanner.scanClasses(sources);
+        return scanner;
+    }
+}
@@ -0,0 +1,106 @@
+package org.wildfly.unstable.api.annotation.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wildfly.unstable.api.annotation.benchmarks.fixtures.Fixtures;
+import org.wildfly.unstable.api.annotation.classpath.index.OverallIndex;
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex;
+import org.wildfly.unstable.api.annotation.classpath.index.corpus.CorpusGenerator;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the retained heap of a {@link RuntimeIndex} loaded from the text and binary formats, for the index of a
+ * corpus generated by {@link CorpusGenerator}. Each invocation loads a number of instances and keeps them, and the
+ * increase in used heap after a full GC is reported per instance as {@code retainedBytes}. The score itself is the
+ * time taken, including the GCs, and is not meaningful.
+ *
+ * JMH adds up {@code retainedBytes} over all measurement iterations and forks, so there is only one of each; don't
+ * override them on the command line.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class RuntimeIndexFootprintBenchmark {
+    private static final int INSTANCES = 20;
+
+    @Param({"txt", "idx"})
+    public String format;
+
+    /**
+     * The number of API classes in the generated corpus
+     */
+    @Param({"200", "2000"})
+    public int apiClasses;
+
+    private Fixtures fixtures;
+    private Path index;
+
+    /**
+     * The retained heap per instance
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long retainedBytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        fixtures = Fixtures.create();
+        OverallIndex overallIndex = new CorpusGenerator()
+                .setClasses(0)
+                .setApiClasses(apiClasses)
+                .generate(fixtures.getDirectory().resolve("corpus"))
+                .getOverallIndex();
+        index = fixtures.getDirectory().resolve("corpus-index." + format);
+        overallIndex.save(index);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fixtures.close();
+    }
+
+    @Benchmark
+    public List<RuntimeIndex> load(Footprint footprint) throws Exception {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long before = usedAfterGc(memory);
+        List<RuntimeIndex> indexes = new ArrayList<>(INSTANCES);
+        for (int i = 0; i < INSTANCES; i++) {
+            indexes.add(format.equals("idx") ? RuntimeIndex.loadMapped(index) : RuntimeIndex.load(index));
+        }
+        // The instances are still reachable from the list, so they are not collected
+        footprint.retainedBytes = (usedAfterGc(memory) - before) / INSTANCES;
+        return indexes;
+    }
+
+    private static long usedAfterGc(MemoryMXBean memory) throws InterruptedException {
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
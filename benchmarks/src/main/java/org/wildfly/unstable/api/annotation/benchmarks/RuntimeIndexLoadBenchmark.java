@@ -0,0 +1,78 @@
+package org.wildfly.unstable.api.annotation.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wildfly.unstable.api.annotation.benchmarks.fixtures.Fixtures;
+import org.wildfly.unstable.api.annotation.classpath.index.OverallIndex;
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex;
+import org.wildfly.unstable.api.annotation.classpath.index.corpus.CorpusGenerator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading a {@link RuntimeIndex} from each of the index formats, using {@link RuntimeIndex#loadMapped(Path)}
+ * for the binary {@code idx} format. Besides the small index of the fixture classes, a larger one for a corpus
+ * generated by {@link CorpusGenerator} is used.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RuntimeIndexLoadBenchmark {
+
+    @Param({"txt", "zip", "idx"})
+    public String format;
+
+    /**
+     * The number of API classes in the generated corpus, or {@code 0} to use the index of the fixture classes
+     */
+    @Param({"0", "2000"})
+    public int apiClasses;
+
+    private Fixtures fixtures;
+    private Path index;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        fixtures = Fixtures.create();
+        if (apiClasses == 0) {
+            index = fixtures.getIndex(format);
+        } else {
+            OverallIndex overallIndex = new CorpusGenerator()
+                    .setClasses(0)
+                    .setApiClasses(apiClasses)
+                    .generate(fixtures.getDirectory().resolve("corpus"))
+                    .getOverallIndex();
+            index = fixtures.getDirectory().resolve("corpus-index." + format);
+            overallIndex.save(index);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fixtures.close();
+    }
+
+    @Benchmark
+    public RuntimeIndex load() throws IOException {
+        if (format.equals("idx")) {
+            return RuntimeIndex.loadMapped(index);
+        }
+        return RuntimeIndex.load(index);
+    }
+}
@@ -0,0 +1,80 @@
+package org.wildfly.unstable.api.annotation.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wildfly.unstable.api.annotation.benchmarks.fixtures.Fixtures;
+import org.wildfly.unstable.api.annotation.classpath.index.OverallIndex;
+import org.wildfly.unstable.api.annotation.classpath.index.corpus.CorpusGenerator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link OverallIndex#scanJars(java.util.Collection, Map, java.util.concurrent.Executor)} over the API jars
+ * of several corpora generated by {@link CorpusGenerator}, with different numbers of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ScanJarsBenchmark {
+    private static final int JARS = 16;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private Fixtures fixtures;
+    private List<Path> jars;
+    private Map<String, Set<String>> excludedClassesByAnnotation;
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        fixtures = Fixtures.create();
+        jars = new ArrayList<>();
+        for (int i = 0; i < JARS; i++) {
+            jars.add(new CorpusGenerator()
+                    .setSeed(i)
+                    .setClasses(0)
+                    .setApiClasses(200)
+                    .generate(fixtures.getDirectory().resolve("corpus-" + i))
+                    .getApiJar());
+        }
+        excludedClassesByAnnotation = Collections.singletonMap(CorpusGenerator.ANNOTATION, Collections.emptySet());
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        fixtures.close();
+    }
+
+    @Benchmark
+    public OverallIndex scanJars() throws IOException {
+        OverallIndex overallIndex = new OverallIndex();
+        overallIndex.scanJars(jars, excludedClassesByAnnotation, executor);
+        return overallIndex;
+    }
+}
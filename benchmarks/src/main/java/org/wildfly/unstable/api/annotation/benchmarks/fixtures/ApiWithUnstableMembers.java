@@ -0,0 +1,35 @@
+package org.wildfly.unstable.api.annotation.benchmarks.fixtures;
+
+public class ApiWithUnstableMembers {
+    @Unstable
+    public static int unstableStaticField;
+
+    @Unstable
+    public String unstableField;
+
+    public String stableField;
+
+    public ApiWithUnstableMembers() {
+    }
+
+    @Unstable
+    public ApiWithUnstableMembers(String unstableField) {
+        this.unstableField = unstableField;
+    }
+
+    @Unstable
+    public static void unstableStaticMethod() {
+    }
+
+    @Unstable
+    public void unstableMethod() {
+    }
+
+    @Unstable
+    public String unstableMethod(String s, int i) {
+        return s + i;
+    }
+
+    public void stableMethod() {
+    }
+}
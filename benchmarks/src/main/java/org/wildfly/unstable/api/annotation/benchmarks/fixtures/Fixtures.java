@@ -0,0 +1,200 @@
+package org.wildfly.unstable.api.annotation.benchmarks.fixtures;
+
+import org.jboss.jandex.Index;
+import org.jboss.jandex.IndexWriter;
+import org.jboss.jandex.Indexer;
+import org.wildfly.unstable.api.annotation.classpath.index.OverallIndex;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Creates the files used by the benchmarks in a temporary directory, so that the results do not depend on what happens
+ * to be in the local Maven repository.
+ *
+ * The jar contains the classes in this package, and the classes of Jandex. The latter are not annotated, so they
+ * give the jar a realistic size and mix of classes. The jar is indexed for {@link Unstable}, and the index is saved
+ * in all the supported formats.
+ */
+public final class Fixtures implements Closeable {
+    public static final String ANNOTATION = Unstable.class.getName();
+
+    private static final List<Class<?>> FIXTURE_CLASSES = List.of(
+            Unstable.class,
+            UnstableApi.class,
+            UnstableInterface.class,
+            ApiWithUnstableMembers.class,
+            HitHeavyUser.class,
+            MissHeavyUser.class);
+    private static final String JANDEX_PACKAGE = "org/jboss/jandex/";
+
+    private final Path dir;
+    private final Path jar;
+    private final Path jarWithIndex;
+
+    private Fixtures(Path dir, Path jar, Path jarWithIndex) {
+        this.dir = dir;
+        this.jar = jar;
+        this.jarWithIndex = jarWithIndex;
+    }
+
+    /**
+     * Creates the fixtures
+     * @return the fixtures
+     * @throws IOException if there were problems writing the files
+     */
+    public static Fixtures create() throws IOException {
+        Path dir = Files.createTempDirectory("unstable-api-benchmarks");
+        Path jar = dir.resolve("fixtures.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            for (Class<?> clazz : FIXTURE_CLASSES) {
+                out.putNextEntry(new ZipEntry(getResourceName(clazz)));
+                out.write(getClassBytes(clazz));
+                out.closeEntry();
+            }
+            copyJandexClasses(out);
+        }
+
+        // A copy of the jar with an up-to-date Jandex index, as many libraries ship
+        Path jarWithIndex = dir.resolve("fixtures-with-index.jar");
+        Indexer indexer = new Indexer();
+        try (ZipFile zipFile = new ZipFile(jar.toFile());
+             ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jarWithIndex))) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    byte[] bytes = in.readAllBytes();
+                    indexer.index(new ByteArrayInputStream(bytes));
+                    out.putNextEntry(new ZipEntry(entry.getName()));
+                    out.write(bytes);
+                    out.closeEntry();
+                }
+            }
+            out.putNextEntry(new ZipEntry("META-INF/jandex.idx"));
+            new IndexWriter(out).write(indexer.complete());
+            out.closeEntry();
+        }
+
+        Fixtures fixtures = new Fixtures(dir, jar, jarWithIndex);
+        OverallIndex overallIndex = new OverallIndex();
+        overallIndex.scanJar(jar.toFile(), ANNOTATION);
+        for (String format : new String[]{"txt", "zip", "idx"}) {
+            overallIndex.save(fixtures.getIndex(format));
+        }
+        return fixtures;
+    }
+
+    /**
+     * Gets the jar containing the fixture classes
+     * @return the jar
+     */
+    public Path getJar() {
+        return jar;
+    }
+
+    /**
+     * Gets a copy of the jar containing the fixture classes, which also contains a Jandex index of them as
+     * {@code META-INF/jandex.idx}
+     * @return the jar
+     */
+    public Path getJarWithIndex() {
+        return jarWithIndex;
+    }
+
+    /**
+     * Gets the saved index of the jar
+     * @param format the suffix of the index file, i.e. {@code txt}, {@code zip} or {@code idx}
+     * @return the index file
+     */
+    public Path getIndex(String format) {
+        return dir.resolve("index." + format);
+    }
+
+    /**
+     * Gets a directory for files created by the benchmarks, which is deleted along with the fixtures
+     * @return the directory
+     */
+    public Path getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Reads the class file of a class
+     * @param clazz the class
+     * @return the bytes of the class file
+     * @throws IOException if there were problems reading the class file
+     */
+    public static byte[] getClassBytes(Class<?> clazz) throws IOException {
+        try (InputStream in = clazz.getClassLoader().getResourceAsStream(getResourceName(clazz))) {
+            if (in == null) {
+                throw new IllegalStateException("Could not find the class file for " + clazz.getName());
+            }
+            return in.readAllBytes();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static String getResourceName(Class<?> clazz) {
+        return clazz.getName().replace('.', '/') + ".class";
+    }
+
+    private static void copyJandexClasses(ZipOutputStream out) throws IOException {
+        // This is the Jandex jar normally, or the shaded benchmarks jar when run from that
+        Path location;
+        try {
+            location = Paths.get(Index.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+        if (Files.isDirectory(location)) {
+            try (Stream<Path> paths = Files.walk(location.resolve(JANDEX_PACKAGE))) {
+                for (Path path : paths.filter(p -> p.toString().endsWith(".class")).sorted().collect(Collectors.toList())) {
+                    try (InputStream in = Files.newInputStream(path)) {
+                        copyEntry(location.relativize(path).toString().replace('\\', '/'), in, out);
+                    }
+                }
+            }
+            return;
+        }
+        try (ZipFile zipFile = new ZipFile(location.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.getName().startsWith(JANDEX_PACKAGE) && entry.getName().endsWith(".class")) {
+                    try (InputStream in = zipFile.getInputStream(entry)) {
+                        copyEntry(entry.getName(), in, out);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void copyEntry(String name, InputStream in, ZipOutputStream out) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        in.transferTo(out);
+        out.closeEntry();
+    }
+}
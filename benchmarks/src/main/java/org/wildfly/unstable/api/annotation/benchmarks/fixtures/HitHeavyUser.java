@@ -0,0 +1,34 @@
+package org.wildfly.unstable.api.annotation.benchmarks.fixtures;
+
+/**
+ * A class where most of the references are to the annotated API, so most lookups in the index are hits.
+ */
+public class HitHeavyUser extends UnstableApi implements UnstableInterface {
+    private UnstableApi api = UnstableApi.create();
+    private UnstableApi[] apis = new UnstableApi[] {api};
+
+    @Override
+    public void run() {
+        ApiWithUnstableMembers members = new ApiWithUnstableMembers("value");
+        members.unstableMethod();
+        members.unstableField = members.unstableMethod(members.unstableField, ApiWithUnstableMembers.unstableStaticField);
+        ApiWithUnstableMembers.unstableStaticMethod();
+        ApiWithUnstableMembers.unstableStaticField++;
+        api.setValue(api.getValue() + api.value);
+        apis[0].value = UnstableApi.NAME.length();
+        Runnable r = members::unstableMethod;
+        r.run();
+    }
+
+    public UnstableApi getApi() {
+        return api;
+    }
+
+    public void setApi(UnstableApi api) {
+        this.api = api;
+    }
+
+    public UnstableInterface asInterface() {
+        return this;
+    }
+}
@@ -0,0 +1,43 @@
+package org.wildfly.unstable.api.annotation.benchmarks.fixtures;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * A class where all the references are to the JDK, so none of the lookups in the index are hits. This is the common
+ * case for user code.
+ */
+public class MissHeavyUser implements Runnable {
+    private final Map<String, List<Integer>> values = new HashMap<>();
+    private final ConcurrentHashMap<String, Long> counts = new ConcurrentHashMap<>();
+    private final StringBuilder log = new StringBuilder();
+
+    @Override
+    public void run() {
+        for (int i = 0; i < 10; i++) {
+            String key = String.valueOf(i % 3);
+            values.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+            counts.merge(key, 1L, Long::sum);
+        }
+        String joined = values.keySet().stream().sorted().collect(Collectors.joining(","));
+        log.append(joined).append(':').append(counts.size());
+        if (Objects.equals(System.getProperty("miss.heavy.user"), log.toString())) {
+            throw new IllegalStateException(log.toString().trim());
+        }
+        Thread.currentThread().setName(Integer.toHexString(log.length()));
+    }
+
+    public Map<String, List<Integer>> getValues() {
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return "MissHeavyUser{" + "values=" + values + ", counts=" + counts + '}';
+    }
+}
@@ -0,0 +1,11 @@
+package org.wildfly.unstable.api.annotation.benchmarks.fixtures;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * The marker annotation indexed by the benchmarks.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Unstable {
+}
@@ -0,0 +1,20 @@
+package org.wildfly.unstable.api.annotation.benchmarks.fixtures;
+
+@Unstable
+public class UnstableApi {
+    public static final String NAME = "unstable";
+
+    public int value;
+
+    public static UnstableApi create() {
+        return new UnstableApi();
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    public void setValue(int value) {
+        this.value = value;
+    }
+}
@@ -0,0 +1,6 @@
+package org.wildfly.unstable.api.annotation.benchmarks.fixtures;
+
+@Unstable
+public interface UnstableInterface {
+    void run();
+}
@@ -20,8 +20,12 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.regex.Pattern;
 
 @Mojo(name="index-unstable-api-annotations", defaultPhase = LifecyclePhase.COMPILE, requiresDependencyResolution = ResolutionScope.COMPILE, requiresProject = true)
@@ -35,6 +39,22 @@ public class UnstableAPIAnnotationIndexMojo
     @Parameter(property = "outputFile", required = true)
     private File outputFile;
 
+    // Use the Jandex indexes shipped in the jars as META-INF/jandex.idx, where they are up-to-date
+    @Parameter(property = "useEmbeddedIndexes", defaultValue = "false")
+    private boolean useEmbeddedIndexes;
+
+    // Read the annotation attributes of the classes directly, instead of building a Jandex index of each jar
+    @Parameter(property = "useStreamingExtractor", defaultValue = "false")
+    private boolean useStreamingExtractor;
+
+    // The number of jars to index at the same time. Defaults to the number of available processors
+    @Parameter(property = "parallelism")
+    private Integer parallelism;
+
+    // The compression level from 0 to 9 when the output file is a .zip, or -1 for the default
+    @Parameter(property = "zipCompressionLevel", defaultValue = "-1")
+    private int zipCompressionLevel;
+
     @Component
     private MavenProject mavenProject;
 
@@ -45,38 +65,57 @@ public class UnstableAPIAnnotationIndexMojo
             Log log = getLog();
             log.info("Running plugin");
             overallIndex = new OverallIndex();
+            overallIndex.setUseEmbeddedIndexes(useEmbeddedIndexes);
+            overallIndex.setUseStreamingExtractor(useStreamingExtractor);
+            overallIndex.setZipCompressionLevel(zipCompressionLevel);
 
             log.info(filters.toString());
 
             List<Dependency> dependencies = mavenProject.getDependencies();
 
+            List<GroupIdMatcher> matchers = new ArrayList<>();
             for (Filter indexFilter : filters) {
-                Set<String> allGroupIds = new HashSet<>();
-                Set<Pattern> wildcardGroupIds = new HashSet<>();
-                for (String id : indexFilter.getGroupIds()) {
-                    if (id.contains("*")) {
-                        wildcardGroupIds.add(createPattern(id));
-                    } else {
-                        allGroupIds.add(id);
-                    }
-                }
+                matchers.add(new GroupIdMatcher(indexFilter));
+            }
+
+            int threads = parallelism == null ? Runtime.getRuntime().availableProcessors() : parallelism;
+            if (threads < 1) {
+                throw new MojoExecutionException("parallelism must be at least 1, was " + threads);
+            }
 
-                for (Artifact artifact : mavenProject.getArtifacts()) {
-                    log.info(artifact.getGroupId() + ":" + artifact.getArtifactId());
-                    if (artifact.getType().equals("jar")) {
-                        if (allGroupIds.contains(artifact.getGroupId())) {
-                            overallIndex.scanJar(artifact.getFile(), indexFilter.getAnnotation(), indexFilter.getExcludedClasses());
+            // Group the filters by artifact, so that each jar is only read and indexed once
+            Map<Path, Map<String, Set<String>>> excludedClassesByAnnotationByJar = new LinkedHashMap<>();
+            for (Artifact artifact : mavenProject.getArtifacts()) {
+                log.info(artifact.getGroupId() + ":" + artifact.getArtifactId());
+                if (!artifact.getType().equals("jar")) {
+                    continue;
+                }
+                Map<String, Set<String>> excludedClassesByAnnotation = new LinkedHashMap<>();
+                for (GroupIdMatcher matcher : matchers) {
+                    if (matcher.matches(artifact.getGroupId())) {
+                        Filter indexFilter = matcher.filter;
+                        Set<String> excludedClasses = excludedClassesByAnnotation.get(indexFilter.getAnnotation());
+                        if (excludedClasses == null) {
+                            excludedClassesByAnnotation.put(indexFilter.getAnnotation(), new HashSet<>(indexFilter.getExcludedClasses()));
                         } else {
-                            for (Pattern pattern : wildcardGroupIds) {
-                                if (pattern.matcher(artifact.getGroupId()).matches()) {
-                                    overallIndex.scanJar(artifact.getFile(), indexFilter.getAnnotation(), indexFilter.getExcludedClasses());
-                                }
-                            }
+                            // Several filters for the same annotation each add what they find to the index, so
+                            // a class is only left out if all of them exclude it
+                            excludedClasses.retainAll(indexFilter.getExcludedClasses());
                         }
                     }
                 }
+                if (!excludedClassesByAnnotation.isEmpty()) {
+                    excludedClassesByAnnotationByJar.put(artifact.getFile().toPath(), excludedClassesByAnnotation);
+                }
             }
 
+            // The results are merged in the order of the artifacts, so the index is the same whatever the parallelism
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                overallIndex.scanJars(excludedClassesByAnnotationByJar, executor);
+            } finally {
+                executor.shutdownNow();
+            }
 
             Path path = Paths.get(outputFile.toURI());
             overallIndex.save(path);
@@ -99,4 +138,33 @@ public class UnstableAPIAnnotationIndexMojo
         }
         return Pattern.compile(builder.toString());
     }
+
+    private static class GroupIdMatcher {
+        private final Filter filter;
+        private final Set<String> allGroupIds = new HashSet<>();
+        private final Set<Pattern> wildcardGroupIds = new HashSet<>();
+
+        GroupIdMatcher(Filter filter) {
+            this.filter = filter;
+            for (String id : filter.getGroupIds()) {
+                if (id.contains("*")) {
+                    wildcardGroupIds.add(createPattern(id));
+                } else {
+                    allGroupIds.add(id);
+                }
+            }
+        }
+
+        boolean matches(String groupId) {
+            if (allGroupIds.contains(groupId)) {
+                return true;
+            }
+            for (Pattern pattern : wildcardGroupIds) {
+                if (pattern.matcher(groupId).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 }
@@ -37,20 +37,6 @@ class AnnotatedConstructor {
         writer.println(className + separator + descriptor);
     }
 
-    /**
-     * Reads the annotated constructor from the current line of the index file
-     * @param s the line
-     * @param separator the separator between the serialized parts
-     * @return the parsed annotated constructor
-     */
-    static AnnotatedConstructor parseReadLine(String s, String separator) {
-        String[] arr = s.split(separator);
-        if (arr.length != 2) {
-            throw new IllegalArgumentException(s);
-        }
-        return new AnnotatedConstructor(arr[0], arr[1]);
-    }
-
     /**
      * Gets the name of the class containing the constructor annotated with the searched annotation.
      * @return The name of the class
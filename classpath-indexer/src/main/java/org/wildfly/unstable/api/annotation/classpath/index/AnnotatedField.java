@@ -25,20 +25,6 @@ class AnnotatedField {
         this.fieldName = fieldName;
     }
 
-    /**
-     * Reads the annotated field from the current line of the index file
-     * @param s the line
-     * @param separator the separator between the serialized parts
-     * @return the parsed annotated field
-     */
-    static AnnotatedField parseReadLine(String s, String separator) {
-        String[] arr = s.split(separator);
-        if (arr.length != 2) {
-            throw new IllegalArgumentException(s);
-        }
-        return new AnnotatedField(arr[0], arr[1]);
-    }
-
     /**
      * Gets the name of the class containing the field annotated with the searched annotation.
      * @return The name of the class
@@ -52,21 +52,6 @@ class AnnotatedMethod {
         writer.println(className + separator + methodName + separator + descriptor);
     }
 
-    /**
-     * Reads the annotated method from the current line of the index file
-     * @param s the line
-     * @param separator the separator between the serialized parts
-     * @return the parsed annotated method
-     */
-    static AnnotatedMethod parseReadLine(String s, String separator) {
-        String[] arr = s.split(separator);
-        if (arr.length != 3) {
-            throw new IllegalArgumentException(s);
-        }
-
-        return new AnnotatedMethod(arr[0], arr[1], arr[2]);
-    }
-
     /**
      * Gets the name of the class containing the method annotated with the searched annotation.
      * @return The name of the class
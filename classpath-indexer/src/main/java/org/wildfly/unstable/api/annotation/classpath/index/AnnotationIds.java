@@ -0,0 +1,130 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns the names of the annotations in a {@link RuntimeIndex} into small integer ids. Since an index only contains
+ * a handful of annotations, the annotations of an indexed class or member are stored as a {@code long} bitmask
+ * where bit {@code n} is set if the annotation with id {@code n} is present. The names are only materialized when
+ * something asks for them.
+ *
+ * Instances are immutable once the index has been built, and may be shared between threads.
+ */
+public final class AnnotationIds {
+    /**
+     * The maximum number of annotations, limited by the number of bits in a {@code long}
+     */
+    public static final int MAX_ANNOTATIONS = Long.SIZE;
+
+    private final String[] names;
+    private final Map<String, Integer> ids;
+    // Masks seen so far and their names. There will only be a few distinct combinations.
+    private final Map<Long, Set<String>> namesByMask = new ConcurrentHashMap<>();
+
+    private AnnotationIds(String[] names) {
+        this.names = names;
+        Map<String, Integer> ids = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            ids.put(names[i], i);
+        }
+        this.ids = ids;
+    }
+
+    /**
+     * Creates an instance
+     * @param names the annotation names. The id of each is its position in the list
+     * @return the created instance
+     * @throws IllegalArgumentException if there are more than {@link #MAX_ANNOTATIONS} names
+     */
+    static AnnotationIds create(List<String> names) {
+        if (names.size() > MAX_ANNOTATIONS) {
+            throw new IllegalArgumentException("An index may contain at most " + MAX_ANNOTATIONS + " annotations, but found " + names.size());
+        }
+        return new AnnotationIds(names.toArray(new String[0]));
+    }
+
+    /**
+     * Gets the number of annotations
+     * @return the number of annotations
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Gets the name of an annotation
+     * @param id the id of the annotation
+     * @return the name
+     */
+    public String getName(int id) {
+        return names[id];
+    }
+
+    /**
+     * Gets the bit for an annotation
+     * @param annotation the name of the annotation
+     * @return the bit, or {@code 0} if the annotation is unknown
+     */
+    public long getMask(String annotation) {
+        Integer id = ids.get(annotation);
+        return id == null ? 0 : 1L << id;
+    }
+
+    /**
+     * Gets the bitmask for a set of annotations. Unknown annotations are ignored.
+     * @param annotations the annotation names
+     * @return the bitmask
+     */
+    public long getMask(Set<String> annotations) {
+        long mask = 0;
+        for (String annotation : annotations) {
+            mask |= getMask(annotation);
+        }
+        return mask;
+    }
+
+    /**
+     * Gets the names of the annotations in a bitmask
+     * @param mask the bitmask
+     * @return the names, or {@code null} if the mask is {@code 0}. The returned set is unmodifiable.
+     */
+    public Set<String> getNames(long mask) {
+        if (mask == 0) {
+            return null;
+        }
+        Set<String> result = namesByMask.get(mask);
+        if (result == null) {
+            Set<String> set = new LinkedHashSet<>();
+            for (long remaining = mask; remaining != 0; remaining &= remaining - 1) {
+                set.add(names[Long.numberOfTrailingZeros(remaining)]);
+            }
+            result = Collections.unmodifiableSet(set);
+            Set<String> existing = namesByMask.putIfAbsent(mask, result);
+            if (existing != null) {
+                result = existing;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets a hash code for the names in a bitmask without materializing them. This is the same as
+     * {@code getNames(mask).hashCode()}, so it is the same for instances with different ids for the same names.
+     * @param mask the bitmask
+     * @return the hash code
+     */
+    public int namesHashCode(long mask) {
+        // As specified by Set.hashCode()
+        int hash = 0;
+        for (long remaining = mask; remaining != 0; remaining &= remaining - 1) {
+            hash += names[Long.numberOfTrailingZeros(remaining)].hashCode();
+        }
+        return hash;
+    }
+}
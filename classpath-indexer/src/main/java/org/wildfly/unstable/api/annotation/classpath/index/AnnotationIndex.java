@@ -1,6 +1,5 @@
 package org.wildfly.unstable.api.annotation.classpath.index;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.HashMap;
@@ -9,23 +8,22 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.function.Consumer;
-import java.util.function.Function;
 
 /**
  * Contains the index of locations where an annotation we are interested in has been found.
  */
 public class AnnotationIndex {
 
-    private static final String START_MARKER = "==";
-    private static final String END_MARKER = "=/";
-    private static final String INTERFACES = "=INTERFACES";
-    private static final String CLASSES = "=CLASSES";
-    private static final String ANNOTATIONS = "=ANNOTATIONS";
-    private static final String METHODS = "=METHODS";
-    private static final String CONSTRUCTORS = "=CONSTRUCTORS";
-    private static final String FIELDS = "=FIELDS";
+    static final String START_MARKER = "==";
+    static final String END_MARKER = "=/";
+    static final String INTERFACES = "=INTERFACES";
+    static final String CLASSES = "=CLASSES";
+    static final String ANNOTATIONS = "=ANNOTATIONS";
+    static final String METHODS = "=METHODS";
+    static final String CONSTRUCTORS = "=CONSTRUCTORS";
+    static final String FIELDS = "=FIELDS";
 
-    private static final String MULTI_VALUE_FIELD_SEPARATOR = "±";
+    static final String MULTI_VALUE_FIELD_SEPARATOR = "±";
 
 
     private final String annotationName;
@@ -148,6 +146,29 @@ public class AnnotationIndex {
         return annotatedFields;
     }
 
+    /**
+     * Passes the locations where the annotation {@link #getAnnotationName()} was found to a visitor, in the same way
+     * as {@link IndexReader} does for a serialized index
+     *
+     * @param visitor the visitor
+     */
+    void accept(IndexVisitor visitor) {
+        visitor.startAnnotation(annotationName);
+        annotatedInterfaces.forEach(visitor::onInterface);
+        annotatedClasses.forEach(visitor::onClass);
+        annotatedAnnotations.forEach(visitor::onAnnotationType);
+        for (AnnotatedMethod method : annotatedMethods) {
+            visitor.onMethod(method.getClassName(), method.getMethodName(), method.getDescriptor());
+        }
+        for (AnnotatedConstructor constructor : annotatedConstructors) {
+            visitor.onConstructor(constructor.getClassName(), constructor.getDescriptor());
+        }
+        for (AnnotatedField field : annotatedFields) {
+            visitor.onField(field.getClassName(), field.getFieldName());
+        }
+        visitor.endAnnotation();
+    }
+
     /**
      * Called internally to save the locations where the annotation {@link #getAnnotationName()} was found.
      * The results are serialized to the PrintWriter (typically to a file).
@@ -185,86 +206,14 @@ public class AnnotationIndex {
         }
     }
 
-    /**
-     * Loads a serialized index from a reader
-     * @param reader the reader containing the serialized index
-     * @return a map of AnnotationIndex entries, grouped by the
-     * @throws IOException
-     */
-    static Map<String, AnnotationIndex> loadAll(BufferedReader reader) throws IOException {
-        Map<String, AnnotationIndex> map = new HashMap<>();
-        String line = reader.readLine();
-        while (line != null) {
-            if (line.equals(START_MARKER)) {
-                AnnotationIndex index = load(reader);
-                map.put(index.getAnnotationName(), index);
-            }
-            line = reader.readLine();
-        }
-        return map;
-    }
-
-    private static AnnotationIndex load(BufferedReader reader) throws IOException {
-        Set<String> interfaces = new HashSet<>();
-        Set<String> classes = new HashSet<>();
-        Set<String> annotations = new HashSet<>();
-        Set<AnnotatedMethod> methods = new HashSet<>();
-        Set<AnnotatedConstructor> constructors = new HashSet<>();
-        Set<AnnotatedField> fields = new HashSet<>();
-        try {
-            String annotation = reader.readLine();
-            String line = reader.readLine();
-            while (line != null) {
-                switch (line) {
-                    case INTERFACES:
-                        interfaces = readSimpleStringLines(reader);
-                        break;
-                    case CLASSES:
-                        classes = readSimpleStringLines(reader);
-                        break;
-                    case ANNOTATIONS:
-                        annotations = readSimpleStringLines(reader);
-                        break;
-                    case METHODS:
-                        methods = readLines(reader, s -> AnnotatedMethod.parseReadLine(s, MULTI_VALUE_FIELD_SEPARATOR));
-                        break;
-                    case CONSTRUCTORS:
-                        constructors = readLines(reader, s -> AnnotatedConstructor.parseReadLine(s, MULTI_VALUE_FIELD_SEPARATOR));
-                        break;
-                    case FIELDS:
-                        fields = readLines(reader, s -> AnnotatedField.parseReadLine(s, MULTI_VALUE_FIELD_SEPARATOR));
-                        break;
-                    case END_MARKER:
-                        return new AnnotationIndex(annotation,
-                                interfaces,
-                                classes,
-                                annotations,
-                                methods,
-                                constructors,
-                                fields);
-
-                }
-                line = reader.readLine();
-            }
-        } catch (NullPointerException e) {
-            throw new RuntimeException("Premature end of file");
-        }
-        throw new RuntimeException("Premature end of file");
-    }
-
-    private static Set<String> readSimpleStringLines(BufferedReader reader) throws IOException {
-        Set<String> results = readLines(reader, s -> s);
-        return results;
-    }
-
-    private static <R> Set<R> readLines(BufferedReader reader, Function<String, R> parser) throws IOException {
-        Set<R> results = new HashSet<>();
-        String line = reader.readLine();
-        while (!line.isEmpty()) {
-            results.add(parser.apply(line));
-            line = reader.readLine();
-        }
-        return results;
+    private static AnnotationIndex create(String annotationName) {
+        return new AnnotationIndex(annotationName,
+                new HashSet<>(),
+                new HashSet<>(),
+                new HashSet<>(),
+                new HashSet<>(),
+                new HashSet<>(),
+                new HashSet<>());
     }
 
     private void writeSimpleStringEntries(PrintWriter writer, String marker, Set<String> set) {
@@ -280,6 +229,62 @@ public class AnnotationIndex {
     }
 
 
+    /**
+     * Creates AnnotationIndex entries from a serialized index read by {@link IndexReader}
+     */
+    static final class Loader implements IndexVisitor {
+        private final Map<String, AnnotationIndex> indexes = new HashMap<>();
+        private AnnotationIndex current;
+
+        /**
+         * Gets the loaded entries
+         * @return a map of AnnotationIndex entries, keyed by the annotation name
+         */
+        Map<String, AnnotationIndex> getIndexes() {
+            return indexes;
+        }
+
+        @Override
+        public void startAnnotation(String annotation) {
+            current = indexes.computeIfAbsent(annotation, AnnotationIndex::create);
+        }
+
+        @Override
+        public void onInterface(String className) {
+            current.annotatedInterfaces.add(className);
+        }
+
+        @Override
+        public void onClass(String className) {
+            current.annotatedClasses.add(className);
+        }
+
+        @Override
+        public void onAnnotationType(String className) {
+            current.annotatedAnnotations.add(className);
+        }
+
+        @Override
+        public void onMethod(String className, String methodName, String descriptor) {
+            current.annotatedMethods.add(new AnnotatedMethod(className, methodName, descriptor));
+        }
+
+        @Override
+        public void onConstructor(String className, String descriptor) {
+            current.annotatedConstructors.add(new AnnotatedConstructor(className, descriptor));
+        }
+
+        @Override
+        public void onField(String className, String fieldName) {
+            current.annotatedFields.add(new AnnotatedField(className, fieldName));
+        }
+
+        @Override
+        public void endAnnotation() {
+            current = null;
+        }
+    }
+
     /**
      * For testing
      * @param o the other index
@@ -0,0 +1,54 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+/**
+ * A Bloom filter over the names of the classes in a {@link RuntimeIndex}, used to quickly reject references to classes
+ * which are not in the index before doing any real lookups. Most of the classes referenced by user code will be from
+ * the JDK or libraries which are not indexed.
+ *
+ * The filter works on the same hash of the class name bytes as {@link MemberTable}, so a lookup which passes the
+ * filter can reuse it. That hash is already well distributed, so its bits are used as they are. The filter is blocked,
+ * i.e. all the bits for a name are in the same {@code long}, so checking a name is a single memory access.
+ * With about 16 bits per class name and 3 bits set per name, the false positive rate is below 1%.
+ */
+final class ClassNameFilter {
+    private static final int BITS_PER_NAME = 16;
+    // The bits of the hash used to select the bits within a word are the top 18 bits, so use at most the bottom 14
+    // to select the word
+    private static final int MAX_WORDS = 1 << 14;
+
+    private final long[] words;
+    private final int mask;
+
+    private ClassNameFilter(long[] words) {
+        this.words = words;
+        this.mask = words.length - 1;
+    }
+
+    /**
+     * Creates a filter
+     * @param hashes the hashes of the class names, as calculated by {@link MemberTable#hash(byte[], int, int)}
+     * @return the filter
+     */
+    static ClassNameFilter create(int[] hashes) {
+        int words = Integer.highestOneBit(Math.max(1, (hashes.length * BITS_PER_NAME + Long.SIZE - 1) / Long.SIZE) * 2 - 1);
+        ClassNameFilter filter = new ClassNameFilter(new long[Math.min(MAX_WORDS, Math.max(1, words))]);
+        for (int hash : hashes) {
+            filter.words[hash & filter.mask] |= bits(hash);
+        }
+        return filter;
+    }
+
+    /**
+     * Checks whether a class name might be in the filter
+     * @param hash the hash of the class name, as calculated by {@link MemberTable#hash(byte[], int, int)}
+     * @return {@code false} if the class name is definitely not in the filter, {@code true} if it might be
+     */
+    boolean mightContain(int hash) {
+        long bits = bits(hash);
+        return (words[hash & mask] & bits) == bits;
+    }
+
+    private static long bits(int h) {
+        return (1L << (h >>> 26)) | (1L << ((h >>> 20) & 63)) | (1L << ((h >>> 14) & 63));
+    }
+}
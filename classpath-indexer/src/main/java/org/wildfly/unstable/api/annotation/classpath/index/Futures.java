@@ -0,0 +1,48 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * Waits for the tasks run concurrently when loading indexes
+ */
+final class Futures {
+
+    private Futures() {
+    }
+
+    /**
+     * Waits for tasks to complete, and passes their results on in the order of the list. If a task fails the
+     * remaining ones are cancelled, and its exception is rethrown.
+     * @param futures the tasks
+     * @param consumer receives the result of each task
+     * @param <T> the type of the results
+     * @throws IOException if a task failed with an {@link UncheckedIOException}, its cause is thrown
+     */
+    static <T> void join(List<? extends CompletableFuture<? extends T>> futures, Consumer<? super T> consumer) throws IOException {
+        for (CompletableFuture<? extends T> future : futures) {
+            T result;
+            try {
+                result = future.join();
+            } catch (CompletionException e) {
+                for (CompletableFuture<? extends T> other : futures) {
+                    other.cancel(false);
+                }
+                Throwable cause = e.getCause();
+                if (cause instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) cause).getCause();
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+            consumer.accept(result);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds a {@link RuntimeIndex} made up of several contributions, e.g. one per module or feature pack, which can be
+ * added and removed while the index is in use.
+ *
+ * Every update publishes a new immutable {@link RuntimeIndex} by swapping an atomic reference, and
+ * {@link #getRuntimeIndex()} just reads that reference. So readers never block, and a reader that keeps hold of the
+ * index it got, e.g. for the duration of a deployment scan, has a consistent snapshot no matter what is added or
+ * removed meanwhile. Updates are serialized with each other.
+ *
+ * An added contribution is layered on top of the current index (see {@link RuntimeIndex#withOverlay(java.util.List)}),
+ * so adding costs time in proportion to the size of the contribution. Since each layer adds to the cost of a lookup,
+ * the layers are combined into a single index rather than adding more than {@link #MAX_LAYERS}. Removing a contribution
+ * also rebuilds the index, from the contributions kept in memory, so no index needs to be read again.
+ */
+public final class IncrementalRuntimeIndex {
+    /**
+     * The number of contributions layered on top of a combined index before they are all combined again
+     */
+    static final int MAX_LAYERS = 4;
+
+    private final AtomicReference<RuntimeIndex> current;
+
+    // Guarded by this
+    private final Map<String, RuntimeIndex.Builder> contributions = new LinkedHashMap<>();
+    private int layers;
+
+    /**
+     * Constructor. The index is empty until contributions are added.
+     */
+    public IncrementalRuntimeIndex() {
+        current = new AtomicReference<>(new RuntimeIndex.Builder().build());
+    }
+
+    /**
+     * Gets the current index. This never blocks, and the returned index does not change if contributions are added
+     * or removed later.
+     *
+     * @return the current index
+     */
+    public RuntimeIndex getRuntimeIndex() {
+        return current.get();
+    }
+
+    /**
+     * Gets the names of the current contributions
+     *
+     * @return the names in the order the contributions were added
+     */
+    public synchronized Set<String> getContributions() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(contributions.keySet()));
+    }
+
+    /**
+     * Adds a contribution, and publishes the index including it. The entries of the overall index are copied, so later
+     * changes to it are not seen.
+     *
+     * @param name the name identifying the contribution
+     * @param overallIndex the index of the contribution
+     * @throws IllegalArgumentException if there already is a contribution with the name, or if there would be more than
+     * {@link AnnotationIds#MAX_ANNOTATIONS} annotations in total. The current index is not changed.
+     */
+    public synchronized void add(String name, OverallIndex overallIndex) {
+        if (name == null || overallIndex == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        if (contributions.containsKey(name)) {
+            throw new IllegalArgumentException("There already is a contribution called " + name);
+        }
+        RuntimeIndex.Builder contribution = new RuntimeIndex.Builder();
+        contribution.add(overallIndex);
+
+        RuntimeIndex runtimeIndex;
+        if (layers < MAX_LAYERS) {
+            RuntimeIndex.Builder builder = new RuntimeIndex.Builder(current.get());
+            builder.merge(contribution);
+            runtimeIndex = builder.build();
+            layers++;
+        } else {
+            runtimeIndex = combine(contribution);
+            layers = 0;
+        }
+        contributions.put(name, contribution);
+        current.set(runtimeIndex);
+    }
+
+    /**
+     * Removes a contribution, and publishes the index without it
+     *
+     * @param name the name identifying the contribution
+     * @return {@code true} if there was a contribution with the name
+     */
+    public synchronized boolean remove(String name) {
+        if (name == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        if (contributions.remove(name) == null) {
+            return false;
+        }
+        current.set(combine(null));
+        layers = 0;
+        return true;
+    }
+
+    /**
+     * Builds a single index from all the contributions
+     *
+     * @param added a contribution which is not in {@link #contributions} yet, or {@code null}
+     * @return the index
+     */
+    private RuntimeIndex combine(RuntimeIndex.Builder added) {
+        RuntimeIndex.Builder builder = new RuntimeIndex.Builder();
+        for (RuntimeIndex.Builder contribution : contributions.values()) {
+            builder.merge(contribution);
+        }
+        if (added != null) {
+            builder.merge(added);
+        }
+        return builder.build();
+    }
+}
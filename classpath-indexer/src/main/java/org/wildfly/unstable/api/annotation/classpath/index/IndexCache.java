@@ -0,0 +1,192 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the {@link RuntimeIndex} built from a list of serialized indexes in a directory, so that later loads of the
+ * same indexes can read the ready-made lookup tables rather than parsing the indexes again.
+ *
+ * There is one cache file per list of index URLs, named after a hash of the URLs. It contains a fingerprint of the
+ * indexes followed by the {@link RuntimeIndex} in the binary format, whose checksum is verified when it is read.
+ * For {@code file:} URLs the fingerprint uses the modification time and size of the file, otherwise it uses a hash of
+ * the contents. If the fingerprint no longer matches, or the cache file is corrupt, the index is built from the URLs
+ * again and the cache file is replaced. A single index in the binary format already contains the lookup tables, so
+ * it is read directly rather than cached.
+ */
+final class IndexCache {
+    // RIDC
+    private static final int CACHE_MAGIC = 0x52494443;
+    private static final String CACHE_SUFFIX = ".idx";
+
+    private IndexCache() {
+    }
+
+    /**
+     * Loads the runtime index for the URLs from the cache, or builds and caches it if it is not cached or is out of date.
+     * Failing to write the cache file does not fail the load, since the index has been built anyway.
+     *
+     * @param urls the urls containing serialized indexes
+     * @param cacheDirectory the directory containing the cache files. It is created if it does not exist
+     * @return the runtime index
+     * @throws IOException if there are problems reading any of the URLs
+     */
+    static RuntimeIndex load(List<URL> urls, Path cacheDirectory) throws IOException {
+        if (urls.size() == 1 && OverallIndex.determineFormat(urls.get(0).getFile()) == OverallIndex.Format.BINARY) {
+            // Already stored as lookup tables, so there is nothing to gain from caching it
+            return readBinary(urls.get(0));
+        }
+        Path cacheFile = cacheDirectory.resolve(toHex(digest(urls, false)) + CACHE_SUFFIX);
+        byte[] fingerprint = digest(urls, true);
+
+        RuntimeIndex runtimeIndex = read(cacheFile, fingerprint);
+        if (runtimeIndex == null) {
+            runtimeIndex = RuntimeIndex.load(urls);
+            write(cacheFile, fingerprint, runtimeIndex);
+        }
+        return runtimeIndex;
+    }
+
+    private static RuntimeIndex readBinary(URL url) throws IOException {
+        File file = url.getProtocol().equals("file") ? OverallIndex.toFile(url) : null;
+        if (file != null) {
+            return RuntimeIndex.loadMapped(file.toPath(), true);
+        }
+        try (InputStream in = url.openStream()) {
+            return RuntimeIndex.load(in, OverallIndex.Format.BINARY);
+        }
+    }
+
+    private static RuntimeIndex read(Path cacheFile, byte[] fingerprint) {
+        if (!Files.isRegularFile(cacheFile)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != CACHE_MAGIC) {
+                return null;
+            }
+            for (byte b : fingerprint) {
+                if (buffer.get() != b) {
+                    // The indexes have changed since the cache file was written
+                    return null;
+                }
+            }
+            return RuntimeIndex.readBinary(buffer.slice(), true);
+        } catch (IOException | IllegalArgumentException | BufferUnderflowException | IndexOutOfBoundsException e) {
+            // Unreadable or corrupt, so build it again
+            return null;
+        }
+    }
+
+    private static void write(Path cacheFile, byte[] fingerprint, RuntimeIndex runtimeIndex) {
+        Path tempFile = null;
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            // Write to a temporary file first, so that other processes using the same cache never see a partial file
+            tempFile = Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), ".tmp");
+            try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(tempFile))) {
+                DataOutputStream out = new DataOutputStream(outputStream);
+                out.writeInt(CACHE_MAGIC);
+                out.write(fingerprint);
+                runtimeIndex.writeBinary(out);
+            }
+            try {
+                Files.move(tempFile, cacheFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // The cache is only an optimisation, and the index was built anyway
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates a SHA-256 hash of the URLs
+     * @param urls the URLs
+     * @param contents {@code false} to only include the URLs themselves, {@code true} to include a fingerprint of
+     *                 what they point to as well
+     * @return the hash
+     * @throws IOException if there are problems reading any of the URLs
+     */
+    private static byte[] digest(List<URL> urls, boolean contents) throws IOException {
+        MessageDigest digest = createDigest();
+        DataOutputStream out = new DataOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                digest.update((byte) b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                digest.update(b, off, len);
+            }
+        });
+        for (URL url : urls) {
+            out.writeUTF(url.toExternalForm());
+            if (contents) {
+                File file = url.getProtocol().equals("file") ? OverallIndex.toFile(url) : null;
+                if (file != null) {
+                    BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                    out.writeLong(attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+                    out.writeLong(attributes.size());
+                } else {
+                    MessageDigest contentDigest = createDigest();
+                    try (InputStream in = url.openStream()) {
+                        byte[] buffer = new byte[8192];
+                        int read = in.read(buffer);
+                        while (read != -1) {
+                            contentDigest.update(buffer, 0, read);
+                            read = in.read(buffer);
+                        }
+                    }
+                    out.write(contentDigest.digest());
+                }
+            }
+        }
+        out.flush();
+        return digest.digest();
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,223 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Reads an index in the format written by {@link AnnotationIndex#save(java.io.PrintWriter)}, and passes the entries to an
+ * {@link IndexVisitor}. Lines are read into a reusable buffer and split on the separator by hand, so the only
+ * allocations are the strings passed to the visitor.
+ */
+final class IndexReader {
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int INTERFACES = 0;
+    private static final int CLASSES = 1;
+    private static final int ANNOTATIONS = 2;
+    private static final int METHODS = 3;
+    private static final int CONSTRUCTORS = 4;
+    private static final int FIELDS = 5;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    // Set after a '\r' at the end of the buffer, in case the next buffer starts with the '\n' of a "\r\n"
+    private boolean skipLineFeed;
+
+    private char[] line = new char[256];
+    private int lineLength;
+
+    /**
+     * Constructor
+     * @param reader the reader containing the serialized index. It is not closed.
+     */
+    IndexReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the whole index
+     * @param visitor the visitor to pass the entries to
+     * @throws IOException if there was an error reading
+     */
+    void accept(IndexVisitor visitor) throws IOException {
+        while (readLine()) {
+            if (lineEquals(AnnotationIndex.START_MARKER)) {
+                readAnnotation(visitor);
+            }
+        }
+    }
+
+    private void readAnnotation(IndexVisitor visitor) throws IOException {
+        if (!readLine()) {
+            throw new RuntimeException("Premature end of file");
+        }
+        visitor.startAnnotation(token(0, lineLength));
+        while (readLine()) {
+            if (lineEquals(AnnotationIndex.INTERFACES)) {
+                readEntries(visitor, INTERFACES);
+            } else if (lineEquals(AnnotationIndex.CLASSES)) {
+                readEntries(visitor, CLASSES);
+            } else if (lineEquals(AnnotationIndex.ANNOTATIONS)) {
+                readEntries(visitor, ANNOTATIONS);
+            } else if (lineEquals(AnnotationIndex.METHODS)) {
+                readEntries(visitor, METHODS);
+            } else if (lineEquals(AnnotationIndex.CONSTRUCTORS)) {
+                readEntries(visitor, CONSTRUCTORS);
+            } else if (lineEquals(AnnotationIndex.FIELDS)) {
+                readEntries(visitor, FIELDS);
+            } else if (lineEquals(AnnotationIndex.END_MARKER)) {
+                visitor.endAnnotation();
+                return;
+            }
+        }
+        throw new RuntimeException("Premature end of file");
+    }
+
+    private void readEntries(IndexVisitor visitor, int section) throws IOException {
+        while (true) {
+            if (!readLine()) {
+                throw new RuntimeException("Premature end of file");
+            }
+            if (lineLength == 0) {
+                // A section ends with an empty line
+                return;
+            }
+            switch (section) {
+                case INTERFACES:
+                    visitor.onInterface(token(0, lineLength));
+                    break;
+                case CLASSES:
+                    visitor.onClass(token(0, lineLength));
+                    break;
+                case ANNOTATIONS:
+                    visitor.onAnnotationType(token(0, lineLength));
+                    break;
+                case METHODS: {
+                    int first = separator(0, false);
+                    int second = separator(first + 1, true);
+                    visitor.onMethod(token(0, first), token(first + 1, second), token(second + 1, lineLength));
+                }
+                break;
+                case CONSTRUCTORS: {
+                    int first = separator(0, true);
+                    visitor.onConstructor(token(0, first), token(first + 1, lineLength));
+                }
+                break;
+                case FIELDS: {
+                    int first = separator(0, true);
+                    visitor.onField(token(0, first), token(first + 1, lineLength));
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Finds the next separator in the current line
+     * @param from the index to start searching from
+     * @param last whether this should be the last separator in the line
+     * @return the index of the separator
+     * @throws IllegalArgumentException if the line does not contain the expected number of separators
+     */
+    private int separator(int from, boolean last) {
+        char separator = AnnotationIndex.MULTI_VALUE_FIELD_SEPARATOR.charAt(0);
+        int found = -1;
+        for (int i = from; i < lineLength; i++) {
+            if (line[i] == separator) {
+                found = i;
+                break;
+            }
+        }
+        // Like String.split(), a value may be empty unless it is the last one
+        if (found == -1 || found == lineLength - 1) {
+            throw new IllegalArgumentException(token(0, lineLength));
+        }
+        if (last) {
+            for (int i = found + 1; i < lineLength; i++) {
+                if (line[i] == separator) {
+                    throw new IllegalArgumentException(token(0, lineLength));
+                }
+            }
+        }
+        return found;
+    }
+
+    private String token(int start, int end) {
+        return new String(line, start, end - start);
+    }
+
+    private boolean lineEquals(String s) {
+        if (lineLength != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < lineLength; i++) {
+            if (line[i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the next line into {@link #line}, without the line terminator. Like {@link java.io.BufferedReader#readLine()}
+     * a line may be terminated by {@code \n}, {@code \r} or {@code \r\n}.
+     * @return {@code false} if the end of the stream was reached before anything was read
+     * @throws IOException if there was an error reading
+     */
+    private boolean readLine() throws IOException {
+        lineLength = 0;
+        boolean read = false;
+        while (true) {
+            if (position == limit && !fill()) {
+                return read;
+            }
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (buffer[position] == '\n') {
+                    position++;
+                    continue;
+                }
+            }
+            read = true;
+            int start = position;
+            int end = start;
+            while (end < limit && buffer[end] != '\n' && buffer[end] != '\r') {
+                end++;
+            }
+            append(start, end);
+            if (end < limit) {
+                position = end + 1;
+                if (buffer[end] == '\r') {
+                    skipLineFeed = true;
+                }
+                return true;
+            }
+            position = limit;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        int read = reader.read(buffer, 0, buffer.length);
+        while (read == 0) {
+            read = reader.read(buffer, 0, buffer.length);
+        }
+        if (read < 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    private void append(int start, int end) {
+        int length = end - start;
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        System.arraycopy(buffer, start, line, lineLength, length);
+        lineLength += length;
+    }
+}
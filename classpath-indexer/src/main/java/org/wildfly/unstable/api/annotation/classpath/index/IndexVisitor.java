@@ -0,0 +1,62 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+/**
+ * Receives the entries of a serialized index as they are read by {@link IndexReader}, so that the index can be built
+ * up directly in whatever form is needed without materializing an {@link OverallIndex} first.
+ *
+ * The entries for an annotation are passed between calls to {@link #startAnnotation(String)} and {@link #endAnnotation()}.
+ * Class names are in dotname format (e.g. {@code org.acme.MyClass}).
+ */
+interface IndexVisitor {
+
+    /**
+     * Called before the entries for an annotation
+     * @param annotation the fully qualified name of the annotation that was indexed
+     */
+    void startAnnotation(String annotation);
+
+    /**
+     * Called for an interface annotated with the current annotation
+     * @param className the name of the interface
+     */
+    void onInterface(String className);
+
+    /**
+     * Called for a class annotated with the current annotation
+     * @param className the name of the class
+     */
+    void onClass(String className);
+
+    /**
+     * Called for an annotation annotated with the current annotation
+     * @param className the name of the annotation
+     */
+    void onAnnotationType(String className);
+
+    /**
+     * Called for a method containing the current annotation
+     * @param className the name of the class containing the method
+     * @param methodName the name of the method
+     * @param descriptor the method descriptor
+     */
+    void onMethod(String className, String methodName, String descriptor);
+
+    /**
+     * Called for a constructor containing the current annotation
+     * @param className the name of the class containing the constructor
+     * @param descriptor the constructor descriptor
+     */
+    void onConstructor(String className, String descriptor);
+
+    /**
+     * Called for a field annotated with the current annotation
+     * @param className the name of the class containing the field
+     * @param fieldName the name of the field
+     */
+    void onField(String className, String fieldName);
+
+    /**
+     * Called after all the entries for the current annotation have been passed
+     */
+    void endAnnotation();
+}
@@ -5,26 +5,47 @@ import org.jboss.jandex.AnnotationTarget;
 import org.jboss.jandex.ClassInfo;
 import org.jboss.jandex.FieldInfo;
 import org.jboss.jandex.Index;
+import org.jboss.jandex.IndexReader;
 import org.jboss.jandex.Indexer;
-import org.jboss.jandex.JarIndexer;
 import org.jboss.jandex.MethodInfo;
-import org.jboss.jandex.Result;
 import org.jboss.jandex.TypeTarget;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ClassInfoScanner;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
- * <p>Reads a jar on the classpath and looks for all occurrences of an annotation.</p>
- * <p>The results are an instance of {@link JarAnnotationIndex}</p>.
+ * <p>Reads a jar on the classpath and looks for all occurrences of one or more annotations. The jar is only read
+ * and indexed once, however many annotations are searched for.</p>
+ * <p>The results are an instance of {@link JarAnnotationIndex} per annotation</p>.
  */
 public class JarAnnotationIndexer {
+    private static final String EMBEDDED_INDEX = "META-INF/jandex.idx";
+    // Versions 2 and 3 were written by Jandex 1.x, and are missing information about type annotations
+    private static final int MIN_EMBEDDED_INDEX_VERSION = 6;
+
     private final File file;
-    private final String unstableApiAnnotation;
 
-    private final Set<String> excludedClasses;
+    // The annotations to search for, and the classes to exclude for each
+    private final Map<String, Set<String>> excludedClassesByAnnotation;
+
+    private boolean useEmbeddedIndex;
+    private boolean embeddedIndexUsed;
+    private boolean useStreamingExtractor;
 
     /**
      * Constructor
@@ -37,33 +58,238 @@ public class JarAnnotationIndexer {
             throw new NullPointerException("Null parameter");
         }
         this.file = file;
-        this.unstableApiAnnotation = annotation;
-        this.excludedClasses = excludedClasses;
+        this.excludedClassesByAnnotation = Collections.singletonMap(annotation, excludedClasses);
+    }
+
+    /**
+     * Constructor
+     * @param file the jar file to scan
+     * @param excludedClassesByAnnotation the fully qualified names of the annotations to search for, e.g.
+     *                                    {@code org.acme.AnAnnotation}, mapped to the set of classes that should not
+     *                                    be scanned for that annotation when indexing the jar.
+     */
+    public JarAnnotationIndexer(File file, Map<String, Set<String>> excludedClassesByAnnotation) {
+        if (file == null || excludedClassesByAnnotation == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        if (excludedClassesByAnnotation.isEmpty()) {
+            throw new IllegalArgumentException("No annotations to search for");
+        }
+        for (Map.Entry<String, Set<String>> entry : excludedClassesByAnnotation.entrySet()) {
+            if (entry.getKey() == null || entry.getValue() == null) {
+                throw new NullPointerException("Null parameter");
+            }
+        }
+        this.file = file;
+        this.excludedClassesByAnnotation = new LinkedHashMap<>(excludedClassesByAnnotation);
+    }
+
+    /**
+     * Sets whether to use the Jandex index embedded in the jar as {@code META-INF/jandex.idx}, if it has one, instead
+     * of indexing the classes. The embedded index is only used if it can be read, and it lists exactly the classes
+     * in the jar and is not older than any of them. Otherwise, the classes are indexed as normal. Defaults to
+     * {@code false}.
+     * @param useEmbeddedIndex whether to use the embedded index
+     */
+    public void setUseEmbeddedIndex(boolean useEmbeddedIndex) {
+        this.useEmbeddedIndex = useEmbeddedIndex;
     }
 
     /**
-     * Scans the jar and creates a JarAnnotationIndex
+     * Sets whether to find the annotations by reading the annotation attributes of each class directly, instead of
+     * building a Jandex index of the jar. This is quicker, and the memory used does not grow with the size of the jar.
+     * The results are the same, except for the constructors of inner classes. Jandex derives their descriptors from
+     * the generic signature, which leaves out the outer instance parameter and erases type variables of the outer class
+     * to {@code Object}. The streaming extractor records the descriptors from the class file, which are what method
+     * references in other classes use. Defaults to {@code false}.
+     * @param useStreamingExtractor whether to read the annotation attributes directly
+     */
+    public void setUseStreamingExtractor(boolean useStreamingExtractor) {
+        this.useStreamingExtractor = useStreamingExtractor;
+    }
+
+    /**
+     * Scans the jar and creates a JarAnnotationIndex. This may only be used when searching for a single annotation.
      * @return the JarAnnotationIndex
      * @throws IOException if the jar file could not be read
+     * @throws IllegalStateException if this indexer is searching for more than one annotation
      */
     public JarAnnotationIndex scanForAnnotation() throws IOException {
-        // Use jandex to find all places the annotation is used in the jar
-        Indexer indexer = new Indexer();
-        Result result = JarIndexer.createJarIndex(file, indexer, false, true, false);
-        Index index = result.getIndex();
+        if (excludedClassesByAnnotation.size() != 1) {
+            throw new IllegalStateException("Searching for more than one annotation, use scanForAnnotations()");
+        }
+        return scanForAnnotations().values().iterator().next();
+    }
+
+    /**
+     * Scans the jar and creates a JarAnnotationIndex for each annotation searched for
+     * @return the JarAnnotationIndex for each annotation, in the order the annotations were passed in
+     * @throws IOException if the jar file could not be read
+     */
+    public Map<String, JarAnnotationIndex> scanForAnnotations() throws IOException {
+        embeddedIndexUsed = false;
+        try (ZipFile zipFile = new ZipFile(file)) {
+            if (useEmbeddedIndex) {
+                Index index = readEmbeddedIndex(zipFile);
+                if (index != null) {
+                    embeddedIndexUsed = true;
+                    return processIndex(index);
+                }
+            }
+            byte[][] descriptors = getAnnotationDescriptors();
+            if (useStreamingExtractor) {
+                StreamingAnnotationExtractor extractor = new StreamingAnnotationExtractor(excludedClassesByAnnotation, descriptors);
+                readClasses(zipFile, descriptors, extractor::extract);
+                return extractor.complete();
+            }
+            // Use jandex to index the jar once, and then find all places each annotation is used in it.
+            // Feed the classes to the indexer ourselves. JarIndexer would also write the index, or a copy of the jar
+            // containing it, next to the jar
+            Indexer indexer = new Indexer();
+            readClasses(zipFile, descriptors, (bytes, offset, length) -> indexer.index(new ByteArrayInputStream(bytes, offset, length)));
+            return processIndex(indexer.complete());
+        }
+    }
 
-        Collection<AnnotationInstance> annotations = index.getAnnotations(unstableApiAnnotation);
-        JarAnnotationIndex.ResultBuilder resultBuilder = JarAnnotationIndex.builder(unstableApiAnnotation);
-        for (AnnotationInstance annotation : annotations) {
-            processAnnotationTarget(resultBuilder, annotation.target());
+    private Map<String, JarAnnotationIndex> processIndex(Index index) {
+        Map<String, JarAnnotationIndex> results = new LinkedHashMap<>();
+        for (Map.Entry<String, Set<String>> entry : excludedClassesByAnnotation.entrySet()) {
+            String unstableApiAnnotation = entry.getKey();
+            Collection<AnnotationInstance> annotations = index.getAnnotations(unstableApiAnnotation);
+            JarAnnotationIndex.ResultBuilder resultBuilder = JarAnnotationIndex.builder(unstableApiAnnotation);
+            for (AnnotationInstance annotation : annotations) {
+                processAnnotationTarget(resultBuilder, entry.getValue(), annotation.target());
+            }
+            results.put(unstableApiAnnotation, resultBuilder.build());
         }
-        return resultBuilder.build();
+        return results;
     }
 
-    private void processAnnotationTarget(JarAnnotationIndex.ResultBuilder resultBuilder, AnnotationTarget target) {
+    private void readClasses(ZipFile zipFile, byte[][] descriptors, ClassConsumer consumer) throws IOException {
+        // A class can only be annotated with an annotation if its constant pool contains the annotation's
+        // descriptor, so only pass on the classes containing one of the descriptors
+        byte[] buffer = new byte[8192];
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                int length;
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    if (entry.getSize() > buffer.length) {
+                        buffer = new byte[(int) entry.getSize()];
+                    }
+                    length = readFully(in, buffer);
+                    int next;
+                    if (length == buffer.length && (next = in.read()) != -1) {
+                        // The size was not known up front, and the class did not fit in the buffer
+                        ByteArrayOutputStream out = new ByteArrayOutputStream(buffer.length * 2);
+                        out.write(buffer, 0, length);
+                        out.write(next);
+                        in.transferTo(out);
+                        buffer = out.toByteArray();
+                        length = buffer.length;
+                    }
+                }
+                if (mayBeAnnotated(buffer, length, descriptors)) {
+                    consumer.accept(buffer, 0, length);
+                }
+            }
+        }
+    }
+
+    private byte[][] getAnnotationDescriptors() throws IOException {
+        byte[][] descriptors = new byte[excludedClassesByAnnotation.size()][];
+        int i = 0;
+        for (String annotation : excludedClassesByAnnotation.keySet()) {
+            // Encode the descriptors the same way as UTF8 entries in the constant pool, including the length
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bout)) {
+                out.writeUTF("L" + annotation.replace('.', '/') + ";");
+            }
+            descriptors[i++] = bout.toByteArray();
+        }
+        return descriptors;
+    }
+
+    private static boolean mayBeAnnotated(byte[] bytes, int length, byte[][] descriptors) {
+        try {
+            return ClassInfoScanner.containsUtf8Constant(bytes, 0, length, descriptors);
+        } catch (IOException | RuntimeException e) {
+            // Let the indexer deal with anything we cannot parse, as it did before there was a prefilter
+            return true;
+        }
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read == -1) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    /**
+     * Whether the last scan used the index embedded in the jar
+     * @return {@code true} if the embedded index was used
+     */
+    boolean isEmbeddedIndexUsed() {
+        return embeddedIndexUsed;
+    }
+
+    private static Index readEmbeddedIndex(ZipFile zipFile) {
+        ZipEntry indexEntry = zipFile.getEntry(EMBEDDED_INDEX);
+        if (indexEntry == null) {
+            return null;
+        }
+        Index index;
+        try (InputStream in = new BufferedInputStream(zipFile.getInputStream(indexEntry))) {
+            IndexReader reader = new IndexReader(in);
+            if (reader.getIndexVersion() < MIN_EMBEDDED_INDEX_VERSION) {
+                return null;
+            }
+            index = reader.read();
+        } catch (IOException | RuntimeException e) {
+            // The index is corrupt, or was written by a newer version of Jandex than ours (UnsupportedVersion)
+            return null;
+        }
+        return isUpToDate(zipFile, indexEntry, index) ? index : null;
+    }
+
+    private static boolean isUpToDate(ZipFile zipFile, ZipEntry indexEntry, Index index) {
+        Set<String> knownClasses = new HashSet<>();
+        for (ClassInfo classInfo : index.getKnownClasses()) {
+            String className = classInfo.name().toString();
+            if (!className.endsWith("module-info")) {
+                knownClasses.add(className);
+            }
+        }
+        int classes = 0;
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            String name = entry.getName();
+            if (entry.isDirectory() || !name.endsWith(".class") || name.startsWith("META-INF/") || name.endsWith("module-info.class")) {
+                continue;
+            }
+            if (indexEntry.getTime() != -1 && entry.getTime() > indexEntry.getTime()) {
+                return false;
+            }
+            if (!knownClasses.contains(name.substring(0, name.length() - ".class".length()).replace('/', '.'))) {
+                return false;
+            }
+            classes++;
+        }
+        return classes == knownClasses.size();
+    }
+
+    private void processAnnotationTarget(JarAnnotationIndex.ResultBuilder resultBuilder, Set<String> excludedClasses, AnnotationTarget target) {
         if (target.kind() == AnnotationTarget.Kind.TYPE) {
             AnnotationTarget enclosingTarget = ((TypeTarget) target).enclosingTarget();
-            processAnnotationTarget(resultBuilder, enclosingTarget);
+            processAnnotationTarget(resultBuilder, excludedClasses, enclosingTarget);
         } if (target.kind() == AnnotationTarget.Kind.CLASS) {
             ClassInfo classInfo = target.asClass();
             String className = classInfo.name().toString();
@@ -104,4 +330,8 @@ public class JarAnnotationIndexer {
             }
         }
     }
+
+    private interface ClassConsumer {
+        void accept(byte[] bytes, int offset, int length) throws IOException;
+    }
 }
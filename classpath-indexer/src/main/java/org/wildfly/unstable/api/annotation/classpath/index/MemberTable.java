@@ -0,0 +1,387 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * An open-addressing hash table used by the {@link RuntimeIndex} to look up the annotations for classes, fields and methods.
+ *
+ * The key of an entry consists of one or more parts, i.e. the class name for classes, the class and field names for fields,
+ * and the class name, method name and descriptor for methods. Each part is stored in the same format as the UTF8
+ * entries of the class file constant pool, i.e. prefixed by its two length bytes, so the parts can simply be concatenated,
+ * and a lookup can check them against the constant pool bytes directly.
+ *
+ * The key bytes of all the entries are stored contiguously in one array. Each slot of the table is described by
+ * an int containing the hash of the key, a long containing the offset (in the upper 32 bits) and length (in the lower
+ * 32 bits) of the key bytes, and a long containing the bitmask of the annotations as described by {@link AnnotationIds}.
+ * So a lookup is a single probe sequence over a few primitive arrays, followed by a range compare of the key bytes for
+ * slots with a matching hash.
+ *
+ * The hash of a key is calculated from the hashes of its parts with {@link #combine(int, int)}, and the hash of a part
+ * is the same as {@link RuntimeIndex.ByteArrayKey#hashCode()} for its bytes. So a caller which already knows the
+ * hashes of the parts, e.g. because they were calculated once per constant pool entry, does not need to look at the
+ * bytes again until comparing them with a matching slot.
+ */
+final class MemberTable {
+
+    private static final int C1 = 0xcc9e2d51;
+    private static final int C2 = 0x1b873593;
+
+    // An empty slot has a key reference of 0. Since each key part includes its length bytes, no key has length 0.
+    private static final long EMPTY = 0;
+
+    private final byte[] keyBytes;
+    private final int[] slotHashes;
+    private final long[] slotKeys;
+    private final long[] slotMasks;
+    private final int size;
+    private final int mask;
+    private final int shift;
+
+    private MemberTable(byte[] keyBytes, int[] slotHashes, long[] slotKeys, long[] slotMasks, int size) {
+        this.keyBytes = keyBytes;
+        this.slotHashes = slotHashes;
+        this.slotKeys = slotKeys;
+        this.slotMasks = slotMasks;
+        this.size = size;
+        this.mask = slotHashes.length - 1;
+        this.shift = 32 - Integer.numberOfTrailingZeros(slotHashes.length);
+    }
+
+    /**
+     * Calculates the hash of a key part, or of any other bytes. This is the 32 bit variant of MurmurHash3 with a seed
+     * of 0, which mixes much better than the usual {@code 31 * h + b}, and handles four bytes per step.
+     * @param arr the array containing the bytes
+     * @param start the first index of the bytes to include
+     * @param length the number of bytes to include
+     * @return the hash
+     */
+    static int hash(byte[] arr, int start, int length) {
+        int hash = 0;
+        int blocksEnd = start + (length & ~3);
+        for (int i = start; i < blocksEnd; i += 4) {
+            int k = (arr[i] & 0xff) | (arr[i + 1] & 0xff) << 8 | (arr[i + 2] & 0xff) << 16 | arr[i + 3] << 24;
+            hash = mixHash(hash, k);
+        }
+        int k = 0;
+        switch (length & 3) {
+            case 3:
+                k ^= (arr[blocksEnd + 2] & 0xff) << 16;
+            case 2:
+                k ^= (arr[blocksEnd + 1] & 0xff) << 8;
+            case 1:
+                k ^= arr[blocksEnd] & 0xff;
+                hash ^= mixK(k);
+        }
+        return finalizeHash(hash ^ length);
+    }
+
+    /**
+     * Combines the hash of a key with the hash of its next part
+     * @param hash the hash of the parts so far. For the first part, just its hash
+     * @param partHash the hash of the next part, as calculated by {@link #hash(byte[], int, int)}
+     * @return the hash of the key including the next part
+     */
+    static int combine(int hash, int partHash) {
+        return finalizeHash(mixHash(hash, partHash));
+    }
+
+    /**
+     * Calculates the hash of a key in the format stored in the table, i.e. with the parts concatenated
+     * @param arr the array containing the key
+     * @param start the index of the first byte of the key
+     * @param length the length of the key
+     * @return the hash
+     */
+    static int keyHash(byte[] arr, int start, int length) {
+        int end = start + length;
+        int partLength = partLength(arr, start);
+        int hash = hash(arr, start, partLength);
+        for (int pos = start + partLength; pos < end; pos += partLength) {
+            partLength = partLength(arr, pos);
+            hash = combine(hash, hash(arr, pos, partLength));
+        }
+        return hash;
+    }
+
+    private static int partLength(byte[] arr, int pos) {
+        return 2 + (((arr[pos] & 0xff) << 8) | (arr[pos + 1] & 0xff));
+    }
+
+    private static int mixK(int k) {
+        return Integer.rotateLeft(k * C1, 15) * C2;
+    }
+
+    private static int mixHash(int hash, int k) {
+        return Integer.rotateLeft(hash ^ mixK(k), 13) * 5 + 0xe6546b64;
+    }
+
+    private static int finalizeHash(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    /**
+     * Gets the number of entries in the table
+     * @return the number of entries
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Gets the annotations for a key with one part, i.e. a class
+     * @return the annotation bitmask, or {@code 0} if the key is not in the table
+     */
+    long get(byte[] a, int aStart, int aLength) {
+        return get(hash(a, aStart, aLength), a, aStart, aLength);
+    }
+
+    /**
+     * Gets the annotations for a key with one part, where the hash is already known
+     * @param hash the hash of the key, i.e. {@code hash(a, aStart, aLength)}
+     * @return the annotation bitmask, or {@code 0} if the key is not in the table
+     */
+    long get(int hash, byte[] a, int aStart, int aLength) {
+        for (int slot = firstSlot(hash); ; slot = (slot + 1) & mask) {
+            long key = slotKeys[slot];
+            if (key == EMPTY) {
+                return 0;
+            }
+            if (slotHashes[slot] == hash && keyLength(key) == aLength) {
+                int offset = keyOffset(key);
+                if (Arrays.equals(keyBytes, offset, offset + aLength, a, aStart, aStart + aLength)) {
+                    return slotMasks[slot];
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the annotations for a key with two parts, i.e. a class and field name
+     * @return the annotation bitmask, or {@code 0} if the key is not in the table
+     */
+    long get(byte[] a, int aStart, int aLength, byte[] b, int bStart, int bLength) {
+        return get(hash(a, aStart, aLength), a, aStart, aLength, hash(b, bStart, bLength), b, bStart, bLength);
+    }
+
+    /**
+     * Gets the annotations for a key with two parts, where the hashes of the parts are already known
+     * @param aHash the hash of the first part, i.e. {@code hash(a, aStart, aLength)}
+     * @param bHash the hash of the second part
+     * @return the annotation bitmask, or {@code 0} if the key is not in the table
+     */
+    long get(int aHash, byte[] a, int aStart, int aLength, int bHash, byte[] b, int bStart, int bLength) {
+        int hash = combine(aHash, bHash);
+        for (int slot = firstSlot(hash); ; slot = (slot + 1) & mask) {
+            long key = slotKeys[slot];
+            if (key == EMPTY) {
+                return 0;
+            }
+            if (slotHashes[slot] == hash && keyLength(key) == aLength + bLength) {
+                int offset = keyOffset(key);
+                if (Arrays.equals(keyBytes, offset, offset + aLength, a, aStart, aStart + aLength)
+                        && Arrays.equals(keyBytes, offset + aLength, offset + aLength + bLength, b, bStart, bStart + bLength)) {
+                    return slotMasks[slot];
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the annotations for a key with three parts, i.e. a class, method name and method descriptor
+     * @return the annotation bitmask, or {@code 0} if the key is not in the table
+     */
+    long get(byte[] a, int aStart, int aLength, byte[] b, int bStart, int bLength, byte[] c, int cStart, int cLength) {
+        return get(hash(a, aStart, aLength), a, aStart, aLength, hash(b, bStart, bLength), b, bStart, bLength,
+                hash(c, cStart, cLength), c, cStart, cLength);
+    }
+
+    /**
+     * Gets the annotations for a key with three parts, where the hashes of the parts are already known
+     * @param aHash the hash of the first part, i.e. {@code hash(a, aStart, aLength)}
+     * @param bHash the hash of the second part
+     * @param cHash the hash of the third part
+     * @return the annotation bitmask, or {@code 0} if the key is not in the table
+     */
+    long get(int aHash, byte[] a, int aStart, int aLength, int bHash, byte[] b, int bStart, int bLength,
+             int cHash, byte[] c, int cStart, int cLength) {
+        int hash = combine(combine(aHash, bHash), cHash);
+        for (int slot = firstSlot(hash); ; slot = (slot + 1) & mask) {
+            long key = slotKeys[slot];
+            if (key == EMPTY) {
+                return 0;
+            }
+            if (slotHashes[slot] == hash && keyLength(key) == aLength + bLength + cLength) {
+                int offset = keyOffset(key);
+                int bOffset = offset + aLength;
+                int cOffset = bOffset + bLength;
+                if (Arrays.equals(keyBytes, offset, bOffset, a, aStart, aStart + aLength)
+                        && Arrays.equals(keyBytes, bOffset, cOffset, b, bStart, bStart + bLength)
+                        && Arrays.equals(keyBytes, cOffset, cOffset + cLength, c, cStart, cStart + cLength)) {
+                    return slotMasks[slot];
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes this table in the binary format read by {@link #read(ByteBuffer)}. The arrays
+     * are written as they are, so reading them back is a bulk copy.
+     *
+     * @param out the stream to write to
+     * @throws IOException if there was an error writing
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(keyBytes.length);
+        out.write(keyBytes);
+        out.writeInt(slotHashes.length);
+        for (int hash : slotHashes) {
+            out.writeInt(hash);
+        }
+        for (long key : slotKeys) {
+            out.writeLong(key);
+        }
+        for (long annotations : slotMasks) {
+            out.writeLong(annotations);
+        }
+        out.writeInt(size);
+    }
+
+    /**
+     * Reads a table written by {@link #write(DataOutputStream)}
+     *
+     * @param buffer the buffer to read from. Its position is moved to after the table
+     * @return the table
+     */
+    static MemberTable read(ByteBuffer buffer) {
+        byte[] keyBytes = new byte[buffer.getInt()];
+        buffer.get(keyBytes);
+        int capacity = buffer.getInt();
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Invalid table capacity " + capacity);
+        }
+        int[] slotHashes = new int[capacity];
+        buffer.asIntBuffer().get(slotHashes);
+        buffer.position(buffer.position() + capacity * Integer.BYTES);
+        long[] slotKeys = new long[capacity];
+        buffer.asLongBuffer().get(slotKeys);
+        buffer.position(buffer.position() + capacity * Long.BYTES);
+        long[] slotMasks = new long[capacity];
+        buffer.asLongBuffer().get(slotMasks);
+        buffer.position(buffer.position() + capacity * Long.BYTES);
+        int size = buffer.getInt();
+        return new MemberTable(keyBytes, slotHashes, slotKeys, slotMasks, size);
+    }
+
+    private int firstSlot(int hash) {
+        // Fibonacci hashing, so that the high bits of the hash are used too
+        return (hash * 0x9E3779B9) >>> shift;
+    }
+
+    private static int keyOffset(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static int keyLength(long key) {
+        return (int) key;
+    }
+
+    /**
+     * Collects the entries for a {@link MemberTable}
+     */
+    static final class Builder {
+        // Keyed by the concatenated key parts
+        private final Map<RuntimeIndex.ByteArrayKey, Long> entries = new LinkedHashMap<>();
+
+        /**
+         * Adds annotations for a key. If the key has already been added, the annotations are added to the existing ones.
+         * @param annotations the bitmask of the annotations, as described by {@link AnnotationIds}
+         * @param parts the key parts, each in the format written by {@link java.io.DataOutputStream#writeUTF(String)}
+         */
+        void add(long annotations, byte[]... parts) {
+            byte[] key;
+            if (parts.length == 1) {
+                key = parts[0];
+            } else {
+                int length = 0;
+                for (byte[] part : parts) {
+                    length += part.length;
+                }
+                key = new byte[length];
+                int offset = 0;
+                for (byte[] part : parts) {
+                    System.arraycopy(part, 0, key, offset, part.length);
+                    offset += part.length;
+                }
+            }
+            entries.merge(RuntimeIndex.ByteArrayKey.create(key, 0, key.length), annotations, (a, b) -> a | b);
+        }
+
+        /**
+         * Adds all the entries from another builder
+         * @param other the other builder
+         * @param function returns the bitmask to use in this builder for a bitmask of the other builder, e.g. when
+         *                 they use different annotation ids
+         */
+        void addAll(Builder other, LongUnaryOperator function) {
+            for (Map.Entry<RuntimeIndex.ByteArrayKey, Long> entry : other.entries.entrySet()) {
+                entries.merge(entry.getKey(), function.applyAsLong(entry.getValue()), (a, b) -> a | b);
+            }
+        }
+
+        /**
+         * Replaces the annotation bitmasks of all the entries, e.g. when the annotation ids have been renumbered
+         * @param function returns the new bitmask for an existing one
+         */
+        void replaceMasks(LongUnaryOperator function) {
+            entries.replaceAll((key, annotations) -> function.applyAsLong(annotations));
+        }
+
+        MemberTable build() {
+            // Keep the load factor at or below 0.5 so probe sequences stay short. The shift used by
+            // firstSlot() needs at least two slots.
+            int capacity = Math.max(2, Integer.highestOneBit(Math.max(1, entries.size()) * 2 - 1) << 1);
+            int mask = capacity - 1;
+            int shift = 32 - Integer.numberOfTrailingZeros(capacity);
+
+            int totalKeyLength = 0;
+            for (RuntimeIndex.ByteArrayKey key : entries.keySet()) {
+                totalKeyLength += key.length();
+            }
+
+            byte[] keyBytes = new byte[totalKeyLength];
+            int[] slotHashes = new int[capacity];
+            long[] slotKeys = new long[capacity];
+            long[] slotMasks = new long[capacity];
+
+            int offset = 0;
+            for (Map.Entry<RuntimeIndex.ByteArrayKey, Long> entry : entries.entrySet()) {
+                RuntimeIndex.ByteArrayKey key = entry.getKey();
+                int length = key.length();
+                key.copyTo(keyBytes, offset);
+                int hash = keyHash(keyBytes, offset, length);
+
+                int slot = (hash * 0x9E3779B9) >>> shift;
+                while (slotKeys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                slotHashes[slot] = hash;
+                slotKeys[slot] = ((long) offset << 32) | length;
+                slotMasks[slot] = entry.getValue();
+
+                offset += length;
+            }
+            return new MemberTable(keyBytes, slotHashes, slotKeys, slotMasks, entries.size());
+        }
+    }
+}
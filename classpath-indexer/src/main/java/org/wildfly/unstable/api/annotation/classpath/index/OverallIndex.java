@@ -2,31 +2,36 @@ package org.wildfly.unstable.api.annotation.classpath.index;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.net.URI;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
 import java.net.URL;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 /**
  * <p>Takes JarAnnotationIndex entries, which are scans from individual classpath entries and
@@ -36,7 +41,13 @@ import java.util.zip.ZipFile;
  * <p>This overall index can be serialized and deserialized.</p>
  */
 public class OverallIndex {
+    // The name of the index in a zipped index
+    private static final String ZIP_ENTRY = "index.txt";
+
     private final Map<String, AnnotationIndex> indexes;
+    private boolean useEmbeddedIndexes;
+    private boolean useStreamingExtractor;
+    private int zipCompressionLevel = Deflater.DEFAULT_COMPRESSION;
 
     /**
      * Creates a new overall index
@@ -49,6 +60,38 @@ public class OverallIndex {
         this.indexes = indexes;
     }
 
+    /**
+     * Sets whether to use the Jandex indexes embedded in the scanned jars as {@code META-INF/jandex.idx}, rather than
+     * indexing the classes, when they are up-to-date. Defaults to {@code false}.
+     * @param useEmbeddedIndexes whether to use the embedded indexes
+     * @see JarAnnotationIndexer#setUseEmbeddedIndex(boolean)
+     */
+    public void setUseEmbeddedIndexes(boolean useEmbeddedIndexes) {
+        this.useEmbeddedIndexes = useEmbeddedIndexes;
+    }
+
+    /**
+     * Sets whether to find the annotations by reading the annotation attributes of the classes directly, rather than
+     * building a Jandex index of each scanned jar. Defaults to {@code false}.
+     * @param useStreamingExtractor whether to read the annotation attributes directly
+     * @see JarAnnotationIndexer#setUseStreamingExtractor(boolean)
+     */
+    public void setUseStreamingExtractor(boolean useStreamingExtractor) {
+        this.useStreamingExtractor = useStreamingExtractor;
+    }
+
+    /**
+     * Sets the compression level used when saving the index in the {@link Format#ZIP} format. Defaults to
+     * {@link Deflater#DEFAULT_COMPRESSION}.
+     * @param zipCompressionLevel the compression level, from 0 to 9, or -1 for the default
+     */
+    public void setZipCompressionLevel(int zipCompressionLevel) {
+        if ((zipCompressionLevel < 0 || zipCompressionLevel > 9) && zipCompressionLevel != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level " + zipCompressionLevel);
+        }
+        this.zipCompressionLevel = zipCompressionLevel;
+    }
+
     /**
      * Scans a jar and adds its annotations to our overall index
      * @param jar the jar to scan
@@ -57,6 +100,8 @@ public class OverallIndex {
      */
     public void scanJar(File jar, String annotation) throws IOException {
         JarAnnotationIndexer indexer = new JarAnnotationIndexer(jar, annotation, Collections.emptySet());
+        indexer.setUseEmbeddedIndex(useEmbeddedIndexes);
+        indexer.setUseStreamingExtractor(useStreamingExtractor);
         JarAnnotationIndex jarAnnotationIndex = indexer.scanForAnnotation();
         mergeAnnotationIndex(jarAnnotationIndex);
     }
@@ -70,14 +115,85 @@ public class OverallIndex {
      */
     public void scanJar(File jar, String annotation, Set<String> excludedClasses) throws IOException {
         JarAnnotationIndexer indexer = new JarAnnotationIndexer(jar, annotation, excludedClasses);
+        indexer.setUseEmbeddedIndex(useEmbeddedIndexes);
+        indexer.setUseStreamingExtractor(useStreamingExtractor);
         JarAnnotationIndex jarAnnotationIndex = indexer.scanForAnnotation();
         mergeAnnotationIndex(jarAnnotationIndex);
     }
 
+    /**
+     * Scans a jar for several annotations and adds them to our overall index. The jar is only read once, so this
+     * is quicker than calling {@link #scanJar(File, String, Set)} for each annotation.
+     * @param jar the jar to scan
+     * @param excludedClassesByAnnotation the annotations we are searching for, mapped to the names of classes that
+     *                                    we should not scan for that annotation
+     * @throws IOException if there were problems reading the jar
+     */
+    public void scanJar(File jar, Map<String, Set<String>> excludedClassesByAnnotation) throws IOException {
+        JarAnnotationIndexer indexer = new JarAnnotationIndexer(jar, excludedClassesByAnnotation);
+        indexer.setUseEmbeddedIndex(useEmbeddedIndexes);
+        indexer.setUseStreamingExtractor(useStreamingExtractor);
+        for (JarAnnotationIndex jarAnnotationIndex : indexer.scanForAnnotations().values()) {
+            mergeAnnotationIndex(jarAnnotationIndex);
+        }
+    }
 
-    private void merge(OverallIndex index) {
-        for (AnnotationIndex ai : index.indexes.values()) {
-            mergeAnnotationIndex(ai);
+    /**
+     * Scans several jars for the same annotations concurrently, and adds them to our overall index. Each jar is
+     * indexed on its own, and the results are merged in the order of {@code jars}, so the overall index is the same
+     * as when calling {@link #scanJar(File, Map)} for each jar in turn.
+     * @param jars the jars to scan
+     * @param excludedClassesByAnnotation the annotations we are searching for, mapped to the names of classes that
+     *                                    we should not scan for that annotation
+     * @param executor the executor to index the jars with
+     * @throws IOException if there were problems reading any of the jars. Nothing is added to the index in that case
+     */
+    public void scanJars(Collection<Path> jars, Map<String, Set<String>> excludedClassesByAnnotation, Executor executor) throws IOException {
+        if (jars == null || excludedClassesByAnnotation == null || executor == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        Map<Path, Map<String, Set<String>>> excludedClassesByAnnotationByJar = new LinkedHashMap<>();
+        for (Path jar : jars) {
+            excludedClassesByAnnotationByJar.put(jar, excludedClassesByAnnotation);
+        }
+        scanJars(excludedClassesByAnnotationByJar, executor);
+    }
+
+    /**
+     * Scans several jars concurrently, each for its own annotations, and adds them to our overall index. Each jar is
+     * indexed on its own, and the results are merged in the iteration order of the map, so the overall index is
+     * the same as when calling {@link #scanJar(File, Map)} for each jar in turn.
+     * @param excludedClassesByAnnotationByJar the jars to scan, mapped to the annotations to search for in each. The
+     *                                         annotations are mapped to the names of classes we should not scan for
+     *                                         that annotation
+     * @param executor the executor to index the jars with
+     * @throws IOException if there were problems reading any of the jars. Nothing is added to the index in that case
+     */
+    public void scanJars(Map<Path, Map<String, Set<String>>> excludedClassesByAnnotationByJar, Executor executor) throws IOException {
+        if (excludedClassesByAnnotationByJar == null || executor == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        List<CompletableFuture<Map<String, JarAnnotationIndex>>> futures = new ArrayList<>();
+        for (Map.Entry<Path, Map<String, Set<String>>> entry : excludedClassesByAnnotationByJar.entrySet()) {
+            // Create the indexers up front, so that invalid parameters are reported here
+            JarAnnotationIndexer indexer = new JarAnnotationIndexer(entry.getKey().toFile(), entry.getValue());
+            indexer.setUseEmbeddedIndex(useEmbeddedIndexes);
+            indexer.setUseStreamingExtractor(useStreamingExtractor);
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return indexer.scanForAnnotations();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor));
+        }
+
+        List<Map<String, JarAnnotationIndex>> results = new ArrayList<>(futures.size());
+        Futures.join(futures, results::add);
+        for (Map<String, JarAnnotationIndex> result : results) {
+            for (JarAnnotationIndex jarAnnotationIndex : result.values()) {
+                mergeAnnotationIndex(jarAnnotationIndex);
+            }
         }
     }
 
@@ -101,37 +217,53 @@ public class OverallIndex {
 
         Format format = determineFormat(path.getFileName().toString());
         if (format == null) {
-            throw new IllegalArgumentException("Suffix of file should be .txt or .zip");
+            throw new IllegalArgumentException("Suffix of file should be .txt, .zip or .idx");
         }
         Files.createDirectories(path.getParent());
         if (Files.exists(path)) {
             Files.delete(path);
         }
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+            save(out, format);
+        }
+    }
+
+    /**
+     * Saves the overall index to a stream, e.g. to embed it in another archive. The stream is not closed.
+     *
+     * @param outputStream the stream to write to
+     * @param format the format to write the index in
+     * @throws IOException if there was an error writing to the stream
+     */
+    public void save(OutputStream outputStream, Format format) throws IOException {
+        if (outputStream == null || format == null) {
+            throw new NullPointerException("Null parameter");
+        }
         if (format == Format.TEXT) {
-            Files.createFile(path);
-            saveIndex(path);
+            saveIndex(outputStream);
+        } else if (format == Format.BINARY) {
+            RuntimeIndex runtimeIndex = RuntimeIndex.convertOverallIndexToRuntimeIndex(this);
+            runtimeIndex.writeBinary(outputStream);
         } else {
-            Path tempIndex = Files.createTempFile("working", ".txt");
-            try {
-                saveIndex(tempIndex);
-
-                URI jarUri = URI.create("jar:file:" + path.normalize().toAbsolutePath().toUri().getPath());
-                Map<String, String> env = Map.of("create", "true");
-                try (FileSystem jar = FileSystems.newFileSystem(jarUri, env)) {
-                    Path jarPath = jar.getPath("index.txt");
-                    Files.copy(tempIndex, jarPath);
-                }
-            } finally {
-                Files.delete(tempIndex);
-            }
+            // Write the entry straight into the zip, finishing rather than closing it to leave the stream open
+            ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream);
+            zipOutputStream.setLevel(zipCompressionLevel);
+            zipOutputStream.putNextEntry(new ZipEntry(ZIP_ENTRY));
+            saveIndex(zipOutputStream);
+            zipOutputStream.closeEntry();
+            zipOutputStream.finish();
+            zipOutputStream.flush();
         }
     }
 
-    private void saveIndex(Path path) throws IOException {
-        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(path.toFile())))) {
-            for (AnnotationIndex annotationIndex : indexes.values()) {
-                annotationIndex.save(writer);
-            }
+    private void saveIndex(OutputStream outputStream) throws IOException {
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(outputStream)));
+        for (AnnotationIndex annotationIndex : indexes.values()) {
+            annotationIndex.save(writer);
+        }
+        writer.flush();
+        if (writer.checkError()) {
+            throw new IOException("Error writing the index");
         }
     }
 
@@ -160,16 +292,12 @@ public class OverallIndex {
      * @throws IOException if there are problems reading any of the files
      */
     static OverallIndex load(Path path, Path... additional) throws IOException {
-        if (!Files.exists(path) || Files.isDirectory(path)) {
-            throw new FileNotFoundException(path.toString());
-        }
-        OverallIndex index = loadIndex(path);
-
+        AnnotationIndex.Loader loader = new AnnotationIndex.Loader();
+        read(path, loader);
         for (Path additionalPath : additional) {
-            index.merge(loadIndex(additionalPath));
+            read(additionalPath, loader);
         }
-
-        return index;
+        return new OverallIndex(loader.getIndexes());
     }
 
     /**
@@ -180,65 +308,127 @@ public class OverallIndex {
      * @throws IOException if there are problems reading any of the URLs
      */
     static OverallIndex load(List<URL> urls) throws IOException {
-        OverallIndex index = null;
+        if (urls.isEmpty()) {
+            return null;
+        }
+        AnnotationIndex.Loader loader = new AnnotationIndex.Loader();
         for (URL url : urls) {
-            if (index == null) {
-                index = loadIndex(url);
-            } else {
-                index.merge(loadIndex(url));
-            }
+            read(url, loader);
         }
-        return index;
+        return new OverallIndex(loader.getIndexes());
     }
 
+    /**
+     * Loads the overall index from a stream containing a serialized index. The stream is not closed.
+     * @param inputStream the stream
+     * @param format the format of the serialized index. Only {@link Format#TEXT} and {@link Format#ZIP} are supported
+     * @return the created overall index
+     * @throws IOException if there are problems reading the stream
+     */
+    static OverallIndex load(InputStream inputStream, Format format) throws IOException {
+        AnnotationIndex.Loader loader = new AnnotationIndex.Loader();
+        read(inputStream, format, loader);
+        return new OverallIndex(loader.getIndexes());
+    }
 
-    private static OverallIndex loadIndex(Path path) throws IOException {
+    /**
+     * Reads a file containing a serialized index, passing the entries to a visitor
+     * @param path the location of the file
+     * @param visitor the visitor
+     * @throws IOException if there are problems reading the file
+     */
+    static void read(Path path, IndexVisitor visitor) throws IOException {
         if (!Files.exists(path) || Files.isDirectory(path)) {
             throw new FileNotFoundException(path.toString());
         }
-        return loadIndex(path.toUri().toURL());
+        read(path.toUri().toURL(), visitor);
     }
 
-    private static OverallIndex loadIndex(URL url) throws IOException {
+    /**
+     * Reads a location containing a serialized index, passing the entries to a visitor
+     * @param url the location
+     * @param visitor the visitor
+     * @throws IOException if there are problems reading the location
+     */
+    static void read(URL url, IndexVisitor visitor) throws IOException {
         Format format = determineFormat(url.getFile());
-        if (format == Format.ZIP) {
-            // Look for index.txt in the zip file. We need to copy it to a temp file first to read it
-            Path temp = Files.createTempFile("index", "zip");
-            try (InputStream in = new BufferedInputStream(url.openStream())) {
-                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp.toFile()))) {
-                    byte[] bytes = new byte[8192];
-
-                    int read = in.read(bytes);
-                    while (read != -1) {
-                        out.write(bytes, 0, read);
-                        read = in.read(bytes);
-                    }
-                }
-
-                try (ZipFile zipFile = new ZipFile(temp.toFile())) {
-                    ZipEntry indexEntry = zipFile.getEntry("index.txt");
+        if (format == Format.BINARY) {
+            throw new IllegalArgumentException(url + " is a binary index, which can not be merged with other indexes");
+        }
+        if (format == Format.ZIP && url.getProtocol().equals("file")) {
+            // Open the zip directly, which only reads the central directory and the index entry
+            File file = toFile(url);
+            if (file != null) {
+                try (ZipFile zipFile = new ZipFile(file)) {
+                    ZipEntry indexEntry = zipFile.getEntry(ZIP_ENTRY);
                     if (indexEntry == null) {
                         throw new IllegalArgumentException(url + " does not appear to be a valid zipped index");
                     }
                     try (InputStream inputStream = zipFile.getInputStream(indexEntry)) {
-                        return readFromInputStream(inputStream);
+                        readFromInputStream(inputStream, visitor);
+                        return;
                     }
                 }
+            }
+        }
+        try (InputStream inputStream = url.openStream()) {
+            read(inputStream, format, url, visitor);
+        }
+    }
 
-            } finally {
-                Files.delete(temp);
+    /**
+     * Reads a stream containing a serialized index, passing the entries to a visitor. The stream is not closed.
+     * @param inputStream the stream
+     * @param format the format of the serialized index. Only {@link Format#TEXT} and {@link Format#ZIP} are supported
+     * @param visitor the visitor
+     * @throws IOException if there are problems reading the stream
+     */
+    static void read(InputStream inputStream, Format format, IndexVisitor visitor) throws IOException {
+        if (inputStream == null || format == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        if (format == Format.BINARY) {
+            throw new IllegalArgumentException("A binary index can not be loaded as an OverallIndex");
+        }
+        read(inputStream, format, "The stream", visitor);
+    }
+
+    private static void read(InputStream inputStream, Format format, Object source, IndexVisitor visitor) throws IOException {
+        if (format == Format.ZIP) {
+            // Stream through the zip until we get to index.txt, rather than needing the whole file
+            ZipInputStream zipInputStream = new ZipInputStream(new BufferedInputStream(inputStream));
+            ZipEntry entry = zipInputStream.getNextEntry();
+            while (entry != null) {
+                if (entry.getName().equals(ZIP_ENTRY)) {
+                    readFromInputStream(zipInputStream, visitor);
+                    return;
+                }
+                entry = zipInputStream.getNextEntry();
             }
+            throw new IllegalArgumentException(source + " does not appear to be a valid zipped index");
         }
-        return readFromInputStream(url.openStream());
+        readFromInputStream(inputStream, visitor);
     }
 
-    private static OverallIndex readFromInputStream(InputStream inputStream) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
-            Map<String, AnnotationIndex> indexes = AnnotationIndex.loadAll(reader);
-            return new OverallIndex(indexes);
+    /**
+     * Gets the file a {@code file:} URL points to
+     * @param url the URL
+     * @return the file, or {@code null} if the URL can not be converted to a plain file
+     */
+    static File toFile(URL url) {
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            // Not a plain file URL, e.g. it has a query. Read it as a stream instead
+            return null;
         }
     }
 
+    private static void readFromInputStream(InputStream inputStream, IndexVisitor visitor) throws IOException {
+        // The caller closes the stream
+        new IndexReader(new InputStreamReader(inputStream)).accept(visitor);
+    }
+
 
     private static String determineSuffix(String fileName) {
         int index = fileName.lastIndexOf(".");
@@ -247,7 +437,7 @@ public class OverallIndex {
         }
         return fileName.substring(index);
     }
-    private static Format determineFormat(String fileName) {
+    static Format determineFormat(String fileName) {
         String suffix = determineSuffix(fileName);
         return Format.find(suffix);
     }
@@ -267,7 +457,11 @@ public class OverallIndex {
 
     public enum Format {
         TEXT(".txt"),
-        ZIP(".zip");
+        ZIP(".zip"),
+        /**
+         * The binary format read by {@link RuntimeIndex#loadMapped(Path)}. This cannot be loaded as an {@code OverallIndex}.
+         */
+        BINARY(".idx");
 
         private final String suffix;
 
@@ -275,6 +469,14 @@ public class OverallIndex {
             this.suffix = suffix;
         }
 
+        /**
+         * Gets the file name suffix for this format, e.g. {@code .txt}
+         * @return the suffix
+         */
+        public String getSuffix() {
+            return suffix;
+        }
+
         static Format find(String suffix) {
             if (suffix == null) {
                 return null;
@@ -284,6 +486,8 @@ public class OverallIndex {
                     return Format.TEXT;
                 case ".zip":
                     return Format.ZIP;
+                case ".idx":
+                    return Format.BINARY;
             }
             return null;
         }
@@ -7,16 +7,30 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.OutputStream;
 import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.LongUnaryOperator;
 import java.util.function.Supplier;
+import java.util.zip.CRC32;
 
 /**
  * In a nutshell this class reads an {@link OverallIndex}, and stores it in an optimised way so that it can
@@ -43,27 +57,33 @@ public class RuntimeIndex {
      */
     public static final ByteArrayKey JAVA_LANG_OBJECT_KEY = ByteArrayKey.create(OBJECT_BYTES, 0, OBJECT_BYTES.length);
 
-    private static final ByteArrayOutputStream BYTE_ARRAY_OUTPUT_STREAM = new ByteArrayOutputStream(2048);
+    /**
+     * The first four bytes of the binary index format ({@code RIDX})
+     */
+    static final int BINARY_MAGIC = 0x52494458;
+
+    /**
+     * The version of the binary index format
+     */
+    static final int BINARY_VERSION = 6;
 
 
     /**
-     * {@code }<init>} (i.e. the bytecode name of a constructor) as a ByteArrayKey
+     * {@code <init>} (i.e. the bytecode name of a constructor) as a ByteArrayKey
      */
-    public static final ByteArrayKey BYTECODE_CONSTRUCTOR_KEY;
-    static {
-        try {
-            BYTECODE_CONSTRUCTOR_KEY = convertStringToByteArrayKey(BYTECODE_CONSTRUCTOR_NAME);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-    }
+    public static final ByteArrayKey BYTECODE_CONSTRUCTOR_KEY = convertStringToByteArrayKey(BYTECODE_CONSTRUCTOR_NAME);
+
+    /**
+     * The ids of the annotations in this index. The annotations of classes and members are stored as bitmasks of these
+     */
+    private final AnnotationIds annotationIds;
 
     /**
      * Extended classed, implements interfaces and annotations, and the annotations they have been annotated with.
      * We are including annotations here since users might decide to implement an annotation interface
-     * that is marked as unstable api
+     * that is marked as unstable api. The key is the class name.
      */
-    private final Map<ByteArrayKey, Set<String>> allClassesWithAnnotations;
+    private final MemberTable allClassesWithAnnotations;
 
     //
 
@@ -71,66 +91,56 @@ public class RuntimeIndex {
      * Annotations with annotations. Although these are also part of {@link #allClassesWithAnnotations}, this field
      * will be needed as input to the Jandex scanning for annotation usage
      */
-    private final Map<String, Set<String>> annotationsWithAnnotations;
+    private final Map<String, Long> annotationsWithAnnotations;
 
 
     /**
-     * Keys in 'nested order' are class name, method name, descriptor. The set is the annotations for the method
-     * pointed at pu each entry.
+     * The key parts are class name, method name, descriptor. The set is the annotations for the method
+     * pointed at by each entry.
      */
-    private final Map<ByteArrayKey, Map<ByteArrayKey, Map<ByteArrayKey, Set<String>>>> methodsWithAnnotations;
+    private final MemberTable methodsWithAnnotations;
 
     /**
-     * Keys in 'nested order' are class name, field name. The set is the annotations for the field.
+     * The key parts are class name, field name. The set is the annotations for the field.
      */
-    private final Map<ByteArrayKey, Map<ByteArrayKey, Set<String>>> fieldsWithAnnotations;
+    private final MemberTable fieldsWithAnnotations;
 
 
     /**
-     * The names of all classes found indexed by their ByteArrayKey
+     * The names of all classes, method names, field names and method descriptors found, so that they can be looked up
+     * by their ByteArrayKey
      */
-    private final Map<ByteArrayKey, String> classNamesByKey;
+    private final SymbolTable symbols;
 
     /**
-     * The ByteArrayKeys of all classes found indexed by their string name
+     * Filter over the names of all classes in {@link #symbols}, i.e. all the classes which are annotated or contain
+     * annotated members, to quickly reject references to other classes
      */
-    private final Map<String, ByteArrayKey> classKeysByName;
+    private final ClassNameFilter classNameFilter;
 
     /**
-     * The names of all method names found indexed by their ByteArrayKey
+     * The index this one is an overlay of, or {@code null}. The lookups combine the entries of this index with
+     * those of the base. The annotation ids of the base are a prefix of {@link #annotationIds}, so their bitmasks
+     * can simply be combined.
      */
-    private final Map<ByteArrayKey, String> methodNamesByKey;
-
-    /**
-     * The names of all field names found indexed by their ByteArrayKey
-     */
-    private final Map<ByteArrayKey, String> fieldNamesByKey;
-
-    /**
-     * The string representations of all method descriptors found indexed by their ByteArrayKey
-     */
-    private final Map<ByteArrayKey, String> methodDescriptorsByKey;
-
-
-    private RuntimeIndex(Map<ByteArrayKey, Set<String>> allClassesWithAnnotations,
-                         Map<String, Set<String>> annotationsWithAnnotations,
-                         Map<ByteArrayKey, Map<ByteArrayKey,
-                             Map<ByteArrayKey, Set<String>>>> methodsWithAnnotations,
-                         Map<ByteArrayKey, Map<ByteArrayKey, Set<String>>> fieldsWithAnnotations,
-                         Map<ByteArrayKey, String> classNamesByKey,
-                         Map<String, ByteArrayKey> classKeysByName,
-                         Map<ByteArrayKey, String> methodNamesByKey,
-                         Map<ByteArrayKey, String> fieldNamesByKey,
-                         Map<ByteArrayKey, String> methodDescriptorsByKey) {
-        this.allClassesWithAnnotations = Collections.unmodifiableMap(allClassesWithAnnotations);
+    private final RuntimeIndex base;
+
+
+    private RuntimeIndex(AnnotationIds annotationIds,
+                         MemberTable allClassesWithAnnotations,
+                         Map<String, Long> annotationsWithAnnotations,
+                         MemberTable methodsWithAnnotations,
+                         MemberTable fieldsWithAnnotations,
+                         SymbolTable symbols,
+                         RuntimeIndex base) {
+        this.base = base;
+        this.annotationIds = annotationIds;
+        this.allClassesWithAnnotations = allClassesWithAnnotations;
         this.annotationsWithAnnotations = Collections.unmodifiableMap(annotationsWithAnnotations);
-        this.methodsWithAnnotations = Collections.unmodifiableMap(methodsWithAnnotations);
-        this.fieldsWithAnnotations = Collections.unmodifiableMap(fieldsWithAnnotations);
-        this.classNamesByKey = Collections.unmodifiableMap(classNamesByKey);
-        this.classKeysByName = Collections.unmodifiableMap(classKeysByName);
-        this.methodNamesByKey = Collections.unmodifiableMap(methodNamesByKey);
-        this.fieldNamesByKey = Collections.unmodifiableMap(fieldNamesByKey);
-        this.methodDescriptorsByKey = Collections.unmodifiableMap(methodDescriptorsByKey);
+        this.methodsWithAnnotations = methodsWithAnnotations;
+        this.fieldsWithAnnotations = fieldsWithAnnotations;
+        this.symbols = symbols;
+        this.classNameFilter = ClassNameFilter.create(symbols.getHashes(SymbolTable.KIND_CLASS));
     }
 
     /**
@@ -141,8 +151,12 @@ public class RuntimeIndex {
      * @throws IOException if there are problems reading any of the files
      */
     public static RuntimeIndex load(Path indexFile, Path... additional) throws IOException {
-        OverallIndex overallIndex = OverallIndex.load(indexFile, additional);
-        return convertOverallIndexToRuntimeIndex(overallIndex);
+        Builder builder = new Builder();
+        OverallIndex.read(indexFile, builder);
+        for (Path additionalFile : additional) {
+            OverallIndex.read(additionalFile, builder);
+        }
+        return builder.build();
     }
 
     /**
@@ -153,127 +167,266 @@ public class RuntimeIndex {
      * @throws IOException if there are problems reading any of the URLs
      */
     public static RuntimeIndex load(List<URL> urls) throws IOException {
-        OverallIndex overallIndex = OverallIndex.load(urls);
-        return convertOverallIndexToRuntimeIndex(overallIndex);
-    }
-
-    private static RuntimeIndex convertOverallIndexToRuntimeIndex(OverallIndex overallIndex) {
-        Map<ByteArrayKey, String> classNamesByKey = new HashMap<>();
-        Map<String, ByteArrayKey> classKeysByName = new HashMap<>();
-        Map<ByteArrayKey, String> methodNamesByKey = new HashMap<>();
-        Map<ByteArrayKey, String> fieldNamesByKey = new HashMap<>();
-        Map<ByteArrayKey, String> methodDescriptorsByKey = new HashMap<>();
-        Map<ByteArrayKey, Set<String>> allClassesWithAnnotations = new HashMap<>();
-        Map<String, Set<String>> annotationsWithAnnotations = new HashMap<>();
-        Map<ByteArrayKey, Map<ByteArrayKey, Map<ByteArrayKey, Set<String>>>> methodsWithAnnotations = new HashMap<>();
-        Map<ByteArrayKey, Map<ByteArrayKey, Set<String>>> fieldsWithAnnotations = new HashMap<>();
-
-        for (String annotation : overallIndex.getAnnotations()) {
-            AnnotationIndex annotationIndex = overallIndex.getAnnotationIndex(annotation);
-            addClassesWithAnnotations(annotation, annotationIndex, allClassesWithAnnotations, annotationsWithAnnotations, classNamesByKey, classKeysByName);
-            addMethodsWithAnnotations(annotation, annotationIndex, methodsWithAnnotations, methodNamesByKey, methodDescriptorsByKey, classNamesByKey, classKeysByName);
-            // On byte code level the only difference between a constructor and method is the name of the constructor
-            // so we add the constructor to the methodsWithAnnotations set
-            addConstructorsWithAnnotations(annotation, annotationIndex, methodsWithAnnotations, methodNamesByKey, methodDescriptorsByKey, classNamesByKey, classKeysByName);
-            addFieldsWithAnnotations(annotation, annotationIndex, fieldsWithAnnotations, fieldNamesByKey, classNamesByKey, classKeysByName);
-        }
-
-        return new RuntimeIndex(allClassesWithAnnotations, annotationsWithAnnotations, methodsWithAnnotations, fieldsWithAnnotations, classNamesByKey, classKeysByName, methodNamesByKey, fieldNamesByKey, methodDescriptorsByKey);
-    }
-
-    private static void addClassesWithAnnotations(
-            String annotation,
-            AnnotationIndex annotationIndex,
-            Map<ByteArrayKey, Set<String>> classesWithAnnotations,
-            Map<String, Set<String>> annotationsWithAnnotations,
-            Map<ByteArrayKey, String> classNamesByKey,
-            Map<String, ByteArrayKey> classKeysByName) {
-
-        for (String clazz : annotationIndex.getAnnotatedClasses()) {
-            ByteArrayKey vmClass = convertStringToByteArrayKey(convertClassNameToVmFormat(clazz));
-            Set<String> annotations = classesWithAnnotations.computeIfAbsent(vmClass, k -> new HashSet<>());
-            annotations.add(annotation);
-            classNamesByKey.put(vmClass, clazz);
-            classKeysByName.put(clazz, vmClass);
-        }
-        for (String clazz : annotationIndex.getAnnotatedInterfaces()) {
-            ByteArrayKey vmClass = convertStringToByteArrayKey(convertClassNameToVmFormat(clazz));
-            Set<String> annotations = classesWithAnnotations.computeIfAbsent(vmClass, k -> new HashSet<>());
-            annotations.add(annotation);
-            classNamesByKey.put(vmClass, clazz);
-            classKeysByName.put(clazz, vmClass);
-        }
-        for (String clazz : annotationIndex.getAnnotatedAnnotations()) {
-            ByteArrayKey vmClass = convertStringToByteArrayKey(convertClassNameToVmFormat(clazz));
-            Set<String> classAnnotations = classesWithAnnotations.computeIfAbsent(vmClass, k -> new HashSet<>());
-            classAnnotations.add(annotation);
-            // Since we use Jandex rather than bytecode inspection for this in the RuntimeIndex, just use the raw class name here
-            Set<String> annAnnotations = annotationsWithAnnotations.computeIfAbsent(clazz, k -> new HashSet<>());
-            annAnnotations.add(annotation);
+        Builder builder = new Builder();
+        for (URL url : urls) {
+            OverallIndex.read(url, builder);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Loads the runtime index from locations specified as URLs, like {@link #load(List)}, but reads the URLs
+     * concurrently. Each URL is read on its own, and the results are merged in the order of {@code urls}, so the
+     * created index is the same as the one returned by {@link #load(List)}.
+     * @param urls the urls containing serialized indexes
+     * @param executor the executor to read the URLs with
+     * @return the created runtime index
+     * @throws IOException if there are problems reading any of the URLs
+     */
+    public static RuntimeIndex load(List<URL> urls, Executor executor) throws IOException {
+        if (urls == null || executor == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        List<CompletableFuture<Builder>> futures = new ArrayList<>(urls.size());
+        for (URL url : urls) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                Builder builder = new Builder();
+                try {
+                    OverallIndex.read(url, builder);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return builder;
+            }, executor));
+        }
+        Builder builder = new Builder();
+        Futures.join(futures, builder::merge);
+        return builder.build();
+    }
+
+    /**
+     * Loads the runtime index from locations specified as URLs, like {@link #load(List)}, and caches the created index
+     * in a directory. Later calls for the same URLs read the cached lookup tables instead, unless the indexes have
+     * changed. For {@code file:} URLs changes are detected from the modification time and size of the file, for other
+     * URLs from a hash of their contents. Cache files which are out of date or corrupt are replaced automatically.
+     * A single URL pointing to an index in the binary format ({@code .idx}) is read directly, without using the cache;
+     * binary indexes can not be merged with other indexes.
+     * @param urls the urls containing serialized indexes
+     * @param cacheDirectory the directory to keep the cached indexes in. It is created if it does not exist
+     * @return the created runtime index
+     * @throws IOException if there are problems reading any of the URLs
+     */
+    public static RuntimeIndex loadCached(List<URL> urls, Path cacheDirectory) throws IOException {
+        if (urls == null || cacheDirectory == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        return IndexCache.load(urls, cacheDirectory);
+    }
+
+    /**
+     * Loads the runtime index from a stream containing a serialized index, e.g. one embedded in another archive.
+     * The stream is not closed.
+     * @param inputStream the stream
+     * @param format the format of the serialized index
+     * @return the created runtime index
+     * @throws IOException if there are problems reading the stream
+     */
+    public static RuntimeIndex load(InputStream inputStream, OverallIndex.Format format) throws IOException {
+        if (inputStream == null || format == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        if (format == OverallIndex.Format.BINARY) {
+            try {
+                return readBinary(ByteBuffer.wrap(inputStream.readAllBytes()), true);
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("The stream does not appear to contain a valid binary index", e);
+            }
         }
+        Builder builder = new Builder();
+        OverallIndex.read(inputStream, format, builder);
+        return builder.build();
     }
 
-    private static void addMethodsWithAnnotations(String annotation, AnnotationIndex annotationIndex, Map<ByteArrayKey, Map<ByteArrayKey, Map<ByteArrayKey, Set<String>>>> methodsWithAnnotations, Map<ByteArrayKey, String> methodNamesByKey, Map<ByteArrayKey, String> methodDescriptorsByKey, Map<ByteArrayKey, String> classNamesByKey, Map<String, ByteArrayKey> classKeysByName) {
-        for (AnnotatedMethod annotatedMethod : annotationIndex.getAnnotatedMethods()) {
-            ByteArrayKey vmClass = convertStringToByteArrayKey(convertClassNameToVmFormat(annotatedMethod.getClassName()));
-            ByteArrayKey methodname = convertStringToByteArrayKey(annotatedMethod.getMethodName());
-            ByteArrayKey descriptor = convertStringToByteArrayKey(annotatedMethod.getDescriptor());
+    /**
+     * Loads the runtime index from a file in the binary format, as written by {@link OverallIndex#save(Path)} when the
+     * file name has the {@code .idx} suffix. The file is memory mapped while it is read. The lookup tables are stored
+     * in the file in the same layout as they are used in memory, so they are bulk copied onto the heap rather than
+     * parsed and rebuilt. This is not a zero-copy open: the whole index, including the symbol table, is copied, so the
+     * time taken and the heap used grow with the size of the index.
+     * The checksum of the file is not verified, since that means reading all of it an extra time, which adds about 10%
+     * to the time taken to load a large index; use {@link #loadMapped(Path, boolean)} to verify it.
+     *
+     * @param indexFile the location of the index file
+     * @return the created runtime index
+     * @throws IOException if there are problems reading the file
+     */
+    public static RuntimeIndex loadMapped(Path indexFile) throws IOException {
+        return loadMapped(indexFile, false);
+    }
 
-            classNamesByKey.put(vmClass, annotatedMethod.getClassName());
-            classKeysByName.put(annotatedMethod.getClassName(), vmClass);
-            methodNamesByKey.put(methodname, annotatedMethod.getMethodName());
-            methodDescriptorsByKey.put(descriptor, annotatedMethod.getDescriptor());
+    /**
+     * Loads the runtime index from a file in the binary format. See {@link #loadMapped(Path)}.
+     *
+     * @param indexFile the location of the index file
+     * @param verifyChecksum whether to check the contents of the file against the checksum in its header, e.g. if it
+     *                       might have been corrupted
+     * @return the created runtime index
+     * @throws IOException if there are problems reading the file
+     * @throws IllegalArgumentException if the file is not a valid binary index, or if {@code verifyChecksum} is
+     * {@code true} and the contents do not match the checksum
+     */
+    public static RuntimeIndex loadMapped(Path indexFile, boolean verifyChecksum) throws IOException {
+        if (indexFile == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                return readBinary(buffer, verifyChecksum);
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException(indexFile + " does not appear to be a valid binary index", e);
+            }
+        }
+    }
 
-            Map<ByteArrayKey, Map<ByteArrayKey, Set<String>>> methodsForClass = methodsWithAnnotations.computeIfAbsent(vmClass, k -> new HashMap<>());
-            Map<ByteArrayKey, Set<String>> descriptorsForMethod = methodsForClass.computeIfAbsent(methodname, k -> new HashMap<>());
-            Set<String> annotationsForMethod = descriptorsForMethod.computeIfAbsent(descriptor, k -> new HashSet<>());
-            annotationsForMethod.add(annotation);
+    /**
+     * Creates an index consisting of this index with the entries from some more serialized indexes layered on top,
+     * e.g. for the libraries of a deployment. Only the additional entries are loaded and stored in the returned
+     * index, and lookups fall through to this index, which is shared rather than copied. So several overlays can be
+     * created for the same base index cheaply.
+     * @param urls the urls containing the serialized indexes to add
+     * @return the layered runtime index
+     * @throws IOException if there are problems reading any of the URLs
+     * @throws IllegalArgumentException if there would be more than {@link AnnotationIds#MAX_ANNOTATIONS} annotations
+     * in total
+     */
+    public RuntimeIndex withOverlay(List<URL> urls) throws IOException {
+        if (urls == null) {
+            throw new NullPointerException("Null parameter");
         }
+        Builder builder = new Builder(this);
+        for (URL url : urls) {
+            OverallIndex.read(url, builder);
+        }
+        return builder.build();
     }
 
-    private static void addConstructorsWithAnnotations(String annotation, AnnotationIndex annotationIndex, Map<ByteArrayKey, Map<ByteArrayKey, Map<ByteArrayKey, Set<String>>>> methodsWithAnnotations, Map<ByteArrayKey, String> methodNamesByKey, Map<ByteArrayKey, String> methodDescriptorsByKey, Map<ByteArrayKey, String> classNamesByKey, Map<String, ByteArrayKey> classKeysByName) {
-        methodNamesByKey.put(BYTECODE_CONSTRUCTOR_KEY, BYTECODE_CONSTRUCTOR_NAME);
+    static RuntimeIndex convertOverallIndexToRuntimeIndex(OverallIndex overallIndex) {
+        Builder builder = new Builder();
+        builder.add(overallIndex);
+        return builder.build();
+    }
 
-        // On byte code level the only difference between a constructor and method is the name of the constructor
-        // so we add the constructor to the methodsWithAnnotations set
-        for (AnnotatedConstructor annotatedConstructor : annotationIndex.getAnnotatedConstructors()) {
-            ByteArrayKey vmClass = convertStringToByteArrayKey(convertClassNameToVmFormat(annotatedConstructor.getClassName()));
-            ByteArrayKey descriptor = convertStringToByteArrayKey(annotatedConstructor.getDescriptor());
+    /**
+     * Writes this index in the binary format read by {@link #loadMapped(Path)}.
+     * <p>
+     * The format is:
+     * <ul>
+     *     <li>A header consisting of the {@link #BINARY_MAGIC} and {@link #BINARY_VERSION} ints, followed by the
+     *     {@link CRC32} of the rest of the file as an int</li>
+     *     <li>The annotation names, as a count followed by the names in {@link DataOutputStream#writeUTF(String)} format,
+     *     in the order of their {@link AnnotationIds} ids. Annotations are referred to by bitmasks of these ids in the rest
+     *     of the file.</li>
+     *     <li>The annotated annotations, as a count followed by the name and the bitmask of its annotations</li>
+     *     <li>The class, field and method {@link MemberTable}s</li>
+     *     <li>The {@link SymbolTable} containing the class names, method names, field names and method descriptors</li>
+     * </ul>
+     * All numbers are big-endian.
+     *
+     * @param outputStream the stream to write to
+     * @throws IOException if there was an error writing
+     */
+    void writeBinary(OutputStream outputStream) throws IOException {
+        if (base != null) {
+            throw new IllegalStateException("A layered index can not be written in the binary format");
+        }
+        // The checksum goes in the header, so write the rest first
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bytes);
 
-            classNamesByKey.put(vmClass, annotatedConstructor.getClassName());
-            classKeysByName.put(annotatedConstructor.getClassName(), vmClass);
-            methodDescriptorsByKey.put(descriptor, annotatedConstructor.getDescriptor());
+        body.writeInt(annotationIds.size());
+        for (int i = 0; i < annotationIds.size(); i++) {
+            body.writeUTF(annotationIds.getName(i));
+        }
 
-            Map<ByteArrayKey, Map<ByteArrayKey, Set<String>>> methodsForClass = methodsWithAnnotations.computeIfAbsent(vmClass, k -> new HashMap<>());
-            Map<ByteArrayKey, Set<String>> descriptorsForMethod = methodsForClass.computeIfAbsent(BYTECODE_CONSTRUCTOR_KEY, k -> new HashMap<>());
-            Set<String> annotationsForMethod = descriptorsForMethod.computeIfAbsent(descriptor, k -> new HashSet<>());
-            annotationsForMethod.add(annotation);
+        body.writeInt(annotationsWithAnnotations.size());
+        for (Map.Entry<String, Long> entry : annotationsWithAnnotations.entrySet()) {
+            body.writeUTF(entry.getKey());
+            body.writeLong(entry.getValue());
         }
+
+        allClassesWithAnnotations.write(body);
+        fieldsWithAnnotations.write(body);
+        methodsWithAnnotations.write(body);
+
+        symbols.write(body);
+        body.flush();
+
+        byte[] bodyBytes = bytes.toByteArray();
+        CRC32 checksum = new CRC32();
+        checksum.update(bodyBytes);
+
+        DataOutputStream out = new DataOutputStream(outputStream);
+        out.writeInt(BINARY_MAGIC);
+        out.writeInt(BINARY_VERSION);
+        out.writeInt((int) checksum.getValue());
+        out.write(bodyBytes);
+        out.flush();
     }
 
-    private static void addFieldsWithAnnotations(String annotation, AnnotationIndex annotationIndex, Map<ByteArrayKey, Map<ByteArrayKey, Set<String>>> fieldsWithAnnotations, Map<ByteArrayKey, String> fieldNamesByKey, Map<ByteArrayKey, String> classNamesByKey, Map<String, ByteArrayKey> classKeysByName) {
-        for (AnnotatedField annotatedField : annotationIndex.getAnnotatedFields()) {
-            ByteArrayKey vmClass = convertStringToByteArrayKey(convertClassNameToVmFormat(annotatedField.getClassName()));
-            ByteArrayKey fieldName = convertStringToByteArrayKey(annotatedField.getFieldName());
+    static RuntimeIndex readBinary(ByteBuffer buffer, boolean verifyChecksum) throws IOException {
+        int magic = buffer.getInt();
+        if (magic != BINARY_MAGIC) {
+            throw new IllegalArgumentException("Not a binary index; must begin with 0x" + Integer.toHexString(BINARY_MAGIC).toUpperCase()
+                    + " but seen 0x" + Integer.toHexString(magic).toUpperCase());
+        }
+        int version = buffer.getInt();
+        if (version != BINARY_VERSION) {
+            throw new IllegalArgumentException("Unsupported binary index version " + version + ". Only version " + BINARY_VERSION + " is supported");
+        }
+        int expectedChecksum = buffer.getInt();
+        if (verifyChecksum) {
+            CRC32 checksum = new CRC32();
+            checksum.update(buffer.duplicate());
+            if ((int) checksum.getValue() != expectedChecksum) {
+                throw new IllegalArgumentException("The binary index is corrupt; its checksum does not match its contents");
+            }
+        }
+
+        ReusableStreams reusableStreams = new ReusableStreams();
 
-            classNamesByKey.put(vmClass, annotatedField.getClassName());
-            classKeysByName.put(annotatedField.getClassName(), vmClass);
-            fieldNamesByKey.put(fieldName, annotatedField.getFieldName());
+        int annotationCount = buffer.getInt();
+        List<String> annotations = new ArrayList<>(annotationCount);
+        for (int i = 0; i < annotationCount; i++) {
+            annotations.add(readKey(buffer).convertBytesToString(reusableStreams));
+        }
+        AnnotationIds annotationIds = AnnotationIds.create(annotations);
 
-            Map<ByteArrayKey, Set<String>> fieldsForClass = fieldsWithAnnotations.computeIfAbsent(vmClass, k -> new HashMap<>());
-            Set<String> annotationsForMethod = fieldsForClass.computeIfAbsent(fieldName, k -> new HashSet<>());
-            annotationsForMethod.add(annotation);
+        int annotatedAnnotationCount = buffer.getInt();
+        Map<String, Long> annotationsWithAnnotations = new HashMap<>();
+        for (int i = 0; i < annotatedAnnotationCount; i++) {
+            String annotatedAnnotation = readKey(buffer).convertBytesToString(reusableStreams);
+            annotationsWithAnnotations.put(annotatedAnnotation, buffer.getLong());
         }
+
+        MemberTable classes = MemberTable.read(buffer);
+        MemberTable fields = MemberTable.read(buffer);
+        MemberTable methods = MemberTable.read(buffer);
+
+        SymbolTable symbols = SymbolTable.read(buffer);
+
+        return new RuntimeIndex(annotationIds, classes, annotationsWithAnnotations, methods, fields, symbols, null);
+    }
+
+    private static ByteArrayKey readKey(ByteBuffer buffer) {
+        int length = 2 + (buffer.getShort(buffer.position()) & 0xffff);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new ByteArrayKey(bytes);
     }
 
     private static ByteArrayKey convertStringToByteArrayKey(String s) {
-        BYTE_ARRAY_OUTPUT_STREAM.reset();
-        try (DataOutputStream dout = new DataOutputStream(BYTE_ARRAY_OUTPUT_STREAM)) {
-            dout.writeUTF(s);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        return new ByteArrayKey(BYTE_ARRAY_OUTPUT_STREAM.toByteArray());
+        return new ByteArrayKey(Builder.encode(s, false));
     }
 
     /** Converts a class name in dotname format (e.g. {@code org.acme.MyClass}) to JVM format
@@ -303,7 +456,114 @@ public class RuntimeIndex {
      * @return the annotation names. May be {@code null} if there are none
      */
     public Set<String> getAnnotationsForClass(ByteArrayKey key) {
-        return allClassesWithAnnotations.get(key);
+        return annotationIds.getNames(getAnnotationMaskForClass(key));
+    }
+
+    /**
+     * Gets the annotations for a class as a bitmask of their {@link #getAnnotationIds() ids}
+     *
+     * @param key the name of the class
+     * @return the annotation bitmask, or {@code 0} if there are none
+     */
+    public long getAnnotationMaskForClass(ByteArrayKey key) {
+        if (key == null) {
+            return 0;
+        }
+        long mask = 0;
+        int hash = key.hashCode();
+        if (classNameFilter.mightContain(hash)) {
+            mask = allClassesWithAnnotations.get(hash, key.arr, key.start, key.length);
+        }
+        return base == null ? mask : mask | base.getAnnotationMaskForClass(key);
+    }
+
+    /**
+     * Gets the annotations for a class, whose name is in a buffer in the format used by the UTF8 entries in the class
+     * file constant pool, e.g. the class file itself.
+     *
+     * @param bytes the buffer
+     * @param classOffset the offset in the buffer of the two length bytes preceding the class name
+     * @return the annotation names. May be {@code null} if there are none
+     */
+    public Set<String> getAnnotationsForClass(byte[] bytes, int classOffset) {
+        return annotationIds.getNames(getAnnotationMaskForClass(bytes, classOffset));
+    }
+
+    /**
+     * Gets the annotations for a class as a bitmask of their {@link #getAnnotationIds() ids}. The class name is
+     * in a buffer as described in {@link #getAnnotationsForClass(byte[], int)}.
+     *
+     * @param bytes the buffer
+     * @param classOffset the offset in the buffer of the two length bytes preceding the class name
+     * @return the annotation bitmask, or {@code 0} if there are none
+     */
+    public long getAnnotationMaskForClass(byte[] bytes, int classOffset) {
+        return getAnnotationMaskForClass(bytes, classOffset, hashUtf8(bytes, classOffset));
+    }
+
+    /**
+     * Gets the annotations for a class as a bitmask of their {@link #getAnnotationIds() ids}, like
+     * {@link #getAnnotationMaskForClass(byte[], int)}, when the hash of the class name is already known.
+     *
+     * @param bytes the buffer
+     * @param classOffset the offset in the buffer of the two length bytes preceding the class name
+     * @param classHash the hash of the class name, as calculated by {@link #hashUtf8(byte[], int)}
+     * @return the annotation bitmask, or {@code 0} if there are none
+     */
+    public long getAnnotationMaskForClass(byte[] bytes, int classOffset, int classHash) {
+        long mask = 0;
+        if (classNameFilter.mightContain(classHash)) {
+            mask = allClassesWithAnnotations.get(classHash, bytes, classOffset, utfLength(bytes, classOffset));
+        }
+        return base == null ? mask : mask | base.getAnnotationMaskForClass(bytes, classOffset, classHash);
+    }
+
+    /**
+     * Checks whether a class, whose name is in a buffer in the format used by the UTF8 entries in the class file
+     * constant pool, might be in the index. This is a lot cheaper than the {@code getAnnotationMaskForXXX()} methods,
+     * and can be used to skip looking up members of classes which are not in the index. Since it is a probabilistic
+     * check, it may return {@code true} for classes which are not in the index.
+     *
+     * @param bytes the buffer
+     * @param classOffset the offset in the buffer of the two length bytes preceding the class name
+     * @return {@code false} if neither the class nor any of its fields or methods are in the index, {@code true} if they might be
+     */
+    public boolean mightContainClass(byte[] bytes, int classOffset) {
+        return mightContainClass(hashUtf8(bytes, classOffset));
+    }
+
+    /**
+     * Checks whether a class might be in the index, like {@link #mightContainClass(byte[], int)}, when the hash of
+     * the class name is already known.
+     *
+     * @param classHash the hash of the class name, as calculated by {@link #hashUtf8(byte[], int)}
+     * @return {@code false} if neither the class nor any of its fields or methods are in the index, {@code true} if they might be
+     */
+    public boolean mightContainClass(int classHash) {
+        return classNameFilter.mightContain(classHash) || (base != null && base.mightContainClass(classHash));
+    }
+
+    /**
+     * Calculates the hash used for lookups of a UTF8 entry in a buffer, in the format used by the class file constant
+     * pool. Callers which look up the same entry several times, e.g. a class name referred to by several member
+     * references, can calculate this once per entry and use the lookup methods taking hashes. The hash is the same as
+     * {@link ByteArrayKey#hashCode()} for a key covering the entry, including the length bytes.
+     *
+     * @param bytes the buffer
+     * @param offset the offset in the buffer of the two length bytes preceding the entry
+     * @return the hash
+     */
+    public static int hashUtf8(byte[] bytes, int offset) {
+        return MemberTable.hash(bytes, offset, utfLength(bytes, offset));
+    }
+
+    /**
+     * Gets the ids of the annotations in this index, which are used by the bitmasks returned by the
+     * {@code getAnnotationMaskForXXX()} methods
+     * @return the annotation ids
+     */
+    public AnnotationIds getAnnotationIds() {
+        return annotationIds;
     }
 
     /**
@@ -312,7 +572,8 @@ public class RuntimeIndex {
      * @return the annotation names. May be {@code null} if there are none
      */
     public Set<String> getAnnotationsForAnnotation(String annotation) {
-        return annotationsWithAnnotations.get(annotation);
+        Long mask = annotationsWithAnnotations.get(annotation);
+        return mask == null ? null : annotationIds.getNames(mask);
     }
 
     /**
@@ -325,7 +586,8 @@ public class RuntimeIndex {
     }
 
     /**
-     * Get the annotations for a method from the information in the {@link OverallIndex}
+     * Get the annotations for a method from the information in the {@link OverallIndex}. The name and descriptor are
+     * only obtained if the class might be in the index.
      *
      * @param methodClass the name of the class containing the method
      * @param methodName the name of the method
@@ -333,29 +595,197 @@ public class RuntimeIndex {
      * @return the annotation names. May be {@code null} if there are none
      */
     public Set<String> getAnnotationsForMethod(ByteArrayKey methodClass, Supplier<ByteArrayKey> methodName, Supplier<ByteArrayKey> methodDescriptor) {
-        Map<ByteArrayKey, Map<ByteArrayKey, Set<String>>> methodsInClass = methodsWithAnnotations.get(methodClass);
-        if (methodsInClass == null) {
+        if (methodClass == null || !mightContainClass(methodClass.hashCode())) {
             return null;
         }
-        Map<ByteArrayKey, Set<String>> methodDescriptors = methodsInClass.get(methodName.get());
-        if (methodDescriptors == null) {
-            return null;
+        return getAnnotationsForMethod(methodClass, methodName.get(), methodDescriptor.get());
+    }
+
+    /**
+     * Get the annotations for a method from the information in the {@link OverallIndex}. Unlike
+     * {@link #getAnnotationsForMethod(ByteArrayKey, Supplier, Supplier)} this takes the
+     * keys directly.
+     *
+     * @param methodClass the name of the class containing the method
+     * @param methodName the name of the method
+     * @param methodDescriptor the method descriptor
+     * @return the annotation names. May be {@code null} if there are none
+     */
+    public Set<String> getAnnotationsForMethod(ByteArrayKey methodClass, ByteArrayKey methodName, ByteArrayKey methodDescriptor) {
+        return annotationIds.getNames(getAnnotationMaskForMethod(methodClass, methodName, methodDescriptor));
+    }
+
+    private long getAnnotationMaskForMethod(ByteArrayKey methodClass, ByteArrayKey methodName, ByteArrayKey methodDescriptor) {
+        if (methodClass == null || methodName == null || methodDescriptor == null) {
+            return 0;
+        }
+        long mask = 0;
+        int classHash = methodClass.hashCode();
+        if (classNameFilter.mightContain(classHash)) {
+            mask = methodsWithAnnotations.get(
+                    classHash, methodClass.arr, methodClass.start, methodClass.length,
+                    methodName.hashCode(), methodName.arr, methodName.start, methodName.length,
+                    methodDescriptor.hashCode(), methodDescriptor.arr, methodDescriptor.start, methodDescriptor.length);
+        }
+        return base == null ? mask : mask | base.getAnnotationMaskForMethod(methodClass, methodName, methodDescriptor);
+    }
+
+    /**
+     * Get the annotations for a method, whose class name, name and descriptor are in a buffer in the format used by the
+     * UTF8 entries in the class file constant pool, e.g. the class file itself. A single hash is calculated over all three,
+     * so a method which is not in the index is typically rejected after one probe.
+     *
+     * @param bytes the buffer
+     * @param classOffset the offset in the buffer of the two length bytes preceding the name of the class containing the method
+     * @param nameOffset the offset in the buffer of the two length bytes preceding the method name
+     * @param descriptorOffset the offset in the buffer of the two length bytes preceding the method descriptor
+     * @return the annotation names. May be {@code null} if there are none
+     */
+    public Set<String> getAnnotationsForMethod(byte[] bytes, int classOffset, int nameOffset, int descriptorOffset) {
+        return annotationIds.getNames(getAnnotationMaskForMethod(bytes, classOffset, nameOffset, descriptorOffset));
+    }
+
+    /**
+     * Get the annotations for a method as a bitmask of their {@link #getAnnotationIds() ids}. The class name, name
+     * and descriptor are in a buffer as described in {@link #getAnnotationsForMethod(byte[], int, int, int)}.
+     *
+     * @param bytes the buffer
+     * @param classOffset the offset in the buffer of the two length bytes preceding the name of the class containing the method
+     * @param nameOffset the offset in the buffer of the two length bytes preceding the method name
+     * @param descriptorOffset the offset in the buffer of the two length bytes preceding the method descriptor
+     * @return the annotation bitmask, or {@code 0} if there are none
+     */
+    public long getAnnotationMaskForMethod(byte[] bytes, int classOffset, int nameOffset, int descriptorOffset) {
+        int classHash = hashUtf8(bytes, classOffset);
+        if (!mightContainClass(classHash)) {
+            return 0;
+        }
+        return getAnnotationMaskForMethod(bytes, classOffset, classHash, nameOffset, hashUtf8(bytes, nameOffset),
+                descriptorOffset, hashUtf8(bytes, descriptorOffset));
+    }
+
+    /**
+     * Get the annotations for a method as a bitmask of their {@link #getAnnotationIds() ids}, like
+     * {@link #getAnnotationMaskForMethod(byte[], int, int, int)}, when the hashes of the UTF8 entries are already known.
+     *
+     * @param bytes the buffer
+     * @param classOffset the offset in the buffer of the two length bytes preceding the name of the class containing the method
+     * @param classHash the hash of the class name, as calculated by {@link #hashUtf8(byte[], int)}
+     * @param nameOffset the offset in the buffer of the two length bytes preceding the method name
+     * @param nameHash the hash of the method name
+     * @param descriptorOffset the offset in the buffer of the two length bytes preceding the method descriptor
+     * @param descriptorHash the hash of the method descriptor
+     * @return the annotation bitmask, or {@code 0} if there are none
+     */
+    public long getAnnotationMaskForMethod(byte[] bytes, int classOffset, int classHash, int nameOffset, int nameHash,
+                                           int descriptorOffset, int descriptorHash) {
+        long mask = 0;
+        if (classNameFilter.mightContain(classHash)) {
+            mask = methodsWithAnnotations.get(
+                    classHash, bytes, classOffset, utfLength(bytes, classOffset),
+                    nameHash, bytes, nameOffset, utfLength(bytes, nameOffset),
+                    descriptorHash, bytes, descriptorOffset, utfLength(bytes, descriptorOffset));
         }
-        return methodDescriptors.get(methodDescriptor.get());
+        return base == null ? mask : mask | base.getAnnotationMaskForMethod(bytes, classOffset, classHash, nameOffset, nameHash,
+                descriptorOffset, descriptorHash);
     }
 
     /**
-     * Get the annotations for a field from the information in the {@link OverallIndex}
+     * Get the annotations for a field from the information in the {@link OverallIndex}. The name is only obtained if
+     * the class might be in the index.
      * @param fieldClass the name of the class containing the field
      * @param fieldName the name of the field
      * @return the annotation names. May be {@code null} if there are none
      */
     public Set<String> getAnnotationsForField(ByteArrayKey fieldClass, Supplier<ByteArrayKey> fieldName) {
-        Map<ByteArrayKey, Set<String>> fieldsInClass = fieldsWithAnnotations.get(fieldClass);
-        if (fieldsInClass == null) {
+        if (fieldClass == null || !mightContainClass(fieldClass.hashCode())) {
             return null;
         }
-        return fieldsInClass.get(fieldName.get());
+        return getAnnotationsForField(fieldClass, fieldName.get());
+    }
+
+    /**
+     * Get the annotations for a field from the information in the {@link OverallIndex}. Unlike
+     * {@link #getAnnotationsForField(ByteArrayKey, Supplier)} this takes the
+     * keys directly.
+     *
+     * @param fieldClass the name of the class containing the field
+     * @param fieldName the name of the field
+     * @return the annotation names. May be {@code null} if there are none
+     */
+    public Set<String> getAnnotationsForField(ByteArrayKey fieldClass, ByteArrayKey fieldName) {
+        return annotationIds.getNames(getAnnotationMaskForField(fieldClass, fieldName));
+    }
+
+    private long getAnnotationMaskForField(ByteArrayKey fieldClass, ByteArrayKey fieldName) {
+        if (fieldClass == null || fieldName == null) {
+            return 0;
+        }
+        long mask = 0;
+        int classHash = fieldClass.hashCode();
+        if (classNameFilter.mightContain(classHash)) {
+            mask = fieldsWithAnnotations.get(
+                    classHash, fieldClass.arr, fieldClass.start, fieldClass.length,
+                    fieldName.hashCode(), fieldName.arr, fieldName.start, fieldName.length);
+        }
+        return base == null ? mask : mask | base.getAnnotationMaskForField(fieldClass, fieldName);
+    }
+
+    /**
+     * Get the annotations for a field, whose class name and name are in a buffer in the format used by the
+     * UTF8 entries in the class file constant pool, e.g. the class file itself. A single hash is calculated over both,
+     * so a field which is not in the index is typically rejected after one probe.
+     *
+     * @param bytes the buffer
+     * @param classOffset the offset in the buffer of the two length bytes preceding the name of the class containing the field
+     * @param nameOffset the offset in the buffer of the two length bytes preceding the field name
+     * @return the annotation names. May be {@code null} if there are none
+     */
+    public Set<String> getAnnotationsForField(byte[] bytes, int classOffset, int nameOffset) {
+        return annotationIds.getNames(getAnnotationMaskForField(bytes, classOffset, nameOffset));
+    }
+
+    /**
+     * Get the annotations for a field as a bitmask of their {@link #getAnnotationIds() ids}. The class name and name
+     * are in a buffer as described in {@link #getAnnotationsForField(byte[], int, int)}.
+     *
+     * @param bytes the buffer
+     * @param classOffset the offset in the buffer of the two length bytes preceding the name of the class containing the field
+     * @param nameOffset the offset in the buffer of the two length bytes preceding the field name
+     * @return the annotation bitmask, or {@code 0} if there are none
+     */
+    public long getAnnotationMaskForField(byte[] bytes, int classOffset, int nameOffset) {
+        int classHash = hashUtf8(bytes, classOffset);
+        if (!mightContainClass(classHash)) {
+            return 0;
+        }
+        return getAnnotationMaskForField(bytes, classOffset, classHash, nameOffset, hashUtf8(bytes, nameOffset));
+    }
+
+    /**
+     * Get the annotations for a field as a bitmask of their {@link #getAnnotationIds() ids}, like
+     * {@link #getAnnotationMaskForField(byte[], int, int)}, when the hashes of the UTF8 entries are already known.
+     *
+     * @param bytes the buffer
+     * @param classOffset the offset in the buffer of the two length bytes preceding the name of the class containing the field
+     * @param classHash the hash of the class name, as calculated by {@link #hashUtf8(byte[], int)}
+     * @param nameOffset the offset in the buffer of the two length bytes preceding the field name
+     * @param nameHash the hash of the field name
+     * @return the annotation bitmask, or {@code 0} if there are none
+     */
+    public long getAnnotationMaskForField(byte[] bytes, int classOffset, int classHash, int nameOffset, int nameHash) {
+        long mask = 0;
+        if (classNameFilter.mightContain(classHash)) {
+            mask = fieldsWithAnnotations.get(
+                    classHash, bytes, classOffset, utfLength(bytes, classOffset),
+                    nameHash, bytes, nameOffset, utfLength(bytes, nameOffset));
+        }
+        return base == null ? mask : mask | base.getAnnotationMaskForField(bytes, classOffset, classHash, nameOffset, nameHash);
+    }
+
+    private static int utfLength(byte[] bytes, int offset) {
+        // The length bytes are part of the key
+        return 2 + (((bytes[offset] & 0xff) << 8) + (bytes[offset + 1] & 0xff));
     }
 
     /**
@@ -364,8 +794,7 @@ public class RuntimeIndex {
      * @return the classname. May be {@code null} if there are none
      */
     public String getClassNameFromKey(ByteArrayKey key) {
-        return classNamesByKey.get(key);
-
+        return getSymbol(key, SymbolTable.KIND_CLASS);
     }
 
     /**
@@ -374,7 +803,7 @@ public class RuntimeIndex {
      * @return the field name. May be {@code null} if there are none
      */
     public String getFieldNameFromKey(ByteArrayKey key) {
-        return fieldNamesByKey.get(key);
+        return getSymbol(key, SymbolTable.KIND_FIELD_NAME);
     }
 
     /**
@@ -383,7 +812,7 @@ public class RuntimeIndex {
      * @return the method name. May be {@code null} if there are none
      */
     public String getMethodNameFromKey(ByteArrayKey key) {
-        return methodNamesByKey.get(key);
+        return getSymbol(key, SymbolTable.KIND_METHOD_NAME);
     }
 
     /**
@@ -392,7 +821,18 @@ public class RuntimeIndex {
      * @return the method descriptor. May be {@code null} if there are none
      */
     public String getMethodDescriptorsFromKey(ByteArrayKey key) {
-        return methodDescriptorsByKey.get(key);
+        return getSymbol(key, SymbolTable.KIND_METHOD_DESCRIPTOR);
+    }
+
+    private String getSymbol(ByteArrayKey key, int kind) {
+        if (key == null) {
+            return null;
+        }
+        String symbol = symbols.getString(key.arr, key.start, key.length, key.hashCode(), kind);
+        if (symbol == null && base != null) {
+            symbol = base.getSymbol(key, kind);
+        }
+        return symbol;
     }
 
     /**
@@ -401,8 +841,241 @@ public class RuntimeIndex {
      * @return the annotations. May be {@code null} if there are none
      */
     public Set<String> getAnnotationsForClass(String superClassName) {
-        ByteArrayKey key = classKeysByName.get(superClassName);
-        return getAnnotationsForClass(key);
+        return getAnnotationsForClass(new ByteArrayKey(Builder.encode(superClassName, true)));
+    }
+
+    /**
+     * Builds a RuntimeIndex from the entries of one or more indexes, as they are read by {@link IndexReader} or
+     * passed on by {@link AnnotationIndex#accept(IndexVisitor)}. Entries for the same annotation from different
+     * indexes are merged. An instance can only be used to build one RuntimeIndex.
+     */
+    static final class Builder implements IndexVisitor {
+        private final SymbolTable.Builder symbols = new SymbolTable.Builder();
+        private final MemberTable.Builder allClassesWithAnnotations = new MemberTable.Builder();
+        private final Map<String, Long> annotationsWithAnnotations = new HashMap<>();
+        private final MemberTable.Builder methodsWithAnnotations = new MemberTable.Builder();
+        private final MemberTable.Builder fieldsWithAnnotations = new MemberTable.Builder();
+
+        // The annotations in the order they were first seen. Until build() renumbers them so that the ids do not
+        // depend on the order of the entries, the masks use the position in this map as the id.
+        private final Map<String, Long> annotationMasks = new LinkedHashMap<>();
+        private long annotation;
+
+        private final RuntimeIndex base;
+
+        Builder() {
+            this(null);
+        }
+
+        /**
+         * Constructor for a builder of an overlay index
+         * @param base the index the built index is an overlay of, or {@code null}
+         */
+        Builder(RuntimeIndex base) {
+            this.base = base;
+            if (base != null) {
+                // Keep the ids of the base annotations, so their bitmasks mean the same in both indexes
+                for (int i = 0; i < base.annotationIds.size(); i++) {
+                    getAnnotationMask(base.annotationIds.getName(i));
+                }
+            }
+        }
+
+        @Override
+        public void startAnnotation(String annotationName) {
+            annotation = getAnnotationMask(annotationName);
+            symbols.add(BYTECODE_CONSTRUCTOR_KEY, SymbolTable.KIND_METHOD_NAME);
+        }
+
+        @Override
+        public void onInterface(String className) {
+            onClass(className);
+        }
+
+        @Override
+        public void onClass(String className) {
+            byte[] vmClass = encode(className, true);
+            allClassesWithAnnotations.add(annotation, vmClass);
+            symbols.add(ByteArrayKey.create(vmClass, 0, vmClass.length), SymbolTable.KIND_CLASS);
+        }
+
+        @Override
+        public void onAnnotationType(String className) {
+            byte[] vmClass = encode(className, true);
+            allClassesWithAnnotations.add(annotation, vmClass);
+            symbols.add(ByteArrayKey.create(vmClass, 0, vmClass.length), SymbolTable.KIND_CLASS);
+            // Since we use Jandex rather than bytecode inspection for this in the RuntimeIndex, just use the raw class name here
+            annotationsWithAnnotations.merge(className, annotation, (a, b) -> a | b);
+        }
+
+        @Override
+        public void onMethod(String className, String methodName, String descriptor) {
+            byte[] vmClass = encode(className, true);
+            byte[] name = encode(methodName, false);
+            byte[] methodDescriptor = encode(descriptor, false);
+
+            symbols.add(ByteArrayKey.create(vmClass, 0, vmClass.length), SymbolTable.KIND_CLASS);
+            symbols.add(ByteArrayKey.create(name, 0, name.length), SymbolTable.KIND_METHOD_NAME);
+            symbols.add(ByteArrayKey.create(methodDescriptor, 0, methodDescriptor.length), SymbolTable.KIND_METHOD_DESCRIPTOR);
+
+            methodsWithAnnotations.add(annotation, vmClass, name, methodDescriptor);
+        }
+
+        @Override
+        public void onConstructor(String className, String descriptor) {
+            byte[] vmClass = encode(className, true);
+            byte[] constructorDescriptor = encode(descriptor, false);
+
+            symbols.add(ByteArrayKey.create(vmClass, 0, vmClass.length), SymbolTable.KIND_CLASS);
+            symbols.add(ByteArrayKey.create(constructorDescriptor, 0, constructorDescriptor.length), SymbolTable.KIND_METHOD_DESCRIPTOR);
+
+            // On byte code level the only difference between a constructor and method is the name of the constructor
+            // so we add the constructor to the methodsWithAnnotations set
+            methodsWithAnnotations.add(annotation, vmClass, BYTECODE_CONSTRUCTOR_KEY.arr, constructorDescriptor);
+        }
+
+        @Override
+        public void onField(String className, String fieldName) {
+            byte[] vmClass = encode(className, true);
+            byte[] name = encode(fieldName, false);
+
+            symbols.add(ByteArrayKey.create(vmClass, 0, vmClass.length), SymbolTable.KIND_CLASS);
+            symbols.add(ByteArrayKey.create(name, 0, name.length), SymbolTable.KIND_FIELD_NAME);
+
+            fieldsWithAnnotations.add(annotation, vmClass, name);
+        }
+
+        @Override
+        public void endAnnotation() {
+            annotation = 0;
+        }
+
+        /**
+         * Adds all the entries of an overall index
+         * @param overallIndex the overall index
+         */
+        void add(OverallIndex overallIndex) {
+            for (String name : overallIndex.getAnnotations()) {
+                overallIndex.getAnnotationIndex(name).accept(this);
+            }
+        }
+
+        /**
+         * Adds all the entries from another builder, e.g. one that read another index on a different thread.
+         * The other builder is not modified.
+         * @param other the other builder
+         */
+        void merge(Builder other) {
+            // The other builder numbered the annotations in the order it saw them, so renumber them to our ids
+            long[] masks = new long[other.annotationMasks.size()];
+            for (Map.Entry<String, Long> entry : other.annotationMasks.entrySet()) {
+                masks[Long.numberOfTrailingZeros(entry.getValue())] = getAnnotationMask(entry.getKey());
+            }
+            LongUnaryOperator renumber = renumber(masks);
+            allClassesWithAnnotations.addAll(other.allClassesWithAnnotations, renumber);
+            methodsWithAnnotations.addAll(other.methodsWithAnnotations, renumber);
+            fieldsWithAnnotations.addAll(other.fieldsWithAnnotations, renumber);
+            other.annotationsWithAnnotations.forEach(
+                    (name, mask) -> annotationsWithAnnotations.merge(name, renumber.applyAsLong(mask), (a, b) -> a | b));
+            symbols.addAll(other.symbols);
+        }
+
+        RuntimeIndex build() {
+            List<String> names = new ArrayList<>();
+            int baseSize = 0;
+            if (base != null) {
+                baseSize = base.annotationIds.size();
+                for (int i = 0; i < baseSize; i++) {
+                    names.add(base.annotationIds.getName(i));
+                }
+            }
+            // The base annotations come first in annotationMasks, so only the ones after those need sorting
+            names.addAll(new TreeSet<>(new ArrayList<>(annotationMasks.keySet()).subList(baseSize, annotationMasks.size())));
+            AnnotationIds annotationIds = AnnotationIds.create(names);
+            long[] masks = new long[annotationMasks.size()];
+            for (Map.Entry<String, Long> entry : annotationMasks.entrySet()) {
+                masks[Long.numberOfTrailingZeros(entry.getValue())] = annotationIds.getMask(entry.getKey());
+            }
+            LongUnaryOperator renumber = renumber(masks);
+            allClassesWithAnnotations.replaceMasks(renumber);
+            methodsWithAnnotations.replaceMasks(renumber);
+            fieldsWithAnnotations.replaceMasks(renumber);
+            annotationsWithAnnotations.replaceAll((name, mask) -> renumber.applyAsLong(mask));
+            if (base != null) {
+                // There are only a few of these, so just combine them with the base ones rather than looking up both
+                base.annotationsWithAnnotations.forEach((name, mask) -> annotationsWithAnnotations.merge(name, mask, (a, b) -> a | b));
+            }
+
+            return new RuntimeIndex(annotationIds, allClassesWithAnnotations.build(), annotationsWithAnnotations,
+                    methodsWithAnnotations.build(), fieldsWithAnnotations.build(), symbols.build(), base);
+        }
+
+        private long getAnnotationMask(String annotationName) {
+            Long mask = annotationMasks.get(annotationName);
+            if (mask == null) {
+                if (annotationMasks.size() == AnnotationIds.MAX_ANNOTATIONS) {
+                    throw new IllegalArgumentException("An index may contain at most " + AnnotationIds.MAX_ANNOTATIONS + " annotations");
+                }
+                mask = 1L << annotationMasks.size();
+                annotationMasks.put(annotationName, mask);
+            }
+            return mask;
+        }
+
+        /**
+         * Creates a function converting a bitmask using the ids of {@link #annotationMasks} to another one
+         * @param masks the new bitmask for each of the ids
+         * @return the function
+         */
+        private static LongUnaryOperator renumber(long[] masks) {
+            return mask -> {
+                long result = 0;
+                for (long remaining = mask; remaining != 0; remaining &= remaining - 1) {
+                    result |= masks[Long.numberOfTrailingZeros(remaining)];
+                }
+                return result;
+            };
+        }
+
+        /**
+         * Encodes a string in the format written by {@link DataOutputStream#writeUTF(String)}. This does not need
+         * a stream, so it can be used from several threads.
+         * @param s the string
+         * @param className whether the string is a class name in dotname format, which should be converted to JVM format
+         * @return the encoded bytes
+         */
+        static byte[] encode(String s, boolean className) {
+            int length = s.length();
+            int utfLength = 0;
+            for (int i = 0; i < length; i++) {
+                char c = s.charAt(i);
+                utfLength += c >= 0x0001 && c <= 0x007F ? 1 : c > 0x07FF ? 3 : 2;
+            }
+            if (utfLength > 0xFFFF) {
+                throw new IllegalArgumentException("Encoded string too long: " + utfLength + " bytes");
+            }
+            byte[] bytes = new byte[utfLength + 2];
+            bytes[0] = (byte) (utfLength >>> 8);
+            bytes[1] = (byte) utfLength;
+            int pos = 2;
+            for (int i = 0; i < length; i++) {
+                char c = s.charAt(i);
+                if (className && c == '.') {
+                    c = '/';
+                }
+                if (c >= 0x0001 && c <= 0x007F) {
+                    bytes[pos++] = (byte) c;
+                } else if (c > 0x07FF) {
+                    bytes[pos++] = (byte) (0xE0 | ((c >> 12) & 0x0F));
+                    bytes[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+                } else {
+                    bytes[pos++] = (byte) (0xC0 | ((c >> 6) & 0x1F));
+                    bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            return bytes;
+        }
     }
 
     /**
@@ -449,13 +1122,8 @@ public class RuntimeIndex {
 
         public int hashCode() {
             int hashCode = hash;
-            if (hashCode == 0 && arr.length > 0) {
-                hashCode = 1;
-                int end = start + length;
-                for (int i = start ; i < end ; i++) {
-                    hashCode = 31 * hashCode + arr[i];
-                }
-
+            if (hashCode == 0 && length > 0) {
+                hashCode = MemberTable.hash(arr, start, length);
                 this.hash = hashCode;
             }
             return hashCode;
@@ -472,6 +1140,14 @@ public class RuntimeIndex {
             return Arrays.equals(arr, start, start + length, that.arr, that.start, that.start + that.length);
         }
 
+        int length() {
+            return length;
+        }
+
+        void copyTo(byte[] dest, int destPos) {
+            System.arraycopy(arr, start, dest, destPos, length);
+        }
+
         /**
          * Converts the relevant bytes from this key to their string representation
          * @param reusableStreams factory to obtain reusable streams
@@ -0,0 +1,432 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.BytecodeTags.CONSTANT_CLASS;
+import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.BytecodeTags.CONSTANT_DOUBLE;
+import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.BytecodeTags.CONSTANT_LONG;
+import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.BytecodeTags.CONSTANT_UTF8;
+import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.BytecodeTags.constantLength;
+
+/**
+ * <p>Finds the classes, methods, constructors and fields annotated with the annotations searched for by reading the
+ * annotation attributes of each class file directly, as an alternative to building a Jandex index of the jar.</p>
+ *
+ * <p>The {@code RuntimeVisibleAnnotations}, {@code RuntimeInvisibleAnnotations}, parameter annotation and type
+ * annotation attributes of each class and of its fields and methods are read, and everything else is skipped.
+ * Like Jandex, type annotations in method bodies are ignored. Nothing about a class is kept once it has been read,
+ * apart from what is added to the results.</p>
+ */
+class StreamingAnnotationExtractor {
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_ANNOTATION = 0x2000;
+    private static final int ACC_MODULE = 0x8000;
+
+    private static final int NOT_ANNOTATIONS = 0;
+    private static final int ANNOTATIONS = 1;
+    private static final int PARAMETER_ANNOTATIONS = 2;
+    private static final int TYPE_ANNOTATIONS = 3;
+
+    private static final byte[] RUNTIME_VISIBLE_ANNOTATIONS = utf8("RuntimeVisibleAnnotations");
+    private static final byte[] RUNTIME_INVISIBLE_ANNOTATIONS = utf8("RuntimeInvisibleAnnotations");
+    private static final byte[] RUNTIME_VISIBLE_PARAMETER_ANNOTATIONS = utf8("RuntimeVisibleParameterAnnotations");
+    private static final byte[] RUNTIME_INVISIBLE_PARAMETER_ANNOTATIONS = utf8("RuntimeInvisibleParameterAnnotations");
+    private static final byte[] RUNTIME_VISIBLE_TYPE_ANNOTATIONS = utf8("RuntimeVisibleTypeAnnotations");
+    private static final byte[] RUNTIME_INVISIBLE_TYPE_ANNOTATIONS = utf8("RuntimeInvisibleTypeAnnotations");
+
+    private final List<Set<String>> excludedClasses = new ArrayList<>();
+    private final List<JarAnnotationIndex.ResultBuilder> builders = new ArrayList<>();
+    private final byte[][] descriptors;
+    // Which annotations were found on the class or member being read
+    private final boolean[] found;
+
+    // The state of the class being read. The constant pool offsets array is reused for the next class
+    private byte[] bytes;
+    private int pos;
+    private int end;
+    private int[] constantPool = new int[256];
+    private int constantPoolCount;
+
+    /**
+     * Constructor
+     * @param excludedClassesByAnnotation the annotations to search for, mapped to the classes to exclude for each
+     * @param descriptors the descriptors of the annotations in the same order, in the format written by
+     *                    {@link java.io.DataOutput#writeUTF(String)}
+     */
+    StreamingAnnotationExtractor(Map<String, Set<String>> excludedClassesByAnnotation, byte[][] descriptors) {
+        for (Map.Entry<String, Set<String>> entry : excludedClassesByAnnotation.entrySet()) {
+            builders.add(JarAnnotationIndex.builder(entry.getKey()));
+            excludedClasses.add(entry.getValue());
+        }
+        this.descriptors = descriptors;
+        this.found = new boolean[descriptors.length];
+    }
+
+    /**
+     * Reads a class file, and adds the places the annotations are used in it to the results
+     * @param bytes the array containing the class file
+     * @param offset the index of the first byte of the class file in {@code bytes}
+     * @param length the length of the class file
+     * @throws IOException if the bytes are not a valid class file
+     */
+    void extract(byte[] bytes, int offset, int length) throws IOException {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        this.bytes = bytes;
+        this.pos = offset;
+        this.end = offset + length;
+        try {
+            readClass();
+        } finally {
+            this.bytes = null;
+        }
+    }
+
+    /**
+     * Creates a JarAnnotationIndex for each annotation searched for from what has been found
+     * @return the JarAnnotationIndex for each annotation, in the order the annotations were passed in
+     */
+    Map<String, JarAnnotationIndex> complete() {
+        Map<String, JarAnnotationIndex> results = new LinkedHashMap<>();
+        for (JarAnnotationIndex.ResultBuilder builder : builders) {
+            JarAnnotationIndex index = builder.build();
+            results.put(index.getAnnotationName(), index);
+        }
+        return results;
+    }
+
+    private void readClass() throws IOException {
+        if (readInt() != 0xCAFEBABE) {
+            throw new IOException("Input is not a valid class file; must begin with a 4-byte integer 0xCAFEBABE");
+        }
+        skip(4);
+        readConstantPool();
+
+        int accessFlags = readUnsignedShort();
+        int thisClass = readUnsignedShort();
+        if ((accessFlags & ACC_MODULE) != 0) {
+            return;
+        }
+        String className = null;
+        // Skip the super class and interfaces
+        skip(2);
+        skip(readUnsignedShort() * 2);
+
+        int fieldCount = readUnsignedShort();
+        for (int i = 0; i < fieldCount; i++) {
+            skip(2);
+            int name = readUnsignedShort();
+            skip(2);
+            if (readAttributes()) {
+                className = className == null ? getClassName(thisClass) : className;
+                for (int j = 0; j < found.length; j++) {
+                    if (found[j] && !excludedClasses.get(j).contains(className)) {
+                        builders.get(j).addAnnotatedField(new AnnotatedField(className, getUtf8(name)));
+                    }
+                }
+            }
+        }
+
+        int methodCount = readUnsignedShort();
+        for (int i = 0; i < methodCount; i++) {
+            skip(2);
+            int name = readUnsignedShort();
+            int descriptor = readUnsignedShort();
+            if (readAttributes()) {
+                className = className == null ? getClassName(thisClass) : className;
+                String methodName = getUtf8(name);
+                for (int j = 0; j < found.length; j++) {
+                    if (found[j] && !excludedClasses.get(j).contains(className)) {
+                        if (methodName.equals("<init>")) {
+                            builders.get(j).addAnnotatedConstructor(new AnnotatedConstructor(className, getUtf8(descriptor)));
+                        } else {
+                            builders.get(j).addAnnotatedMethod(new AnnotatedMethod(className, methodName, getUtf8(descriptor)));
+                        }
+                    }
+                }
+            }
+        }
+
+        if (readAttributes()) {
+            className = className == null ? getClassName(thisClass) : className;
+            for (int j = 0; j < found.length; j++) {
+                if (found[j] && !excludedClasses.get(j).contains(className)) {
+                    if ((accessFlags & ACC_ANNOTATION) != 0) {
+                        builders.get(j).addAnnotatedAnnotation(className);
+                    } else if ((accessFlags & ACC_INTERFACE) != 0) {
+                        builders.get(j).addAnnotatedInterface(className);
+                    } else {
+                        builders.get(j).addAnnotatedClass(className);
+                    }
+                }
+            }
+        }
+    }
+
+    private void readConstantPool() throws IOException {
+        int count = readUnsignedShort();
+        if (constantPool.length < count) {
+            constantPool = new int[count];
+        }
+        constantPoolCount = count;
+        for (int i = 1; i < count; i++) {
+            int tag = readUnsignedByte();
+            // The offset points to the entry itself, after the tag
+            constantPool[i] = pos;
+            int length = constantLength(bytes, pos, end, tag);
+            if (length < 0) {
+                throw new IOException(String.format(Locale.ROOT, "Unknown tag %s! pos = %s poolSize = %s", tag, i, count));
+            }
+            skip(length);
+            if (tag == CONSTANT_LONG || tag == CONSTANT_DOUBLE) {
+                // 8 byte constant pool entries take two slots
+                if (++i < count) {
+                    constantPool[i] = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the attributes of a class, field or method, and records which annotations were found in them
+     * @return {@code true} if any of the annotations searched for were found
+     */
+    private boolean readAttributes() throws IOException {
+        Arrays.fill(found, false);
+        boolean any = false;
+        int count = readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            int kind = getAttributeKind(readUnsignedShort());
+            int length = readInt();
+            if (length < 0 || length > end - pos) {
+                throw new EOFException();
+            }
+            int attributeEnd = pos + length;
+            switch (kind) {
+                case ANNOTATIONS:
+                    any |= readAnnotations();
+                    break;
+                case PARAMETER_ANNOTATIONS: {
+                    int parameters = readUnsignedByte();
+                    for (int j = 0; j < parameters; j++) {
+                        any |= readAnnotations();
+                    }
+                    break;
+                }
+                case TYPE_ANNOTATIONS: {
+                    int annotations = readUnsignedShort();
+                    for (int j = 0; j < annotations; j++) {
+                        skipTypeAnnotationTarget();
+                        any |= readAnnotation();
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+            pos = attributeEnd;
+        }
+        return any;
+    }
+
+    private boolean readAnnotations() throws IOException {
+        boolean any = false;
+        int count = readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            any |= readAnnotation();
+        }
+        return any;
+    }
+
+    private boolean readAnnotation() throws IOException {
+        boolean any = false;
+        int type = getUtf8Offset(readUnsignedShort());
+        for (int i = 0; i < descriptors.length; i++) {
+            if (equalsUtf8(type, descriptors[i])) {
+                found[i] = true;
+                any = true;
+            }
+        }
+        skipElementValuePairs();
+        return any;
+    }
+
+    private void skipElementValuePairs() throws IOException {
+        int count = readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            skip(2);
+            skipElementValue();
+        }
+    }
+
+    private void skipElementValue() throws IOException {
+        int tag = readUnsignedByte();
+        switch (tag) {
+            case 'B':
+            case 'C':
+            case 'D':
+            case 'F':
+            case 'I':
+            case 'J':
+            case 'S':
+            case 'Z':
+            case 's':
+            case 'c':
+                skip(2);
+                break;
+            case 'e':
+                skip(4);
+                break;
+            case '@':
+                // Annotations nested in values are not indexed, only the top level ones
+                skip(2);
+                skipElementValuePairs();
+                break;
+            case '[': {
+                int count = readUnsignedShort();
+                for (int i = 0; i < count; i++) {
+                    skipElementValue();
+                }
+                break;
+            }
+            default:
+                throw new IOException("Unknown element value tag " + tag);
+        }
+    }
+
+    private void skipTypeAnnotationTarget() throws IOException {
+        int targetType = readUnsignedByte();
+        switch (targetType) {
+            case 0x00: // type parameter of a class
+            case 0x01: // type parameter of a method
+            case 0x16: // formal parameter
+                skip(1);
+                break;
+            case 0x10: // super type
+            case 0x11: // bound of a type parameter of a class
+            case 0x12: // bound of a type parameter of a method
+            case 0x17: // throws
+            case 0x42: // catch
+            case 0x43: // instanceof
+            case 0x44: // new
+            case 0x45: // constructor reference
+            case 0x46: // method reference
+                skip(2);
+                break;
+            case 0x13: // field
+            case 0x14: // return type
+            case 0x15: // receiver
+                break;
+            case 0x40: // local variable
+            case 0x41: // resource variable
+                skip(readUnsignedShort() * 6);
+                break;
+            case 0x47: // cast
+            case 0x48: // type argument of a constructor invocation
+            case 0x49: // type argument of a method invocation
+            case 0x4A: // type argument of a constructor reference
+            case 0x4B: // type argument of a method reference
+                skip(3);
+                break;
+            default:
+                throw new IOException("Unknown type annotation target " + targetType);
+        }
+        // The type path
+        skip(readUnsignedByte() * 2);
+    }
+
+    private int getAttributeKind(int nameIndex) throws IOException {
+        int name = getUtf8Offset(nameIndex);
+        if (equalsUtf8(name, RUNTIME_VISIBLE_ANNOTATIONS) || equalsUtf8(name, RUNTIME_INVISIBLE_ANNOTATIONS)) {
+            return ANNOTATIONS;
+        }
+        if (equalsUtf8(name, RUNTIME_VISIBLE_PARAMETER_ANNOTATIONS) || equalsUtf8(name, RUNTIME_INVISIBLE_PARAMETER_ANNOTATIONS)) {
+            return PARAMETER_ANNOTATIONS;
+        }
+        if (equalsUtf8(name, RUNTIME_VISIBLE_TYPE_ANNOTATIONS) || equalsUtf8(name, RUNTIME_INVISIBLE_TYPE_ANNOTATIONS)) {
+            return TYPE_ANNOTATIONS;
+        }
+        return NOT_ANNOTATIONS;
+    }
+
+    private String getClassName(int classIndex) throws IOException {
+        int offset = getConstantOffset(classIndex, CONSTANT_CLASS);
+        return getUtf8(((bytes[offset] & 0xff) << 8) | (bytes[offset + 1] & 0xff)).replace('/', '.');
+    }
+
+    private String getUtf8(int index) throws IOException {
+        int offset = getUtf8Offset(index);
+        int length = ((bytes[offset] & 0xff) << 8) | (bytes[offset + 1] & 0xff);
+        // Constant pool strings are in modified UTF-8, which DataInputStream knows how to read
+        return new DataInputStream(new ByteArrayInputStream(bytes, offset, 2 + length)).readUTF();
+    }
+
+    private int getUtf8Offset(int index) throws IOException {
+        return getConstantOffset(index, CONSTANT_UTF8);
+    }
+
+    private int getConstantOffset(int index, int tag) throws IOException {
+        if (index <= 0 || index >= constantPoolCount || constantPool[index] == 0 || bytes[constantPool[index] - 1] != tag) {
+            throw new IOException("Invalid constant pool index " + index);
+        }
+        return constantPool[index];
+    }
+
+    private boolean equalsUtf8(int offset, byte[] value) {
+        // Both start with the two byte length, so compare that first
+        return bytes[offset] == value[0] && bytes[offset + 1] == value[1]
+                && Arrays.equals(bytes, offset + 2, offset + value.length, value, 2, value.length);
+    }
+
+    private int readUnsignedByte() throws EOFException {
+        checkAvailable(1);
+        return bytes[pos++] & 0xff;
+    }
+
+    private int readUnsignedShort() throws EOFException {
+        checkAvailable(2);
+        int value = ((bytes[pos] & 0xff) << 8) | (bytes[pos + 1] & 0xff);
+        pos += 2;
+        return value;
+    }
+
+    private int readInt() throws EOFException {
+        checkAvailable(4);
+        int value = ((bytes[pos] & 0xff) << 24) | ((bytes[pos + 1] & 0xff) << 16)
+                | ((bytes[pos + 2] & 0xff) << 8) | (bytes[pos + 3] & 0xff);
+        pos += 4;
+        return value;
+    }
+
+    private void skip(int count) throws EOFException {
+        checkAvailable(count);
+        pos += count;
+    }
+
+    private void checkAvailable(int needed) throws EOFException {
+        if (needed > end - pos) {
+            throw new EOFException();
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        // The attribute names are ASCII, so the modified UTF-8 is the same as the UTF-8
+        byte[] chars = value.getBytes(StandardCharsets.UTF_8);
+        byte[] result = new byte[chars.length + 2];
+        result[0] = (byte) (chars.length >>> 8);
+        result[1] = (byte) chars.length;
+        System.arraycopy(chars, 0, result, 2, chars.length);
+        return result;
+    }
+}
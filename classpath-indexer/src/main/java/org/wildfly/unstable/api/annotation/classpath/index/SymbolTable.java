@@ -0,0 +1,280 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Interns the class names, method names, field names and method descriptors used by the {@link RuntimeIndex}, so that
+ * they can be looked up from the bytes found in the class file constant pool.
+ *
+ * Each distinct name gets an int id. The names are stored once, in the same format as the UTF8 entries of the
+ * class file constant pool (i.e. prefixed by their two length bytes), contiguously in one array. Each id has a bitmask
+ * of the {@code KIND_XXX} constants recording what the name is used as, since e.g. the same name may be used for
+ * both a field and a method. The lookup is an open-addressing table like the one used by {@link MemberTable}.
+ *
+ * The strings are only created when first asked for. Class names are returned in dot format. A name used as a
+ * class cannot clash with a different meaning for another kind, since member names may not contain {@code /} and
+ * class names may not contain the {@code ;} used by object types in descriptors, so one cached string per id
+ * is enough.
+ */
+final class SymbolTable {
+    static final int KIND_CLASS = 1;
+    static final int KIND_METHOD_NAME = 1 << 1;
+    static final int KIND_FIELD_NAME = 1 << 2;
+    static final int KIND_METHOD_DESCRIPTOR = 1 << 3;
+
+    private static final int EMPTY = 0;
+
+    private final byte[] symbolBytes;
+    private final int[] offsets;
+    private final byte[] kinds;
+    // The hash of the symbol in each slot, and its id + 1 (so 0 means the slot is empty)
+    private final int[] slotHashes;
+    private final int[] slotIds;
+    private final int mask;
+    private final int shift;
+    // Lazily created
+    private final String[] strings;
+
+    private SymbolTable(byte[] symbolBytes, int[] offsets, byte[] kinds, int[] slotHashes, int[] slotIds) {
+        this.symbolBytes = symbolBytes;
+        this.offsets = offsets;
+        this.kinds = kinds;
+        this.slotHashes = slotHashes;
+        this.slotIds = slotIds;
+        this.mask = slotHashes.length - 1;
+        this.shift = 32 - Integer.numberOfTrailingZeros(slotHashes.length);
+        this.strings = new String[offsets.length];
+    }
+
+    /**
+     * Gets the number of symbols
+     * @return the number of symbols
+     */
+    int size() {
+        return offsets.length;
+    }
+
+    /**
+     * Gets the hashes of all the symbols of a kind
+     * @param kind one of the {@code KIND_XXX} constants
+     * @return the hashes, as calculated by {@link MemberTable#hash(byte[], int, int)}
+     */
+    int[] getHashes(int kind) {
+        int count = 0;
+        int[] hashes = new int[offsets.length];
+        for (int slot = 0; slot < slotIds.length; slot++) {
+            int id = slotIds[slot] - 1;
+            if (id >= 0 && (kinds[id] & kind) != 0) {
+                hashes[count++] = slotHashes[slot];
+            }
+        }
+        return count == hashes.length ? hashes : Arrays.copyOf(hashes, count);
+    }
+
+    /**
+     * Finds the id of a symbol
+     * @param arr the array containing the symbol, in the format used by the UTF8 entries in the constant pool
+     * @param start the index of the first length byte
+     * @param length the length including the length bytes
+     * @param hash the hash of the bytes, as calculated by {@link MemberTable#hash(byte[], int, int)}
+     * @return the id or {@code -1} if not found
+     */
+    int find(byte[] arr, int start, int length, int hash) {
+        for (int slot = (hash * 0x9E3779B9) >>> shift; ; slot = (slot + 1) & mask) {
+            int id = slotIds[slot] - 1;
+            if (id < 0) {
+                return -1;
+            }
+            if (slotHashes[slot] == hash) {
+                int offset = offsets[id];
+                if (symbolLength(symbolBytes, offset) == length
+                        && Arrays.equals(symbolBytes, offset, offset + length, arr, start, start + length)) {
+                    return id;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the string for a symbol of the given kind
+     * @param arr the array containing the symbol, in the format used by the UTF8 entries in the constant pool
+     * @param start the index of the first length byte
+     * @param length the length including the length bytes
+     * @param hash the hash of the bytes, as calculated by {@link MemberTable#hash(byte[], int, int)}
+     * @param kind one of the {@code KIND_XXX} constants
+     * @return the string, or {@code null} if there is no such symbol of that kind. For classes this is in dot format.
+     */
+    String getString(byte[] arr, int start, int length, int hash, int kind) {
+        int id = find(arr, start, length, hash);
+        if (id < 0 || (kinds[id] & kind) == 0) {
+            return null;
+        }
+        return getString(id);
+    }
+
+    /**
+     * Gets the string for a symbol
+     * @param id the id of the symbol
+     * @return the string. For classes this is in dot format.
+     */
+    String getString(int id) {
+        String s = strings[id];
+        if (s == null) {
+            s = decode(symbolBytes, offsets[id]);
+            if ((kinds[id] & KIND_CLASS) != 0) {
+                s = RuntimeIndex.convertClassNameToDotFormat(s);
+            }
+            // Strings are immutable, so a racy publication is fine
+            strings[id] = s;
+        }
+        return s;
+    }
+
+    /**
+     * Writes this table in the binary format read by {@link #read(ByteBuffer)}.
+     *
+     * @param out the stream to write to
+     * @throws IOException if there was an error writing
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(symbolBytes.length);
+        out.write(symbolBytes);
+        out.writeInt(offsets.length);
+        for (int offset : offsets) {
+            out.writeInt(offset);
+        }
+        out.write(kinds);
+        out.writeInt(slotHashes.length);
+        for (int hash : slotHashes) {
+            out.writeInt(hash);
+        }
+        for (int id : slotIds) {
+            out.writeInt(id);
+        }
+    }
+
+    /**
+     * Reads a table written by {@link #write(DataOutputStream)}
+     *
+     * @param buffer the buffer to read from. Its position is moved to after the table
+     * @return the table
+     */
+    static SymbolTable read(ByteBuffer buffer) {
+        byte[] symbolBytes = new byte[buffer.getInt()];
+        buffer.get(symbolBytes);
+        int count = buffer.getInt();
+        int[] offsets = new int[count];
+        buffer.asIntBuffer().get(offsets);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        byte[] kinds = new byte[count];
+        buffer.get(kinds);
+        int capacity = buffer.getInt();
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Invalid table capacity " + capacity);
+        }
+        int[] slotHashes = new int[capacity];
+        buffer.asIntBuffer().get(slotHashes);
+        buffer.position(buffer.position() + capacity * Integer.BYTES);
+        int[] slotIds = new int[capacity];
+        buffer.asIntBuffer().get(slotIds);
+        buffer.position(buffer.position() + capacity * Integer.BYTES);
+        return new SymbolTable(symbolBytes, offsets, kinds, slotHashes, slotIds);
+    }
+
+    private static int symbolLength(byte[] bytes, int offset) {
+        return 2 + (((bytes[offset] & 0xff) << 8) + (bytes[offset + 1] & 0xff));
+    }
+
+    private static String decode(byte[] bytes, int offset) {
+        int length = symbolLength(bytes, offset) - 2;
+        int start = offset + 2;
+        boolean ascii = true;
+        for (int i = start; i < start + length; i++) {
+            if (bytes[i] < 0) {
+                ascii = false;
+                break;
+            }
+        }
+        if (ascii) {
+            // Modified UTF-8 is the same as ASCII when all the bytes are below 0x80
+            return new String(bytes, start, length, StandardCharsets.ISO_8859_1);
+        }
+        try {
+            return new DataInputStream(new ByteArrayInputStream(bytes, offset, length + 2)).readUTF();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Collects the symbols for a {@link SymbolTable}
+     */
+    static final class Builder {
+        private final Map<RuntimeIndex.ByteArrayKey, Integer> symbols = new LinkedHashMap<>();
+
+        /**
+         * Adds a symbol. If it has already been added, the kind is added to its existing kinds.
+         * @param key the symbol, in the format written by {@link java.io.DataOutputStream#writeUTF(String)}
+         * @param kind one of the {@code KIND_XXX} constants
+         */
+        void add(RuntimeIndex.ByteArrayKey key, int kind) {
+            symbols.merge(key, kind, (a, b) -> a | b);
+        }
+
+        /**
+         * Adds all the symbols from another builder
+         * @param other the other builder
+         */
+        void addAll(Builder other) {
+            other.symbols.forEach(this::add);
+        }
+
+        SymbolTable build() {
+            // Same sizing as MemberTable
+            int capacity = Math.max(2, Integer.highestOneBit(Math.max(1, symbols.size()) * 2 - 1) << 1);
+            int mask = capacity - 1;
+            int shift = 32 - Integer.numberOfTrailingZeros(capacity);
+
+            int totalLength = 0;
+            for (RuntimeIndex.ByteArrayKey key : symbols.keySet()) {
+                totalLength += key.length();
+            }
+
+            byte[] symbolBytes = new byte[totalLength];
+            int[] offsets = new int[symbols.size()];
+            byte[] kinds = new byte[symbols.size()];
+            int[] slotHashes = new int[capacity];
+            int[] slotIds = new int[capacity];
+
+            int offset = 0;
+            int id = 0;
+            for (Map.Entry<RuntimeIndex.ByteArrayKey, Integer> entry : symbols.entrySet()) {
+                RuntimeIndex.ByteArrayKey key = entry.getKey();
+                key.copyTo(symbolBytes, offset);
+                offsets[id] = offset;
+                kinds[id] = entry.getValue().byteValue();
+
+                int hash = key.hashCode();
+                int slot = (hash * 0x9E3779B9) >>> shift;
+                while (slotIds[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                slotHashes[slot] = hash;
+                slotIds[slot] = id + 1;
+
+                offset += key.length();
+                id++;
+            }
+            return new SymbolTable(symbolBytes, offsets, kinds, slotHashes, slotIds);
+        }
+    }
+}
@@ -1,9 +1,9 @@
 package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
 
+import org.wildfly.unstable.api.annotation.classpath.index.AnnotationIds;
 import org.wildfly.unstable.api.annotation.classpath.index.OverallIndex;
 
 import java.util.Objects;
-import java.util.Set;
 
 import static org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex.convertClassNameToDotFormat;
 import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType.CLASS_USAGE;
@@ -15,8 +15,8 @@ import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.Ann
 public class AnnotatedClassUsage extends AnnotationWithSourceClassUsage {
     private final String referencedClass;
 
-    AnnotatedClassUsage(Set<String> annotations, String className, String referencedClass) {
-        super(annotations, CLASS_USAGE, className);
+    AnnotatedClassUsage(AnnotationIds annotationIds, long annotationMask, String className, String referencedClass) {
+        super(annotationIds, annotationMask, CLASS_USAGE, className);
         this.referencedClass = referencedClass;
     }
 
@@ -46,7 +46,8 @@ public class AnnotatedClassUsage extends AnnotationWithSourceClassUsage {
     @Override
     protected AnnotationUsage convertToDotFormat() {
         return new AnnotatedClassUsage(
-                annotations,
+                annotationIds,
+                annotationMask,
                 convertClassNameToDotFormat(sourceClass),
                 convertClassNameToDotFormat(referencedClass));
     }
@@ -1,9 +1,9 @@
 package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
 
+import org.wildfly.unstable.api.annotation.classpath.index.AnnotationIds;
 import org.wildfly.unstable.api.annotation.classpath.index.OverallIndex;
 
 import java.util.Objects;
-import java.util.Set;
 
 import static org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex.convertClassNameToDotFormat;
 import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType.FIELD_REFERENCE;
@@ -16,8 +16,8 @@ public class AnnotatedFieldReference extends AnnotationWithSourceClassUsage {
     private final String fieldClass;
     private final String fieldName;
 
-    AnnotatedFieldReference(Set<String> annotations, String className, String fieldClass, String fieldName) {
-        super(annotations, FIELD_REFERENCE, className);
+    AnnotatedFieldReference(AnnotationIds annotationIds, long annotationMask, String className, String fieldClass, String fieldName) {
+        super(annotationIds, annotationMask, FIELD_REFERENCE, className);
         this.fieldClass = fieldClass;
         this.fieldName = fieldName;
     }
@@ -56,7 +56,8 @@ public class AnnotatedFieldReference extends AnnotationWithSourceClassUsage {
     @Override
     protected AnnotationUsage convertToDotFormat() {
         return new AnnotatedFieldReference(
-                annotations,
+                annotationIds,
+                annotationMask,
                 convertClassNameToDotFormat(sourceClass),
                 convertClassNameToDotFormat(fieldClass), fieldName);
     }
@@ -1,9 +1,9 @@
 package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
 
+import org.wildfly.unstable.api.annotation.classpath.index.AnnotationIds;
 import org.wildfly.unstable.api.annotation.classpath.index.OverallIndex;
 
 import java.util.Objects;
-import java.util.Set;
 
 import static org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex.convertClassNameToDotFormat;
 import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType.METHOD_REFERENCE;
@@ -17,8 +17,8 @@ public class AnnotatedMethodReference extends AnnotationWithSourceClassUsage {
     private final String methodName;
     private final String descriptor;
 
-    AnnotatedMethodReference(Set<String> annotations, String className, String methodClass, String methodName, String descriptor) {
-        super(annotations, METHOD_REFERENCE, className);
+    AnnotatedMethodReference(AnnotationIds annotationIds, long annotationMask, String className, String methodClass, String methodName, String descriptor) {
+        super(annotationIds, annotationMask, METHOD_REFERENCE, className);
         this.methodClass = methodClass;
         this.methodName = methodName;
         this.descriptor = descriptor;
@@ -66,7 +66,8 @@ public class AnnotatedMethodReference extends AnnotationWithSourceClassUsage {
     @Override
     protected AnnotationUsage convertToDotFormat() {
         return new AnnotatedMethodReference(
-                annotations,
+                annotationIds,
+                annotationMask,
                 convertClassNameToDotFormat(sourceClass),
                 convertClassNameToDotFormat(methodClass),
                 methodName,
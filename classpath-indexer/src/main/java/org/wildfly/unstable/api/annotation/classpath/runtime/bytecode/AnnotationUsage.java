@@ -1,5 +1,7 @@
 package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
 
+import org.wildfly.unstable.api.annotation.classpath.index.AnnotationIds;
+
 import java.util.Objects;
 import java.util.Set;
 
@@ -8,12 +10,25 @@ import java.util.Set;
  * as unstable api happened. The intent is for this to be run on code supplied by the user.
  */
 public abstract class AnnotationUsage {
-    protected final Set<String> annotations;
+    // Annotations found in the RuntimeIndex are stored as a bitmask of their ids, and only converted to names on demand
+    protected final AnnotationIds annotationIds;
+    protected final long annotationMask;
+    // Annotations which are not part of the RuntimeIndex ids, i.e. annotated annotations found by the Jandex checks
+    private final Set<String> annotations;
     protected final AnnotationUsageType type;
 
     private int hash;
 
+    AnnotationUsage(AnnotationIds annotationIds, long annotationMask, AnnotationUsageType type) {
+        this.annotationIds = annotationIds;
+        this.annotationMask = annotationMask;
+        this.annotations = null;
+        this.type = type;
+    }
+
     AnnotationUsage(Set<String> annotations, AnnotationUsageType type) {
+        this.annotationIds = null;
+        this.annotationMask = 0;
         this.annotations = annotations;
         this.type = type;
     }
@@ -33,7 +48,10 @@ public abstract class AnnotationUsage {
      * @return the annotations
      */
     public Set<String> getAnnotations() {
-        return annotations;
+        if (annotations != null) {
+            return annotations;
+        }
+        return annotationIds.getNames(annotationMask);
     }
 
     /**
@@ -113,7 +131,14 @@ public abstract class AnnotationUsage {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         AnnotationUsage usage = (AnnotationUsage) o;
-        return Objects.equals(annotations, usage.annotations) && type == usage.type;
+        if (type != usage.type) {
+            return false;
+        }
+        if (annotationIds != null && annotationIds == usage.annotationIds) {
+            // Same ids, so we can just compare the bits
+            return annotationMask == usage.annotationMask;
+        }
+        return Objects.equals(getAnnotations(), usage.getAnnotations());
     }
 
     @Override
@@ -131,7 +156,8 @@ public abstract class AnnotationUsage {
      * @return the calculated hash
      */
     protected int calculateHash() {
-        return Objects.hash(annotations, type);
+        int annotationsHash = annotations != null ? annotations.hashCode() : annotationIds.namesHashCode(annotationMask);
+        return Objects.hash(annotationsHash, type);
     }
 
     /**
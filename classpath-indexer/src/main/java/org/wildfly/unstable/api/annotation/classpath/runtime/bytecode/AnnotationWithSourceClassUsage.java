@@ -1,7 +1,8 @@
 package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
 
+import org.wildfly.unstable.api.annotation.classpath.index.AnnotationIds;
+
 import java.util.Objects;
-import java.util.Set;
 
 /**
  * Abstract base class for all usage of classes, methods, fields, constructors etc. that have been annotated with
@@ -11,8 +12,8 @@ import java.util.Set;
 public abstract class AnnotationWithSourceClassUsage extends AnnotationUsage {
     protected final String sourceClass;
 
-    AnnotationWithSourceClassUsage(Set<String> annotations, AnnotationUsageType type, String sourceClass) {
-        super(annotations, type);
+    AnnotationWithSourceClassUsage(AnnotationIds annotationIds, long annotationMask, AnnotationUsageType type, String sourceClass) {
+        super(annotationIds, annotationMask, type);
         this.sourceClass = sourceClass;
     }
 
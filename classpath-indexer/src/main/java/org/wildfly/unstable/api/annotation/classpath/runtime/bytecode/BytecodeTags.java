@@ -1,21 +1,71 @@
 package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
 
-class BytecodeTags {
-    static final int CONSTANT_CLASS = 7;
-    static final int CONSTANT_FIELDREF = 9;
-    static final int CONSTANT_METHODREF = 10;
-    static final int CONSTANT_INTERFACEMETHODREF = 11;
-    static final int CONSTANT_STRING = 8;
-    static final int CONSTANT_INTEGER = 3;
-    static final int CONSTANT_FLOAT = 4;
-    static final int CONSTANT_LONG = 5;
-    static final int CONSTANT_DOUBLE = 6;
-    static final int CONSTANT_NAMEANDTYPE = 12;
-    static final int CONSTANT_UTF8 = 1;
-    static final int CONSTANT_INVOKEDYNAMIC = 18;
-    static final int CONSTANT_METHODHANDLE = 15;
-    static final int CONSTANT_METHODTYPE = 16;
-    static final int CONSTANT_MODULE = 19;
-    static final int CONSTANT_PACKAGE = 20;
-    static final int CONSTANT_DYNAMIC = 17;
+import java.io.EOFException;
+
+/**
+ * The tags of the class file constant pool entries, shared by the readers of class files
+ */
+public final class BytecodeTags {
+    public static final int CONSTANT_CLASS = 7;
+    public static final int CONSTANT_FIELDREF = 9;
+    public static final int CONSTANT_METHODREF = 10;
+    public static final int CONSTANT_INTERFACEMETHODREF = 11;
+    public static final int CONSTANT_STRING = 8;
+    public static final int CONSTANT_INTEGER = 3;
+    public static final int CONSTANT_FLOAT = 4;
+    public static final int CONSTANT_LONG = 5;
+    public static final int CONSTANT_DOUBLE = 6;
+    public static final int CONSTANT_NAMEANDTYPE = 12;
+    public static final int CONSTANT_UTF8 = 1;
+    public static final int CONSTANT_INVOKEDYNAMIC = 18;
+    public static final int CONSTANT_METHODHANDLE = 15;
+    public static final int CONSTANT_METHODTYPE = 16;
+    public static final int CONSTANT_MODULE = 19;
+    public static final int CONSTANT_PACKAGE = 20;
+    public static final int CONSTANT_DYNAMIC = 17;
+
+    private BytecodeTags() {
+    }
+
+    /**
+     * Gets the length of a constant pool entry. {@link #CONSTANT_LONG} and {@link #CONSTANT_DOUBLE} entries take up
+     * two slots in the constant pool, which the caller needs to account for.
+     * @param bytes the class file
+     * @param pos the position of the entry, after the tag
+     * @param end the end of the class file in {@code bytes}
+     * @param tag the tag of the entry
+     * @return the length of the entry, not including the tag, or {@code -1} if the tag is unknown
+     * @throws EOFException if the length of a {@link #CONSTANT_UTF8} entry is past the end
+     */
+    public static int constantLength(byte[] bytes, int pos, int end, int tag) throws EOFException {
+        switch (tag) {
+            case CONSTANT_CLASS:
+            case CONSTANT_STRING:
+            case CONSTANT_METHODTYPE:
+            case CONSTANT_MODULE:
+            case CONSTANT_PACKAGE:
+                return 2;
+            case CONSTANT_FIELDREF:
+            case CONSTANT_METHODREF:
+            case CONSTANT_INTERFACEMETHODREF:
+            case CONSTANT_INTEGER:
+            case CONSTANT_INVOKEDYNAMIC:
+            case CONSTANT_DYNAMIC:
+            case CONSTANT_FLOAT:
+            case CONSTANT_NAMEANDTYPE:
+                return 4;
+            case CONSTANT_LONG:
+            case CONSTANT_DOUBLE:
+                return 8;
+            case CONSTANT_METHODHANDLE:
+                return 3;
+            case CONSTANT_UTF8:
+                if (pos + 2 > end) {
+                    throw new EOFException();
+                }
+                return 2 + (((bytes[pos] & 0xff) << 8) | (bytes[pos + 1] & 0xff));
+            default:
+                return -1;
+        }
+    }
 }
@@ -7,6 +7,7 @@ import org.jboss.jandex.FieldInfo;
 import org.jboss.jandex.MethodInfo;
 import org.jboss.jandex.MethodParameterInfo;
 import org.jboss.jandex.RecordComponentInfo;
+import org.wildfly.unstable.api.annotation.classpath.index.AnnotationIds;
 import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex;
 
 import java.io.IOException;
@@ -24,12 +25,21 @@ import java.util.Set;
 class ClassInfoCollector {
     private final RuntimeIndex runtimeIndex;
 
+    private final AnnotationIds annotationIds;
+
     private final ReusableStreams reusableStreams = new ReusableStreams();
 
     private final Set<AnnotationUsage> usages = new LinkedHashSet<>();
 
+    private final ClassReferences classReferences = new ClassReferences();
+
+    // Whether each CONSTANT_Class entry of the class being processed might be in the index, indexed by position - 1.
+    // Grown as needed and reused between classes.
+    private boolean[] candidateClasses = new boolean[256];
+
     ClassInfoCollector(RuntimeIndex runtimeIndex) {
         this.runtimeIndex = runtimeIndex;
+        this.annotationIds = runtimeIndex.getAnnotationIds();
     }
 
     /**
@@ -40,23 +50,66 @@ class ClassInfoCollector {
         return usages;
     }
 
+    /**
+     * Adds usages recorded by another collector, e.g. one of the shards used by the {@link ParallelClassInfoScanner}.
+     * Iteration order of the passed in usages is preserved, and usages we already know about are ignored.
+     * @param shardUsages the usages to add
+     */
+    void addUsages(Collection<AnnotationUsage> shardUsages) {
+        usages.addAll(shardUsages);
+    }
+
     /**
      * Takes a parsed {@link ClassInformation} and checks it against the {@code RuntimeIndex}, recording
      * any usage of indexed classes/members as {@link AnnotationUsage} instances.
      */
     void processClass(ClassInformation classInfo) throws IOException {
-        ClassReferences classReferences = new ClassReferences();
+        classReferences.clear();
+        // The lookups work directly on the constant pool bytes, and only when something is found do we need
+        // ByteArrayKeys to record the usage
+        byte[] bytes = classInfo.getConstPoolBytes();
         int[] tags = classInfo.getTags();
-        for (int i = 0; i < tags.length; i++) {
+        int constantPoolSize = classInfo.getConstantPoolSize();
+        // First check the classes against the filter of the index. Most classes referenced will not be in the index,
+        // and since the member refs point to these, most member refs can then be skipped. The hashes of the UTF8
+        // entries are kept by classInfo, so a name used by several entries is only hashed once
+        if (candidateClasses.length < constantPoolSize) {
+            candidateClasses = new boolean[Math.max(constantPoolSize, candidateClasses.length * 2)];
+        }
+        for (int i = 0; i < constantPoolSize; i++) {
+            if (tags[i] == BytecodeTags.CONSTANT_CLASS) {
+                // Our arrays are zero based, while the indices referred to by the bytecode are one based
+                int pos = i + 1;
+                int classUtf = classInfo.getClassNameUtfPositionFromClassInfo(pos);
+                int classHash = classInfo.getUtfHash(classUtf);
+                boolean candidate = runtimeIndex.mightContainClass(classHash);
+                candidateClasses[i] = candidate;
+                if (candidate) {
+                    long annotations = runtimeIndex.getAnnotationMaskForClass(bytes, classInfo.getUtfOffset(classUtf), classHash);
+                    if (annotations != 0) {
+                        RuntimeIndex.ByteArrayKey key = classInfo.getClassNameFromClassInfo(pos);
+                        classReferences.classes.put(runtimeIndex.getClassNameFromKey(key), annotations);
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < constantPoolSize; i++) {
             // Our arrays are zero based, while the indices referred to by the bytecode are one based
             int pos = i + 1;
             int tag = tags[i];
             switch (tag) {
                 case BytecodeTags.CONSTANT_FIELDREF:{
-                    Set<String> annotations = runtimeIndex.getAnnotationsForField(
-                            classInfo.getClassNameFromRefInfo(pos),
-                            () -> classInfo.getNameFromRefInfo(pos));
-                    if (annotations != null) {
+                    if (!candidateClasses[classInfo.getClassPositionFromRefInfo(pos) - 1]) {
+                        break;
+                    }
+                    int classUtf = classInfo.getClassNameUtfPositionFromRefInfo(pos);
+                    int nameUtf = classInfo.getNameUtfPositionFromRefInfo(pos);
+                    long annotations = runtimeIndex.getAnnotationMaskForField(
+                            bytes,
+                            classInfo.getUtfOffset(classUtf), classInfo.getUtfHash(classUtf),
+                            classInfo.getUtfOffset(nameUtf), classInfo.getUtfHash(nameUtf));
+                    if (annotations != 0) {
                         recordFieldUsage(
                                 classInfo,
                                 annotations,
@@ -67,12 +120,18 @@ class ClassInfoCollector {
                 break;
                 case BytecodeTags.CONSTANT_METHODREF:
                 case BytecodeTags.CONSTANT_INTERFACEMETHODREF: {
-
-                    Set<String> annotations = runtimeIndex.getAnnotationsForMethod(
-                            classInfo.getClassNameFromRefInfo(pos),
-                            () -> classInfo.getNameFromRefInfo(pos),
-                            () -> classInfo.getDescriptorFromRefInfo(pos));
-                    if (annotations != null) {
+                    if (!candidateClasses[classInfo.getClassPositionFromRefInfo(pos) - 1]) {
+                        break;
+                    }
+                    int classUtf = classInfo.getClassNameUtfPositionFromRefInfo(pos);
+                    int nameUtf = classInfo.getNameUtfPositionFromRefInfo(pos);
+                    int descriptorUtf = classInfo.getDescriptorUtfPositionFromRefInfo(pos);
+                    long annotations = runtimeIndex.getAnnotationMaskForMethod(
+                            bytes,
+                            classInfo.getUtfOffset(classUtf), classInfo.getUtfHash(classUtf),
+                            classInfo.getUtfOffset(nameUtf), classInfo.getUtfHash(nameUtf),
+                            classInfo.getUtfOffset(descriptorUtf), classInfo.getUtfHash(descriptorUtf));
+                    if (annotations != 0) {
                         recordMethodUsage(
                                 classInfo,
                                 annotations,
@@ -82,13 +141,6 @@ class ClassInfoCollector {
                     }
                 }
                 break;
-                case BytecodeTags.CONSTANT_CLASS: {
-                    RuntimeIndex.ByteArrayKey key = classInfo.getClassNameFromClassInfo(pos);
-                    Set<String> annotations = runtimeIndex.getAnnotationsForClass(key);
-                    if (annotations != null) {
-                        classReferences.classes.put(runtimeIndex.getClassNameFromKey(key), annotations);
-                    }
-                }
                 case BytecodeTags.CONSTANT_METHODHANDLE: {
                     // We don't need to do anything! (I originally thought we did)
                     // Basically this will point to a CONSTANT_FieldRef_Info, CONSTANT_MethodRed_Info or a
@@ -100,41 +152,50 @@ class ClassInfoCollector {
         }
 
 
-        // Now check the superclass and interfaces
-        RuntimeIndex.ByteArrayKey superClass = classInfo.getSuperClass();
-        if (superClass != null && !RuntimeIndex.JAVA_LANG_OBJECT_KEY.equals(superClass)) {
-
-            Set<String> annotations = runtimeIndex.getAnnotationsForClass(superClass);
-            if (annotations != null) {
+        // Now check the superclass and interfaces. java.lang.Object is never in the index, so the filter rejects it
+        int superClassPosition = classInfo.getSuperClassPosition();
+        if (superClassPosition != 0) {
+            long annotations = getAnnotationMaskForClassInfo(classInfo, superClassPosition);
+            if (annotations != 0) {
                 // This is only called once, no need to cache in classInfo
+                RuntimeIndex.ByteArrayKey superClass = classInfo.getClassNameFromClassInfo(superClassPosition);
                 String superClassName = RuntimeIndex.convertClassNameToDotFormat(superClass.convertBytesToString(reusableStreams));
                 recordSuperClassUsage(classInfo, annotations, superClassName);
                 classReferences.indirectReferences.add(superClassName);
             }
         }
 
-        for (RuntimeIndex.ByteArrayKey iface : classInfo.getInterfaces()) {
-            Set<String> annotations = runtimeIndex.getAnnotationsForClass(iface);
-            if (annotations != null) {
+        for (int i = 0; i < classInfo.getInterfaceCount(); i++) {
+            int interfacePosition = classInfo.getInterfacePosition(i);
+            long annotations = getAnnotationMaskForClassInfo(classInfo, interfacePosition);
+            if (annotations != 0) {
                 // This is only called once, no need to cache in classInfo
+                RuntimeIndex.ByteArrayKey iface = classInfo.getClassNameFromClassInfo(interfacePosition);
                 String ifaceName = RuntimeIndex.convertClassNameToDotFormat(iface.convertBytesToString(reusableStreams));
                 recordImplementsInterfaceUsage(classInfo, annotations, ifaceName);
                 classReferences.indirectReferences.add(ifaceName);
             }
         }
 
-        classReferences.recordClassUsage(classInfo.getScannedClassName(reusableStreams));
+        classReferences.recordClassUsage(classInfo);
+    }
+
+    private long getAnnotationMaskForClassInfo(ClassInformation classInfo, int constantPoolPosition) {
+        int classUtf = classInfo.getClassNameUtfPositionFromClassInfo(constantPoolPosition);
+        return runtimeIndex.getAnnotationMaskForClass(
+                classInfo.getConstPoolBytes(), classInfo.getUtfOffset(classUtf), classInfo.getUtfHash(classUtf));
     }
 
     boolean checkAnnotationIndex(JandexIndex annotationIndex) {
         return new AnnotationIndexChecker(annotationIndex).checkAnnotationIndex();
     }
 
-    private void recordMethodUsage(ClassInformation classInfo, Set<String> annotations, RuntimeIndex.ByteArrayKey classNameFromReference, RuntimeIndex.ByteArrayKey nameFromReference, RuntimeIndex.ByteArrayKey descriptorFromReference) throws IOException {
+    private void recordMethodUsage(ClassInformation classInfo, long annotations, RuntimeIndex.ByteArrayKey classNameFromReference, RuntimeIndex.ByteArrayKey nameFromReference, RuntimeIndex.ByteArrayKey descriptorFromReference) throws IOException {
         //The name of the scanned class will not be in the index, so we need to get that separately
         String scannedClass = classInfo.getScannedClassName(reusableStreams);
 
         AnnotatedMethodReference annotatedMethodReference = new AnnotatedMethodReference(
+                annotationIds,
                 annotations,
                 scannedClass,
                 runtimeIndex.getClassNameFromKey(classNameFromReference),
@@ -143,11 +204,12 @@ class ClassInfoCollector {
         usages.add(annotatedMethodReference);
     }
 
-    private void recordFieldUsage(ClassInformation classInfo, Set<String> annotations, RuntimeIndex.ByteArrayKey classNameFromReference, RuntimeIndex.ByteArrayKey nameFromReference) throws IOException {
+    private void recordFieldUsage(ClassInformation classInfo, long annotations, RuntimeIndex.ByteArrayKey classNameFromReference, RuntimeIndex.ByteArrayKey nameFromReference) throws IOException {
         //The name of the scanned class will not be in the index, so we need to get that separately
         String scannedClass = classInfo.getScannedClassName(reusableStreams);
 
         AnnotatedFieldReference annotatedFieldReference = new AnnotatedFieldReference(
+                annotationIds,
                 annotations,
                 scannedClass,
                 runtimeIndex.getClassNameFromKey(classNameFromReference),
@@ -155,34 +217,46 @@ class ClassInfoCollector {
         usages.add(annotatedFieldReference);
     }
 
-    private void recordImplementsInterfaceUsage(ClassInformation classInfo, Set<String> annotations, String ifaceName) throws IOException {
+    private void recordImplementsInterfaceUsage(ClassInformation classInfo, long annotations, String ifaceName) throws IOException {
         //The name of the scanned class will not be in the index, so we need to get that separately
         String scannedClass = classInfo.getScannedClassName(reusableStreams);
-        usages.add(new ImplementsAnnotatedInterface(annotations, scannedClass, ifaceName));
+        usages.add(new ImplementsAnnotatedInterface(annotationIds, annotations, scannedClass, ifaceName));
     }
 
-    private void recordSuperClassUsage(ClassInformation classInfo, Set<String> annotations, String superClassName) throws IOException {
+    private void recordSuperClassUsage(ClassInformation classInfo, long annotations, String superClassName) throws IOException {
         //The name of the scanned class will not be in the index, so we need to get that separately
         String scannedClass = classInfo.getScannedClassName(reusableStreams);
-        usages.add(new ExtendsAnnotatedClass(annotations, scannedClass, superClassName));
+        usages.add(new ExtendsAnnotatedClass(annotationIds, annotations, scannedClass, superClassName));
     }
 
 
     // For classes, we defer the recording of annotations since they may come indirectly
     // from extends and implements etc.
+    // There is one instance per collector, which is cleared for each class, so that nothing is allocated
+    // for classes which don't reference anything in the index
     private class ClassReferences {
         // Classes referenced by extends/implements etc.
         private final Set<String> indirectReferences = new HashSet<>();
-        // Annotations for class references
-        private final Map<String, Set<String>> classes = new HashMap<>();
+        // Annotation bitmasks for class references
+        private final Map<String, Long> classes = new HashMap<>();
 
-        boolean recordClassUsage(String className) {
-            boolean empty = true;
-            for (String s : indirectReferences) {
-                classes.remove(s);
+        void clear() {
+            indirectReferences.clear();
+            classes.clear();
+        }
+
+        boolean recordClassUsage(ClassInformation classInfo) throws IOException {
+            if (classes.isEmpty()) {
+                return true;
             }
-            for (String referencedClass : classes.keySet()) {
-                usages.add(new AnnotatedClassUsage(classes.get(referencedClass), className, referencedClass));
+            if (!indirectReferences.isEmpty()) {
+                for (String s : indirectReferences) {
+                    classes.remove(s);
+                }
+            }
+            boolean empty = true;
+            for (Map.Entry<String, Long> entry : classes.entrySet()) {
+                usages.add(new AnnotatedClassUsage(annotationIds, entry.getValue(), classInfo.getScannedClassName(reusableStreams), entry.getKey()));
                 empty = false;
             }
             return empty;
@@ -2,26 +2,32 @@ package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
 
 import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex;
 
-import java.io.BufferedInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Locale;
+import java.util.Objects;
 import java.util.Set;
 
 /**
  * Inspects the bytecode for one class (typically from user code) and checks against the
  * {@link RuntimeIndex} if it calls any methods, fields, constructors or extends/implements
  * classes/interfaces/annotations marked with an annotation marked as unstable api.
+ *
+ * The buffers used for parsing are reused between classes, so once the scanner has warmed up, scanning
+ * a class which does not use anything from the index does not allocate anything. Allocation only
+ * happens when a usage is recorded.
  */
 public class ClassInfoScanner {
 
-    // Constant Pool constants
-
+    // Most class files fit in this, the buffer grows if needed
+    private static final int INITIAL_CLASS_BUFFER_SIZE = 8192;
 
     private final ClassInfoCollector collector;
-    private final TmpObjects tmpObjects = new TmpObjects();
+    private final ClassInformation classInfo = new ClassInformation();
+    private byte[] classBytes;
 
     public ClassInfoScanner(RuntimeIndex runtimeIndex) {
         this.collector = new ClassInfoCollector(runtimeIndex);
@@ -31,220 +37,212 @@ public class ClassInfoScanner {
         return collector.getUsages();
     }
 
-    public void scanClass(InputStream input) throws IOException {
-        BufferedInputStream in = input instanceof BufferedInputStream ?
-                (BufferedInputStream) input : new BufferedInputStream(input);
-        verifyMagic(in);
-        boolean checkJava11AndNewer = true; // Toggle this for the standalone benchmark
-        if (!readVersionFields(in, checkJava11AndNewer)) {
+    /**
+     * Scans a class. The contents of the stream are read into a buffer which is reused between calls, and then parsed
+     * in the same way as for {@link #scanClass(byte[], int, int)}. The stream is not closed.
+     *
+     * @param in the stream containing the class file
+     * @throws IOException if there were problems reading the stream, or it does not contain a valid class file
+     */
+    public void scanClass(InputStream in) throws IOException {
+        byte[] buf = classBuffer(INITIAL_CLASS_BUFFER_SIZE);
+        int length = 0;
+        while (true) {
+            if (length == buf.length) {
+                buf = classBytes = Arrays.copyOf(buf, buf.length * 2);
+            }
+            int read = in.read(buf, length, buf.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        if (length < 4) {
+            throw new EOFException("Input is not a valid class file; must begin with a 4-byte integer 0xCAFEBABE");
+        }
+        scanClass(buf, 0, length);
+    }
+
+    /**
+     * Scans a class whose bytes are already in memory. The constant pool is parsed in place, so unlike
+     * {@link #scanClass(InputStream)} nothing is copied. The bytes must not be modified until this method returns.
+     *
+     * @param bytes the array containing the class file
+     * @param offset the index of the first byte of the class file in {@code bytes}
+     * @param length the length of the class file
+     * @throws IOException if the bytes are not a valid class file
+     */
+    public void scanClass(byte[] bytes, int offset, int length) throws IOException {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        int end = offset + length;
+        int pos = offset;
+
+        checkAvailable(pos, 8, end);
+        int magic = readIntegerAt(bytes, pos);
+        if (magic != 0xCA_FE_BA_BE) {
+            throw new IOException("Input is not a valid class file; must begin with a 4-byte integer 0xCAFEBABE, "
+                    + "but seen 0x" + Integer.toHexString(magic).toUpperCase());
+        }
+        int minor = readUnsignedShortAt(bytes, pos + 4);
+        int major = readUnsignedShortAt(bytes, pos + 6);
+        pos += 8;
+        if (!isSupportedVersion(minor, major)) {
             return;
         }
 
-        int size = readUnsignedShort(in) - 1;
-
-        byte[] constPool = null;
-        try {
-            constPool = tmpObjects.borrowConstantPool(size);
-            int[] offsets = new int[size];
-            int[] tags = new int[size];
-            int lastOffset = 0;
-            for (int pos = 0, offset = 0; pos < size; pos++) {
-                int tag = readUnsignedByte(in);
-                offsets[pos] = offset;
-                tags[pos] = tag;
-                switch (tag) {
-                    case BytecodeTags.CONSTANT_CLASS:
-                    case BytecodeTags.CONSTANT_STRING:
-                    case BytecodeTags.CONSTANT_METHODTYPE:
-                    case BytecodeTags.CONSTANT_MODULE:
-                    case BytecodeTags.CONSTANT_PACKAGE:
-                        constPool = sizeToFit(constPool, 2, offset, size - pos);
-                        tags[pos] = tag;
-                        readFully(in, constPool, offset, 2);
-                        offset += 2;
-                        break;
-                    case BytecodeTags.CONSTANT_FIELDREF:
-                    case BytecodeTags.CONSTANT_METHODREF:
-                    case BytecodeTags.CONSTANT_INTERFACEMETHODREF:
-                    case BytecodeTags.CONSTANT_INTEGER:
-                    case BytecodeTags.CONSTANT_INVOKEDYNAMIC:
-                    case BytecodeTags.CONSTANT_DYNAMIC:
-                    case BytecodeTags.CONSTANT_FLOAT:
-                    case BytecodeTags.CONSTANT_NAMEANDTYPE:
-                        constPool = sizeToFit(constPool, 4, offset, size - pos);
-                        tags[pos] = tag;
-                        readFully(in, constPool, offset, 4);
-                        offset += 4;
-                        break;
-                    case BytecodeTags.CONSTANT_LONG:
-                    case BytecodeTags.CONSTANT_DOUBLE:
-                        constPool = sizeToFit(constPool, 8, offset, size - pos);
-                        tags[pos] = tag;
-                        readFully(in, constPool, offset, 8);
-                        offset += 8;
-                        pos++; // 8 byte constant pool entries take two "virtual" slots for some reason
-                        break;
-                    case BytecodeTags.CONSTANT_METHODHANDLE:
-                        constPool = sizeToFit(constPool, 3, offset, size - pos);
-                        tags[pos] = (byte) tag;
-                        readFully(in, constPool, offset, 3);
-                        offset += 3;
-                        break;
-                    case BytecodeTags.CONSTANT_UTF8:
-                        int len = readUnsignedShort(in);
-                        constPool = sizeToFit(constPool, len + 2, offset, size - pos);
-                        tags[pos] = tag;
-                        constPool[offset++] = (byte) (len >>> 8);
-                        constPool[offset++] = (byte) len;
-
-                        readFully(in, constPool, offset, len);
-                        offset += len;
-                        break;
-                    default:
-                        throw new IllegalStateException(
-                                String.format(Locale.ROOT, "Unknown tag %s! pos = %s poolSize = %s", tag, pos, size));
+        checkAvailable(pos, 2, end);
+        int size = readUnsignedShortAt(bytes, pos) - 1;
+        pos += 2;
+
+        ClassInformation classInfo = this.classInfo;
+        classInfo.reset(bytes, size);
+        for (int i = 0; i < size; i++) {
+            checkAvailable(pos, 1, end);
+            int tag = bytes[pos++] & 0xff;
+            // The offset points to the entry itself, after the tag
+            classInfo.setEntry(i, tag, pos);
+            pos += constantLength(bytes, pos, end, tag, i, size);
+            if (tag == BytecodeTags.CONSTANT_LONG || tag == BytecodeTags.CONSTANT_DOUBLE) {
+                i++; // 8 byte constant pool entries take two "virtual" slots
+                if (i < size) {
+                    // The arrays are reused, so clear the tag left over from a previous class
+                    classInfo.setEntry(i, 0, pos);
                 }
-                lastOffset = offset;
             }
+        }
 
-            // Skip the access flags
-            skipBytes(in, 2);
-
-            int thisClassPosition = readUnsignedShort(in);
-            int superClassPosition = readUnsignedShort(in);
-            int interfacesCount = readUnsignedShort(in);
-            int[] interfacePositions = new int[interfacesCount];
-            for (int i = 0; i < interfacesCount; i++) {
-                interfacePositions[i] = readUnsignedShort(in);
-            }
-
-            ClassInformation classInfo =
-                    new ClassInformation(tags, constPool, offsets, thisClassPosition, superClassPosition, interfacePositions, lastOffset);
-            collector.processClass(classInfo);
-
-        } finally {
-            if (constPool != null) {
-                tmpObjects.returnConstantPool(constPool);
-            }
+        // Skip the access flags
+        pos += 2;
+
+        checkAvailable(pos, 6, end);
+        int thisClassPosition = readUnsignedShortAt(bytes, pos);
+        int superClassPosition = readUnsignedShortAt(bytes, pos + 2);
+        int interfacesCount = readUnsignedShortAt(bytes, pos + 4);
+        pos += 6;
+        checkAvailable(pos, interfacesCount * 2, end);
+        classInfo.setClassPositions(thisClassPosition, superClassPosition, interfacesCount);
+        for (int i = 0; i < interfacesCount; i++) {
+            classInfo.setInterface(i, readUnsignedShortAt(bytes, pos));
+            pos += 2;
         }
-    }
 
-    public boolean checkAnnotationIndex(JandexIndex annotationIndex) {
-        return collector.checkAnnotationIndex(annotationIndex);
+        collector.processClass(classInfo);
     }
 
-    private void verifyMagic(InputStream in) throws IOException {
-        final int magic;
-        try {
-            magic = readInteger(in);
-        } catch (EOFException e) {
-            throw new EOFException("Input is not a valid class file; must begin with a 4-byte integer 0xCAFEBABE");
+    /**
+     * Scans a class whose bytes are already in memory. The class file is read from the buffer's position
+     * to its limit, and the position of the buffer is not changed. If the buffer is backed by an array the
+     * constant pool is parsed in place, as for {@link #scanClass(byte[], int, int)}. Otherwise, e.g. for
+     * direct or mapped buffers, the class bytes are copied once into a reusable array.
+     *
+     * @param buffer the buffer containing the class file
+     * @throws IOException if the bytes are not a valid class file
+     */
+    public void scanClass(ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) {
+            scanClass(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            return;
+        }
+        int length = buffer.remaining();
+        byte[] bytes = classBuffer(length);
+        // Use absolute gets so the buffer is left alone, and so we don't need a duplicate
+        int position = buffer.position();
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(position + i);
         }
+        scanClass(bytes, 0, length);
+    }
+
+    /**
+     * Checks whether the constant pool of a class contains any of a number of UTF8 constants. Only the constant pool
+     * is read, and nothing is allocated. This is a quick way to rule out classes which cannot refer to something,
+     * e.g. a class can only be annotated with an annotation if its constant pool contains the annotation's descriptor.
+     *
+     * @param bytes the array containing the class file
+     * @param offset the index of the first byte of the class file in {@code bytes}
+     * @param length the length of the class file
+     * @param values the constants to look for, in the format written by {@link java.io.DataOutput#writeUTF(String)},
+     *               i.e. starting with the two byte length
+     * @return {@code true} if the constant pool contains one of the values
+     * @throws IOException if the bytes are not a valid class file
+     */
+    public static boolean containsUtf8Constant(byte[] bytes, int offset, int length, byte[][] values) throws IOException {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        int end = offset + length;
+        int pos = offset;
+
+        checkAvailable(pos, 10, end);
+        int magic = readIntegerAt(bytes, pos);
         if (magic != 0xCA_FE_BA_BE) {
             throw new IOException("Input is not a valid class file; must begin with a 4-byte integer 0xCAFEBABE, "
                     + "but seen 0x" + Integer.toHexString(magic).toUpperCase());
         }
-    }
-    private boolean readVersionFields(InputStream in, boolean checkJava11AndNewer) throws IOException {
-        int minor = readUnsignedShort(in);
-        int major = readUnsignedShort(in);
-        if (checkJava11AndNewer) {
-            return major > 45 || (major == 45 && minor >= 3);
+        pos += 8;
+        int size = readUnsignedShortAt(bytes, pos) - 1;
+        pos += 2;
+
+        for (int i = 0; i < size; i++) {
+            checkAvailable(pos, 1, end);
+            int tag = bytes[pos++] & 0xff;
+            int entryLength = constantLength(bytes, pos, end, tag, i, size);
+            if (tag == BytecodeTags.CONSTANT_UTF8) {
+                checkAvailable(pos, entryLength, end);
+                for (byte[] value : values) {
+                    if (value.length == entryLength && Arrays.equals(bytes, pos, pos + entryLength, value, 0, entryLength)) {
+                        return true;
+                    }
+                }
+            } else if (tag == BytecodeTags.CONSTANT_LONG || tag == BytecodeTags.CONSTANT_DOUBLE) {
+                i++; // 8 byte constant pool entries take two "virtual" slots
+            }
+            pos += entryLength;
         }
-        return true;
-    }
-
-    private int readInteger(InputStream in) throws IOException {
-        int ch1 = in.read();
-        int ch2 = in.read();
-        int ch3 = in.read();
-        int ch4 = in.read();
-        if ((ch1 | ch2 | ch3 | ch4) < 0)
-            throw new EOFException();
-        return ((ch1 << 24) + (ch2 << 16) + (ch3 << 8) + (ch4));
+        return false;
     }
 
-    private int readUnsignedByte(InputStream in) throws IOException {
-        int ch = in.read();
-        if (ch < 0)
-            throw new EOFException();
-        return ch;
-    }
-
-    private int readUnsignedShort(InputStream in) throws IOException {
-        // Stolen from DataInputStream
-        int ch1 = in.read();
-        int ch2 = in.read();
-        if ((ch1 | ch2) < 0)
-            throw new IllegalStateException();
-        return (ch1 << 8) + ch2;
+    public boolean checkAnnotationIndex(JandexIndex annotationIndex) {
+        return collector.checkAnnotationIndex(annotationIndex);
     }
 
-    private byte[] sizeToFit(byte[] buf, int needed, int offset, int remainingEntries) {
-        int oldLength = buf.length;
-        if (offset + needed > oldLength) {
-            int newLength = newLength(oldLength, needed, oldLength >> 1);
-            buf = Arrays.copyOf(buf, newLength);
+    private byte[] classBuffer(int minLength) {
+        byte[] buf = classBytes;
+        if (buf == null || buf.length < minLength) {
+            buf = classBytes = new byte[Math.max(minLength, INITIAL_CLASS_BUFFER_SIZE)];
         }
         return buf;
     }
 
-    private int newLength(int oldLength, int minGrowth, int prefGrowth) {
-        int prefLength = oldLength + Math.max(minGrowth, prefGrowth);
-        return prefLength > 0 ? prefLength : minLength(oldLength, minGrowth);
-    }
-
-    private int minLength(int oldLength, int minGrowth) {
-        int minLength = oldLength + minGrowth;
-        if (minLength < 0) {
-            throw new OutOfMemoryError("Cannot allocate a large enough array: " +
-                    oldLength + " + " + minGrowth + " is too large");
+    /**
+     * Gets the length of a constant pool entry
+     * @param pos the position of the entry, after the tag
+     * @param index the index of the entry, for error reporting
+     * @param size the size of the constant pool, for error reporting
+     * @return the length of the entry, not including the tag
+     */
+    private static int constantLength(byte[] bytes, int pos, int end, int tag, int index, int size) throws EOFException {
+        int length = BytecodeTags.constantLength(bytes, pos, end, tag);
+        if (length < 0) {
+            throw new IllegalStateException(
+                    String.format(Locale.ROOT, "Unknown tag %s! pos = %s poolSize = %s", tag, index, size));
         }
-        return minLength;
+        return length;
     }
 
-    private void readFully(InputStream in, byte[] buf, int offset, int len) throws IOException {
-        if (len < 0)
-            throw new IndexOutOfBoundsException();
-        int n = 0;
-        while (n < len) {
-            int count = in.read(buf, offset + n, len - n);
-            if (count < 0)
-                throw new EOFException();
-            n += count;
-        }
+    private static boolean isSupportedVersion(int minor, int major) {
+        return major > 45 || (major == 45 && minor >= 3);
     }
 
-    private int skipBytes(InputStream in, int n) throws IOException {
-        int total = 0;
-        int cur = 0;
-
-        while ((total<n) && ((cur = (int) in.skip(n-total)) > 0)) {
-            total += cur;
+    private static void checkAvailable(int pos, int needed, int end) throws EOFException {
+        if (pos + needed > end) {
+            throw new EOFException();
         }
-
-        return total;
     }
 
-    private static final class TmpObjects {
-        //private Utils.ReusableBufferedDataInputStream dataInputStream;
-
-        private byte[] constantPool;
-
-        byte[] borrowConstantPool(int poolSize) {
-            byte[] buf = this.constantPool;
-            if (buf == null || buf.length < (20 * poolSize)) {
-                buf = new byte[20 * poolSize]; // Guess
-            } else {
-                Arrays.fill(buf, 0, poolSize, (byte) 0);
-            }
-            this.constantPool = null;
-            return buf;
-        }
-
-        void returnConstantPool(byte[] buf) {
-            this.constantPool = buf;
-        }
+    private static int readIntegerAt(byte[] bytes, int pos) {
+        return ((bytes[pos] & 0xff) << 24) + ((bytes[pos + 1] & 0xff) << 16) + ((bytes[pos + 2] & 0xff) << 8) + (bytes[pos + 3] & 0xff);
     }
 
+    private static int readUnsignedShortAt(byte[] bytes, int pos) {
+        return ((bytes[pos] & 0xff) << 8) + (bytes[pos + 1] & 0xff);
+    }
 }
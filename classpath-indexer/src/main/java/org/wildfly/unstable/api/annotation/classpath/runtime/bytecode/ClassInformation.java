@@ -10,34 +10,170 @@ import static org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex.c
 /**
  * Internal class to contain relevant information about a scanned class. It avoids converting from bytes
  * to Strings etc. as much as possible to keep overhead low.
+ *
+ * An instance is owned by a {@link ClassInfoScanner}, and is {@link #reset(byte[], int) reset} and reused
+ * for each class scanned. The arrays only grow, so once the scanner has seen a class with the largest
+ * constant pool no more allocation is needed.
+ *
+ * The lookups in the {@link RuntimeIndex} are done on the constant pool bytes, using the positions of the UTF8
+ * entries. The {@link ByteArrayKey}s returned by the {@code getXXX()} methods are created on each call, so they
+ * should only be used once something has been found, to record it.
+ *
+ * The hash used by the {@link RuntimeIndex} lookups is kept
+ * for each UTF8 entry once it has been calculated, so an entry referred to several times, e.g. the name of a class
+ * with several member references, is only hashed once per class file. The hashes are calculated on first use rather
+ * than while parsing the constant pool, since most UTF8 entries are never looked up.
  */
 class ClassInformation {
 
-    private static final ByteArrayKey[] EMPTY_BYTE_ARRAY_KEY_ARRAY = new ByteArrayKey[0];
+    private static final int INITIAL_POOL_SIZE = 256;
+    private static final int INITIAL_INTERFACES_SIZE = 8;
 
-    private final int[] tags;
-    private final byte[] constPoolBytes;
-    private final int[] offsets;
-    private final int thisClassPosition;
-    private final int superClassPosition;
-    private final int[] interfacePositions;
+    private int[] tags = new int[INITIAL_POOL_SIZE];
+    private int[] offsets = new int[INITIAL_POOL_SIZE];
+    // The hashes of the UTF8 entries, or 0 if not calculated yet. An entry whose hash really is 0 is just hashed each time
+    private int[] hashes = new int[INITIAL_POOL_SIZE];
+    private int[] interfacePositions = new int[INITIAL_INTERFACES_SIZE];
 
-    private final ByteArrayKey[] byteArrayKeys;
-    private final int constantPoolSize;
+    private byte[] constPoolBytes;
+    private int constantPoolSize;
+    private int thisClassPosition;
+    private int superClassPosition;
+    private int interfaceCount;
 
-    private ByteArrayKey scannedClassKey;
     private String scannedClassName;
 
-
-    ClassInformation(int[] tags, byte[] constPoolBytes, int[] offsets, int thisClassPosition, int superClassPosition, int[] interfacePositions, int constantPoolSize) {
-        this.tags = tags;
+    /**
+     * Prepares this instance for parsing a new class
+     *
+     * @param constPoolBytes the bytes containing the constant pool entries. This is the bytes of the whole class file
+     * @param constantPoolSize the number of entries in the constant pool
+     */
+    void reset(byte[] constPoolBytes, int constantPoolSize) {
         this.constPoolBytes = constPoolBytes;
-        this.offsets = offsets;
+        this.constantPoolSize = constantPoolSize;
+        if (tags.length < constantPoolSize) {
+            int newLength = Math.max(constantPoolSize, tags.length * 2);
+            tags = new int[newLength];
+            offsets = new int[newLength];
+            hashes = new int[newLength];
+        }
+        thisClassPosition = 0;
+        superClassPosition = 0;
+        interfaceCount = 0;
+        scannedClassName = null;
+    }
+
+    /**
+     * Records a constant pool entry
+     *
+     * @param index the zero-based index of the entry
+     * @param tag the tag of the entry
+     * @param offset the offset of the entry in the constant pool bytes. This points to the first byte after the tag
+     */
+    void setEntry(int index, int tag, int offset) {
+        tags[index] = tag;
+        offsets[index] = offset;
+        hashes[index] = 0;
+    }
+
+    /**
+     * Records the entries of the class file following the constant pool
+     *
+     * @param thisClassPosition the constant pool position of this class's ClassInfo
+     * @param superClassPosition the constant pool position of the super class's ClassInfo
+     * @param interfaceCount the number of interfaces. Their positions are then set with {@link #setInterface(int, int)}
+     */
+    void setClassPositions(int thisClassPosition, int superClassPosition, int interfaceCount) {
         this.thisClassPosition = thisClassPosition;
         this.superClassPosition = superClassPosition;
-        this.interfacePositions = interfacePositions;
-        this.byteArrayKeys = new ByteArrayKey[tags.length];
-        this.constantPoolSize = constantPoolSize;
+        this.interfaceCount = interfaceCount;
+        if (interfacePositions.length < interfaceCount) {
+            interfacePositions = new int[Math.max(interfaceCount, interfacePositions.length * 2)];
+        }
+    }
+
+    void setInterface(int index, int constantPoolPosition) {
+        interfacePositions[index] = constantPoolPosition;
+    }
+
+    /**
+     * Gets the bytes the offsets returned by {@link #getUtfOffset(int)} refer to
+     * @return the bytes
+     */
+    byte[] getConstPoolBytes() {
+        return constPoolBytes;
+    }
+
+    /**
+     * Gets the position of the ClassInfo of a Field-/Method-/InterfaceMethodRefInfo.
+     * @param constantPoolPosition the position of the ref info
+     * @return the position of the class info
+     */
+    int getClassPositionFromRefInfo(int constantPoolPosition) {
+        return readUnsignedShortByConstantPoolOffset(offsets[constantPoolPosition - 1]);
+    }
+
+    /**
+     * Gets the position of the UTF8 entry containing the class name of a Field-/Method-/InterfaceMethodRefInfo.
+     * @param constantPoolPosition the position of the ref info
+     * @return the position of the UTF8 entry
+     */
+    int getClassNameUtfPositionFromRefInfo(int constantPoolPosition) {
+        int classPosition = readUnsignedShortByConstantPoolOffset(offsets[constantPoolPosition - 1]);
+        return getClassNameUtfPositionFromClassInfo(classPosition);
+    }
+
+    /**
+     * Gets the position of the UTF8 entry containing the name of a Field-/Method-/InterfaceMethodRefInfo.
+     * @param constantPoolPosition the position of the ref info
+     * @return the position of the UTF8 entry
+     */
+    int getNameUtfPositionFromRefInfo(int constantPoolPosition) {
+        int nameAndTypeInfoPosition = getNameAndTypeInfoPositionFromRefInfo(constantPoolPosition);
+        return readUnsignedShortByConstantPoolOffset(offsets[nameAndTypeInfoPosition - 1]);
+    }
+
+    /**
+     * Gets the position of the UTF8 entry containing the descriptor of a Field-/Method-/InterfaceMethodRefInfo.
+     * @param constantPoolPosition the position of the ref info
+     * @return the position of the UTF8 entry
+     */
+    int getDescriptorUtfPositionFromRefInfo(int constantPoolPosition) {
+        int nameAndTypeInfoPosition = getNameAndTypeInfoPositionFromRefInfo(constantPoolPosition);
+        return readUnsignedShortByConstantPoolOffset(offsets[nameAndTypeInfoPosition - 1] + 2);
+    }
+
+    /**
+     * Gets the position of the UTF8 entry containing the class name of a ClassInfo.
+     * @param constantPoolPosition the position of the class info
+     * @return the position of the UTF8 entry
+     */
+    int getClassNameUtfPositionFromClassInfo(int constantPoolPosition) {
+        return readUnsignedShortByConstantPoolOffset(offsets[constantPoolPosition - 1]);
+    }
+
+    /**
+     * Gets the offset of a UTF8 entry
+     * @param constantPoolPosition the position of the UTF8 entry
+     * @return the offset of the length bytes of the UTF8 entry in {@link #getConstPoolBytes()}
+     */
+    int getUtfOffset(int constantPoolPosition) {
+        return offsets[constantPoolPosition - 1];
+    }
+
+    /**
+     * Gets the hash of a UTF8 entry, as calculated by {@link RuntimeIndex#hashUtf8(byte[], int)}
+     * @param constantPoolPosition the position of the UTF8 entry
+     * @return the hash
+     */
+    int getUtfHash(int constantPoolPosition) {
+        int index = constantPoolPosition - 1;
+        int hash = hashes[index];
+        if (hash == 0) {
+            hash = hashes[index] = RuntimeIndex.hashUtf8(constPoolBytes, offsets[index]);
+        }
+        return hash;
     }
 
     ByteArrayKey getClassNameFromRefInfo(int constantPoolPosition) {
@@ -51,7 +187,7 @@ class ClassInformation {
         int offset = offsets[nameAndTypeInfoPosition -1];
         // The name will be the first two bytes of the constantPool entry
         int refNamePosition = readUnsignedShortByConstantPoolOffset(offset);
-        return getKeyFromUtfInfo(refNamePosition);
+        return createKeyFromUtfInfo(refNamePosition);
     }
 
     ByteArrayKey getDescriptorFromRefInfo(int constantPoolPosition) {
@@ -59,52 +195,48 @@ class ClassInformation {
         int offset = offsets[nameAndTypeInfoPosition -1];
         // The name will be the second two bytes of the constantPool entry (first two contain the name)
         int refNamePosition = readUnsignedShortByConstantPoolOffset(offset + 2);
-        return getKeyFromUtfInfo(refNamePosition);
+        return createKeyFromUtfInfo(refNamePosition);
     }
 
     ByteArrayKey getClassNameFromClassInfo(int constantPoolPosition) {
         int index = constantPoolPosition - 1;
-        ByteArrayKey key = byteArrayKeys[index];
-        if (key == null) {
-            // ClassInfo just contains the location of the UtfInfo containing the class bane
-            int utfInfoPosition = readUnsignedShortByConstantPoolOffset(offsets[index]);
-            key = getKeyFromUtfInfo(utfInfoPosition);
-            byteArrayKeys[index] = key;
-        }
-        return key;
+        // ClassInfo just contains the location of the UtfInfo containing the class name
+        int utfInfoPosition = readUnsignedShortByConstantPoolOffset(offsets[index]);
+        return createKeyFromUtfInfo(utfInfoPosition);
     }
 
     ByteArrayKey getScannedClass() {
-        if (scannedClassKey == null) {
-            scannedClassKey = getClassNameFromClassInfo(thisClassPosition);
-        }
-        return scannedClassKey;
+        int utfInfoPosition = readUnsignedShortByConstantPoolOffset(offsets[thisClassPosition - 1]);
+        return createKeyFromUtfInfo(utfInfoPosition);
     }
 
     String getScannedClassName(ReusableStreams reusableStreams) throws IOException {
         if (scannedClassName == null) {
-            ByteArrayKey key = getClassNameFromClassInfo(thisClassPosition);
+            ByteArrayKey key = getScannedClass();
             scannedClassName = convertClassNameToDotFormat(key.convertBytesToString(reusableStreams));
         }
         return scannedClassName;
     }
 
-    ByteArrayKey getSuperClass() {
-        if (superClassPosition == 0) {
-            return null;
-        }
-        return getClassNameFromClassInfo(superClassPosition);
+    /**
+     * Gets the position of the ClassInfo of the super class
+     * @return the position, or {@code 0} if there is no super class
+     */
+    int getSuperClassPosition() {
+        return superClassPosition;
     }
 
-    ByteArrayKey[] getInterfaces() {
-        if (interfacePositions.length == 0) {
-            return EMPTY_BYTE_ARRAY_KEY_ARRAY;
-        }
-        ByteArrayKey[] keys = new ByteArrayKey[interfacePositions.length];
-        for (int i = 0; i < interfacePositions.length; i++) {
-            keys[i] = getClassNameFromClassInfo(interfacePositions[i]);
-        }
-        return keys;
+    int getInterfaceCount() {
+        return interfaceCount;
+    }
+
+    /**
+     * Gets the position of the ClassInfo of one of the interfaces
+     * @param index the index of the interface
+     * @return the position
+     */
+    int getInterfacePosition(int index) {
+        return interfacePositions[index];
     }
 
     private int getNameAndTypeInfoPositionFromRefInfo(int constantPoolPosition) {
@@ -118,26 +250,13 @@ class ClassInformation {
     }
 
 
-    private RuntimeIndex.ByteArrayKey getKeyFromUtfInfo(int constantPoolPosition) {
-        int index = constantPoolPosition - 1;
-        RuntimeIndex.ByteArrayKey key = byteArrayKeys[index];
-        if (key == null) {
-            int offset = offsets[index];
-
-            // The length of the constant pool entry is the difference between the next offset
-            // and the current offset.
-            // If we are at the last offset, the 'next' offset is the actual length of the constant pool.
-            // If there had been another entry, that would have been where it would have gone.
-            int nextOffset =
-                    index == (offsets.length - 1) ?
-                            constantPoolSize : offsets[index + 1];
-            int length = nextOffset - offset;
-
-
-            key = ByteArrayKey.create(constPoolBytes, offset, length);
-            byteArrayKeys[index] = key;
-        }
-        return key;
+    private ByteArrayKey createKeyFromUtfInfo(int constantPoolPosition) {
+        int offset = offsets[constantPoolPosition - 1];
+
+        // The entry starts with the two length bytes, which are part of the key
+        // in the same way as DataOutputStream.writeUTF() does it.
+        int length = 2 + readUnsignedShortByConstantPoolOffset(offset);
+        return ByteArrayKey.create(constPoolBytes, offset, length);
     }
 
     private int readUnsignedShortByConstantPoolOffset(int offset) {
@@ -154,7 +273,15 @@ class ClassInformation {
         return constPoolBytes[offset] & 0xff;
     }
 
+    /**
+     * Gets the tags of the constant pool entries. Only the first {@link #getConstantPoolSize()} entries are valid.
+     * @return the tags
+     */
     public int[] getTags() {
         return tags;
     }
+
+    int getConstantPoolSize() {
+        return constantPoolSize;
+    }
 }
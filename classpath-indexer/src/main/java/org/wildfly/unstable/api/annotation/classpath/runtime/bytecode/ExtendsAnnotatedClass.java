@@ -1,10 +1,10 @@
 package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
 
+import org.wildfly.unstable.api.annotation.classpath.index.AnnotationIds;
 import org.wildfly.unstable.api.annotation.classpath.index.OverallIndex;
 import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex;
 
 import java.util.Objects;
-import java.util.Set;
 
 /**
  * Records a class in user bytecode that extends a class that has been annotated with one of the annotations
@@ -13,8 +13,8 @@ import java.util.Set;
 public class ExtendsAnnotatedClass extends AnnotationWithSourceClassUsage {
     private final String superClass;
 
-    ExtendsAnnotatedClass(Set<String> annotations, String clazz, String superClass) {
-        super(annotations, AnnotationUsageType.EXTENDS_CLASS, clazz);
+    ExtendsAnnotatedClass(AnnotationIds annotationIds, long annotationMask, String clazz, String superClass) {
+        super(annotationIds, annotationMask, AnnotationUsageType.EXTENDS_CLASS, clazz);
         this.superClass = superClass;
     }
 
@@ -44,7 +44,8 @@ public class ExtendsAnnotatedClass extends AnnotationWithSourceClassUsage {
     @Override
     protected AnnotationUsage convertToDotFormat() {
         return new ExtendsAnnotatedClass(
-                annotations,
+                annotationIds,
+                annotationMask,
                 RuntimeIndex.convertClassNameToDotFormat(sourceClass),
                 RuntimeIndex.convertClassNameToDotFormat(superClass));
     }
@@ -1,9 +1,9 @@
 package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
 
+import org.wildfly.unstable.api.annotation.classpath.index.AnnotationIds;
 import org.wildfly.unstable.api.annotation.classpath.index.OverallIndex;
 
 import java.util.Objects;
-import java.util.Set;
 
 import static org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex.convertClassNameToDotFormat;
 import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType.IMPLEMENTS_INTERFACE;
@@ -15,8 +15,8 @@ import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.Ann
 public class ImplementsAnnotatedInterface extends AnnotationWithSourceClassUsage {
     private final String iface;
 
-    ImplementsAnnotatedInterface(Set<String> annotations, String clazz, String iface) {
-        super(annotations, IMPLEMENTS_INTERFACE, clazz);
+    ImplementsAnnotatedInterface(AnnotationIds annotationIds, long annotationMask, String clazz, String iface) {
+        super(annotationIds, annotationMask, IMPLEMENTS_INTERFACE, clazz);
         this.iface = iface;
     }
 
@@ -46,7 +46,8 @@ public class ImplementsAnnotatedInterface extends AnnotationWithSourceClassUsage
     @Override
     protected AnnotationUsage convertToDotFormat() {
         return new ImplementsAnnotatedInterface(
-                annotations,
+                annotationIds,
+                annotationMask,
                 convertClassNameToDotFormat(sourceClass),
                 convertClassNameToDotFormat(iface));
     }
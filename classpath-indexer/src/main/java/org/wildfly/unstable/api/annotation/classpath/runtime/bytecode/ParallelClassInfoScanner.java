@@ -0,0 +1,164 @@
+package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
+
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * <p>Scans a lot of classes (typically all the classes of a large deployment) concurrently, checking them against the
+ * {@link RuntimeIndex} in the same way as {@link ClassInfoScanner} does.</p>
+ *
+ * <p>The classes passed in to {@link #scanClasses(List)} are split into contiguous shards. Each shard is scanned
+ * by a task on the {@link Executor} using its own {@link ClassInfoScanner}, so parse buffers and recorded usages
+ * are never shared between threads. Once all the shards are done their usages are merged in shard order,
+ * which means {@link #getUsages()} returns the same usages, in the same order, as scanning the classes one after the
+ * other with a single {@link ClassInfoScanner} would.</p>
+ */
+public class ParallelClassInfoScanner {
+
+    // Use a few more shards than threads so a shard with a lot of large classes doesn't hold everything up
+    private static final int SHARDS_PER_THREAD = 4;
+
+    private final RuntimeIndex runtimeIndex;
+    private final Executor executor;
+    private final int parallelism;
+    private final ClassInfoCollector collector;
+
+    /**
+     * Constructor using the {@link ForkJoinPool#commonPool() common pool}
+     * @param runtimeIndex the runtime index
+     */
+    public ParallelClassInfoScanner(RuntimeIndex runtimeIndex) {
+        this(runtimeIndex, ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * Constructor
+     * @param runtimeIndex the runtime index
+     * @param executor the executor to run the scanning tasks on
+     * @param parallelism the number of threads of {@code executor} we expect to be able to use
+     */
+    public ParallelClassInfoScanner(RuntimeIndex runtimeIndex, Executor executor, int parallelism) {
+        if (runtimeIndex == null || executor == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+        }
+        this.runtimeIndex = runtimeIndex;
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.collector = new ClassInfoCollector(runtimeIndex);
+    }
+
+    /**
+     * Gets the usages found in all the classes scanned so far
+     * @return the usages
+     */
+    public Set<AnnotationUsage> getUsages() {
+        return collector.getUsages();
+    }
+
+    /**
+     * Scans the classes, and blocks until they have all been checked against the runtime index.
+     * @param classes the classes to scan
+     * @throws IOException if there were problems reading any of the classes
+     */
+    public void scanClasses(List<? extends ClassSource> classes) throws IOException {
+        if (classes.isEmpty()) {
+            return;
+        }
+        int shardCount = Math.min(classes.size(), parallelism * SHARDS_PER_THREAD);
+        int shardSize = (classes.size() + shardCount - 1) / shardCount;
+
+        int shards = (classes.size() + shardSize - 1) / shardSize;
+        List<CompletableFuture<ClassInfoScanner>> futures = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            int start = i * shardSize;
+            int end = Math.min(start + shardSize, classes.size());
+            futures.add(CompletableFuture.supplyAsync(new Shard(classes.subList(start, end)), executor));
+        }
+
+        List<ClassInfoScanner> scanners = new ArrayList<>(shards);
+        for (CompletableFuture<ClassInfoScanner> future : futures) {
+            try {
+                scanners.add(future.join());
+            } catch (CompletionException e) {
+                for (CompletableFuture<ClassInfoScanner> other : futures) {
+                    other.cancel(false);
+                }
+                Throwable cause = e.getCause();
+                if (cause instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) cause).getCause();
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
+
+        // Merge in the same order as the classes were passed in so the results are deterministic
+        for (ClassInfoScanner scanner : scanners) {
+            collector.addUsages(scanner.getUsages());
+        }
+    }
+
+    /**
+     * Checks the Jandex index of the user classes for usage of annotations annotated with unstable api annotations.
+     * See {@link ClassInfoScanner#checkAnnotationIndex(JandexIndex)}.
+     * @param annotationIndex the Jandex index of the scanned classes
+     * @return {@code true} if no usages were found
+     */
+    public boolean checkAnnotationIndex(JandexIndex annotationIndex) {
+        return collector.checkAnnotationIndex(annotationIndex);
+    }
+
+    /**
+     * Provides the bytecode for one of the classes to be scanned.
+     */
+    @FunctionalInterface
+    public interface ClassSource {
+        /**
+         * Opens a stream containing the class bytes. The scanner closes it when done.
+         * @return the stream
+         * @throws IOException if the stream could not be opened
+         */
+        InputStream openStream() throws IOException;
+    }
+
+    private class Shard implements Supplier<ClassInfoScanner> {
+        private final List<? extends ClassSource> classes;
+
+        Shard(List<? extends ClassSource> classes) {
+            this.classes = classes;
+        }
+
+        @Override
+        public ClassInfoScanner get() {
+            // Each shard gets its own scanner, and thus its own buffers and collector
+            ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex);
+            try {
+                for (ClassSource source : classes) {
+                    try (InputStream in = source.openStream()) {
+                        scanner.scanClass(in);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return scanner;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class AnnotationIdsTestCase {
+
+    @Test
+    public void testMasks() {
+        AnnotationIds ids = AnnotationIds.create(Arrays.asList("org.acme.A", "org.acme.B", "org.acme.C"));
+        Assert.assertEquals(3, ids.size());
+        Assert.assertEquals("org.acme.B", ids.getName(1));
+
+        Assert.assertEquals(1, ids.getMask("org.acme.A"));
+        Assert.assertEquals(4, ids.getMask("org.acme.C"));
+        Assert.assertEquals(0, ids.getMask("org.acme.Unknown"));
+        Assert.assertEquals(5, ids.getMask(new HashSet<>(Arrays.asList("org.acme.A", "org.acme.C", "org.acme.Unknown"))));
+
+        Assert.assertNull(ids.getNames(0));
+        Assert.assertEquals(Collections.singleton("org.acme.B"), ids.getNames(2));
+        Set<String> names = ids.getNames(5);
+        Assert.assertEquals(new HashSet<>(Arrays.asList("org.acme.A", "org.acme.C")), names);
+        // The sets are cached
+        Assert.assertSame(names, ids.getNames(5));
+
+        Assert.assertEquals(0, ids.namesHashCode(0));
+        Assert.assertEquals(names.hashCode(), ids.namesHashCode(5));
+
+        // Different ids for the same names give the same hash code
+        AnnotationIds reversed = AnnotationIds.create(Arrays.asList("org.acme.C", "org.acme.B", "org.acme.A"));
+        Assert.assertEquals(ids.namesHashCode(5), reversed.namesHashCode(reversed.getMask(names)));
+    }
+
+    @Test
+    public void testTooManyAnnotations() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < AnnotationIds.MAX_ANNOTATIONS; i++) {
+            names.add("org.acme.A" + i);
+        }
+        AnnotationIds ids = AnnotationIds.create(names);
+        Assert.assertEquals(Long.MIN_VALUE, ids.getMask("org.acme.A" + (AnnotationIds.MAX_ANNOTATIONS - 1)));
+
+        names.add("org.acme.TooMany");
+        try {
+            AnnotationIds.create(names);
+            Assert.fail("Should have failed");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.AnnotationWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.AnnotationWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalConstructors;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalFields;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.Experimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassArrayUsageInMethodBody;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassExtendsUsage;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassImplementsUsage;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassUsageAndMethodReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassUsageInMethodBody;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ConstructorReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.FieldReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.MethodReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.NoUsage;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.StaticFieldReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.StaticMethodReference;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ClassInfoScanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class BinaryRuntimeIndexTestCase {
+    private static final String EXPERIMENTAL_ANNOTATION = Experimental.class.getName();
+
+    private static final Class<?>[] USAGE_CLASSES = new Class<?>[] {
+            NoUsage.class,
+            ClassExtendsUsage.class,
+            ClassImplementsUsage.class,
+            ConstructorReference.class,
+            FieldReference.class,
+            StaticFieldReference.class,
+            MethodReference.class,
+            StaticMethodReference.class,
+            ClassUsageInMethodBody.class,
+            ClassArrayUsageInMethodBody.class,
+            ClassUsageAndMethodReference.class
+    };
+
+    Path textPath;
+    Path binaryPath;
+
+    @Before
+    public void createIndexes() throws IOException {
+        OverallIndex overallIndex = new OverallIndex();
+        File file = TestUtils.createJar(
+                AnnotationWithExperimental.class,
+                ClassWithExperimental.class,
+                InterfaceWithExperimental.class,
+                ClassWithExperimentalMethods.class,
+                InterfaceWithExperimentalMethods.class,
+                AnnotationWithExperimentalMethods.class,
+                ClassWithExperimentalConstructors.class,
+                ClassWithExperimentalFields.class);
+        overallIndex.scanJar(file, EXPERIMENTAL_ANNOTATION);
+
+        textPath = Paths.get("target/index/binary-test.txt");
+        overallIndex.save(textPath);
+        binaryPath = Paths.get("target/index/binary-test.idx");
+        overallIndex.save(binaryPath);
+    }
+
+    @Test
+    public void testSameResultsAsTextIndex() throws Exception {
+        RuntimeIndex textIndex = RuntimeIndex.load(textPath);
+        RuntimeIndex binaryIndex = RuntimeIndex.loadMapped(binaryPath);
+
+        ClassInfoScanner textScanner = new ClassInfoScanner(textIndex);
+        ClassInfoScanner binaryScanner = new ClassInfoScanner(binaryIndex);
+        for (Class<?> clazz : USAGE_CLASSES) {
+            try (InputStream in = TestUtils.openClass(clazz)) {
+                textScanner.scanClass(in);
+            }
+            try (InputStream in = TestUtils.openClass(clazz)) {
+                binaryScanner.scanClass(in);
+            }
+        }
+        Assert.assertEquals(11, binaryScanner.getUsages().size());
+        Assert.assertEquals(new ArrayList<>(textScanner.getUsages()), new ArrayList<>(binaryScanner.getUsages()));
+
+        Assert.assertEquals(textIndex.getAnnotatedAnnotations(), binaryIndex.getAnnotatedAnnotations());
+        Assert.assertEquals(
+                Collections.singleton(EXPERIMENTAL_ANNOTATION),
+                binaryIndex.getAnnotationsForAnnotation(AnnotationWithExperimental.class.getName()));
+        Assert.assertEquals(
+                Collections.singleton(EXPERIMENTAL_ANNOTATION),
+                binaryIndex.getAnnotationsForClass(ClassWithExperimental.class.getName()));
+    }
+
+    @Test
+    public void testLoadFromStream() throws Exception {
+        RuntimeIndex mappedIndex = RuntimeIndex.loadMapped(binaryPath);
+        RuntimeIndex streamIndex;
+        try (InputStream in = Files.newInputStream(binaryPath)) {
+            streamIndex = RuntimeIndex.load(in, OverallIndex.Format.BINARY);
+        }
+
+        ClassInfoScanner mappedScanner = new ClassInfoScanner(mappedIndex);
+        ClassInfoScanner streamScanner = new ClassInfoScanner(streamIndex);
+        for (Class<?> clazz : USAGE_CLASSES) {
+            try (InputStream in = TestUtils.openClass(clazz)) {
+                mappedScanner.scanClass(in);
+            }
+            try (InputStream in = TestUtils.openClass(clazz)) {
+                streamScanner.scanClass(in);
+            }
+        }
+        Assert.assertEquals(11, streamScanner.getUsages().size());
+        Assert.assertEquals(new ArrayList<>(mappedScanner.getUsages()), new ArrayList<>(streamScanner.getUsages()));
+    }
+
+    @Test
+    public void testBinaryIndexCannotBeLoadedAsOverallIndex() throws Exception {
+        try {
+            OverallIndex.load(binaryPath);
+            Assert.fail("Should have failed");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testInvalidBinaryIndex() throws Exception {
+        Path path = Paths.get("target/index/invalid.idx");
+        Files.write(path, Files.readAllBytes(textPath));
+        try {
+            RuntimeIndex.loadMapped(path);
+            Assert.fail("Should have failed");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        // Corrupt
+        byte[] bytes = Files.readAllBytes(binaryPath);
+        byte[] corrupt = bytes.clone();
+        corrupt[corrupt.length - 10] ^= 1;
+        Files.write(path, corrupt);
+        try {
+            RuntimeIndex.loadMapped(path, true);
+            Assert.fail("Should have failed");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        // Truncated
+        Files.write(path, Arrays.copyOf(bytes, bytes.length / 2));
+        try {
+            RuntimeIndex.loadMapped(path);
+            Assert.fail("Should have failed");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testLoadInParallel() throws Exception {
+        // Several indexes, which contain the annotations in different orders and overlap
+        List<URL> urls = new ArrayList<>();
+        urls.add(textPath.toUri().toURL());
+        urls.add(writeIndex("parallel-1.txt", "org.acme.B", "org.acme.Both"));
+        urls.add(writeIndex("parallel-2.txt", "org.acme.A", "org.acme.Both"));
+        urls.add(writeIndex("parallel-3.txt", EXPERIMENTAL_ANNOTATION, ClassWithExperimental.class.getName()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            RuntimeIndex sequential = RuntimeIndex.load(urls);
+            RuntimeIndex parallel = RuntimeIndex.load(urls, executor);
+            Assert.assertArrayEquals(TestUtils.writeBinary(sequential), TestUtils.writeBinary(parallel));
+            Assert.assertEquals(
+                    new HashSet<>(Arrays.asList("org.acme.A", "org.acme.B")),
+                    parallel.getAnnotationsForClass("org.acme.Both"));
+
+            urls.add(Paths.get("target/index/does-not-exist.txt").toUri().toURL());
+            try {
+                RuntimeIndex.load(urls, executor);
+                Assert.fail("Should have failed");
+            } catch (IOException expected) {
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static URL writeIndex(String name, String annotation, String clazz) throws IOException {
+        Path path = Paths.get("target/index").resolve(name);
+        Files.write(path, Arrays.asList("==", annotation, "=CLASSES", clazz, "", "=/"));
+        return path.toUri().toURL();
+    }
+}
@@ -1,9 +1,11 @@
 package org.wildfly.unstable.api.annotation.classpath.index;
 
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex.ByteArrayKey;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.AnnotationWithExperimental;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.AnnotationWithExperimentalMethods;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimental;
@@ -13,6 +15,7 @@ import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExpe
 import org.wildfly.unstable.api.annotation.classpath.index.classes.Experimental;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithExperimental;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.AnnotationImplementsUsage;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassArrayUsageAsField;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassArrayUsageAsMethodParameter;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassArrayUsageAsMethodReturnType;
@@ -40,16 +43,31 @@ import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ClassInfoS
 import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ExtendsAnnotatedClass;
 import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ImplementsAnnotatedInterface;
 
+import com.sun.management.ThreadMXBean;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
 
+import static org.wildfly.unstable.api.annotation.classpath.index.TestUtils.utf8;
 import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType.CLASS_USAGE;
 import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType.EXTENDS_CLASS;
 import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType.FIELD_REFERENCE;
@@ -111,6 +129,29 @@ public class ClassInfoScannerTestCase {
         Assert.assertEquals(Collections.singleton(Experimental.class.getName()), usage.getAnnotations());
     }
 
+    @Test
+    public void testAnnotationImplementsUsage() throws Exception {
+        Path binaryPath = Paths.get("target/index/runtime-test.idx");
+        try (OutputStream out = Files.newOutputStream(binaryPath)) {
+            runtimeIndex.writeBinary(out);
+        }
+        RuntimeIndex textIndex = runtimeIndex;
+        for (RuntimeIndex index : Arrays.asList(textIndex, RuntimeIndex.loadMapped(binaryPath))) {
+            runtimeIndex = index;
+            Assert.assertEquals(
+                    Collections.singleton(Experimental.class.getName()),
+                    runtimeIndex.getAnnotationsForClass(AnnotationWithExperimental.class.getName()));
+
+            ImplementsAnnotatedInterface usage =
+                    scanAndGetSingleAnnotationUsage(AnnotationImplementsUsage.class, IMPLEMENTS_INTERFACE)
+                            .asImplementsAnnotatedInterface();
+
+            Assert.assertEquals(AnnotationImplementsUsage.class.getName(), usage.getSourceClass());
+            Assert.assertEquals(AnnotationWithExperimental.class.getName(), usage.getInterface());
+            Assert.assertEquals(Collections.singleton(Experimental.class.getName()), usage.getAnnotations());
+        }
+    }
+
     @Test
     public void testConstructorReference() throws Exception {
         AnnotatedMethodReference usage =
@@ -293,6 +334,188 @@ public class ClassInfoScannerTestCase {
         Assert.assertEquals(Collections.singleton(Experimental.class.getName()), methodReference.getAnnotations());
     }
 
+    @Test
+    public void testScanByteArrayWithOffset() throws Exception {
+        ClassInfoScanner streamScanner = new ClassInfoScanner(runtimeIndex);
+        scanClass(streamScanner, ClassUsageAndMethodReference.class);
+
+        byte[] classBytes = TestUtils.readClass(ClassUsageAndMethodReference.class);
+        // Pad the array on both sides to make sure only the given range is used
+        byte[] bytes = new byte[classBytes.length + 20];
+        Arrays.fill(bytes, (byte) 0xff);
+        System.arraycopy(classBytes, 0, bytes, 7, classBytes.length);
+
+        ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex);
+        scanner.scanClass(bytes, 7, classBytes.length);
+        Assert.assertEquals(2, scanner.getUsages().size());
+        Assert.assertEquals(new ArrayList<>(streamScanner.getUsages()), new ArrayList<>(scanner.getUsages()));
+    }
+
+    @Test
+    public void testScanByteBuffer() throws Exception {
+        ClassInfoScanner streamScanner = new ClassInfoScanner(runtimeIndex);
+        scanClass(streamScanner, ClassUsageAndMethodReference.class);
+
+        byte[] classBytes = TestUtils.readClass(ClassUsageAndMethodReference.class);
+
+        ByteBuffer heap = ByteBuffer.allocate(classBytes.length + 3);
+        heap.position(3);
+        heap.put(classBytes);
+        heap.position(3);
+        ClassInfoScanner heapScanner = new ClassInfoScanner(runtimeIndex);
+        heapScanner.scanClass(heap.slice());
+        Assert.assertEquals(new ArrayList<>(streamScanner.getUsages()), new ArrayList<>(heapScanner.getUsages()));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(classBytes.length);
+        direct.put(classBytes);
+        direct.flip();
+        ClassInfoScanner directScanner = new ClassInfoScanner(runtimeIndex);
+        directScanner.scanClass(direct);
+        Assert.assertEquals(new ArrayList<>(streamScanner.getUsages()), new ArrayList<>(directScanner.getUsages()));
+        // The position of the buffer should be left alone
+        Assert.assertEquals(0, direct.position());
+    }
+
+    @Test
+    public void testScanTruncatedByteArray() throws Exception {
+        byte[] classBytes = TestUtils.readClass(ClassUsageAndMethodReference.class);
+        ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex);
+        try {
+            // Cut off in the middle of the constant pool
+            scanner.scanClass(classBytes, 0, 40);
+            Assert.fail("Should have failed");
+        } catch (EOFException expected) {
+        }
+    }
+
+    @Test
+    public void testContainsUtf8Constant() throws Exception {
+        byte[] experimental = utf8("L" + EXPERIMENTAL_ANNOTATION.replace('.', '/') + ";");
+        byte[] other = utf8("Lorg/acme/Other;");
+
+        byte[] annotated = TestUtils.readClass(ClassWithExperimental.class);
+        Assert.assertTrue(ClassInfoScanner.containsUtf8Constant(annotated, 0, annotated.length, new byte[][]{experimental}));
+        Assert.assertTrue(ClassInfoScanner.containsUtf8Constant(annotated, 0, annotated.length, new byte[][]{other, experimental}));
+        Assert.assertFalse(ClassInfoScanner.containsUtf8Constant(annotated, 0, annotated.length, new byte[][]{other}));
+
+        byte[] notAnnotated = TestUtils.readClass(NoUsage.class);
+        Assert.assertFalse(ClassInfoScanner.containsUtf8Constant(notAnnotated, 0, notAnnotated.length, new byte[][]{experimental}));
+
+        try {
+            ClassInfoScanner.containsUtf8Constant(annotated, 0, 40, new byte[][]{other});
+            Assert.fail("Should have failed");
+        } catch (EOFException expected) {
+        }
+    }
+
+    @Test
+    public void testLookupFromConstantPoolBytes() throws Exception {
+        // Lay the entries out like in a constant pool, with some other bytes in between
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(bout);
+        dout.writeByte(1);
+        int methodClass = dout.size();
+        dout.writeUTF(RuntimeIndex.convertClassNameToVmFormat(ClassWithExperimentalMethods.class.getName()));
+        dout.writeByte(1);
+        int fieldClass = dout.size();
+        dout.writeUTF(RuntimeIndex.convertClassNameToVmFormat(ClassWithExperimentalFields.class.getName()));
+        int methodName = dout.size();
+        dout.writeUTF("test");
+        int descriptor = dout.size();
+        dout.writeUTF("()V");
+        int otherDescriptor = dout.size();
+        dout.writeUTF("(I)V");
+        int fieldName = dout.size();
+        dout.writeUTF("fieldA");
+        int notAnnotatedFieldName = dout.size();
+        dout.writeUTF("notAnnotated");
+        dout.close();
+        byte[] bytes = bout.toByteArray();
+
+        Set<String> experimental = Collections.singleton(EXPERIMENTAL_ANNOTATION);
+        Assert.assertEquals(experimental, runtimeIndex.getAnnotationsForMethod(bytes, methodClass, methodName, descriptor));
+        Assert.assertNull(runtimeIndex.getAnnotationsForMethod(bytes, methodClass, methodName, otherDescriptor));
+        Assert.assertNull(runtimeIndex.getAnnotationsForMethod(bytes, fieldClass, methodName, descriptor));
+        Assert.assertEquals(experimental, runtimeIndex.getAnnotationsForField(bytes, fieldClass, fieldName));
+        Assert.assertNull(runtimeIndex.getAnnotationsForField(bytes, fieldClass, notAnnotatedFieldName));
+        Assert.assertNull(runtimeIndex.getAnnotationsForField(bytes, methodClass, fieldName));
+        Assert.assertNull(runtimeIndex.getAnnotationsForClass(bytes, methodClass));
+    }
+
+    @Test
+    public void testLookupWithSuppliers() throws Exception {
+        ByteArrayKey methodClass = key(RuntimeIndex.convertClassNameToVmFormat(ClassWithExperimentalMethods.class.getName()));
+        ByteArrayKey fieldClass = key(RuntimeIndex.convertClassNameToVmFormat(ClassWithExperimentalFields.class.getName()));
+        ByteArrayKey unindexedClass = key("org/acme/NotIndexed");
+        ByteArrayKey methodName = key("test");
+        ByteArrayKey descriptor = key("()V");
+        ByteArrayKey otherDescriptor = key("(I)V");
+        ByteArrayKey fieldName = key("fieldA");
+        ByteArrayKey notAnnotatedFieldName = key("notAnnotated");
+        Set<String> experimental = Collections.singleton(EXPERIMENTAL_ANNOTATION);
+
+        Assert.assertEquals(experimental, runtimeIndex.getAnnotationsForMethod(methodClass, () -> methodName, () -> descriptor));
+        Assert.assertNull(runtimeIndex.getAnnotationsForMethod(methodClass, () -> methodName, () -> otherDescriptor));
+        Assert.assertEquals(experimental, runtimeIndex.getAnnotationsForField(fieldClass, () -> fieldName));
+        Assert.assertNull(runtimeIndex.getAnnotationsForField(fieldClass, () -> notAnnotatedFieldName));
+
+        // The name and descriptor are not needed unless the class is in the index
+        Supplier<ByteArrayKey> unused = () -> {
+            throw new AssertionError("Should not have been called");
+        };
+        Assert.assertNull(runtimeIndex.getAnnotationsForMethod(null, unused, unused));
+        Assert.assertNull(runtimeIndex.getAnnotationsForMethod(unindexedClass, unused, unused));
+        Assert.assertNull(runtimeIndex.getAnnotationsForField(null, unused));
+        Assert.assertNull(runtimeIndex.getAnnotationsForField(unindexedClass, unused));
+        Assert.assertNull(runtimeIndex.getAnnotationsForMethod(null, methodName, descriptor));
+        Assert.assertNull(runtimeIndex.getAnnotationsForField(null, fieldName));
+    }
+
+    @Test
+    public void testNoAllocationWhenNothingFound() throws Exception {
+        ThreadMXBean threadMXBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled());
+        long threadId = Thread.currentThread().getId();
+
+        // Use a few classes which reference things which are not in the index
+        byte[][] classes = new byte[][] {
+                TestUtils.readClass(NoUsage.class),
+                TestUtils.readClass(OverallIndex.class),
+                TestUtils.readClass(RuntimeIndex.class)
+        };
+        ByteArrayInputStream[] streams = new ByteArrayInputStream[classes.length];
+        for (int i = 0; i < classes.length; i++) {
+            streams[i] = new ByteArrayInputStream(classes[i]);
+        }
+
+        ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex);
+        final int iterations = 2000;
+        final int scansPerRound = iterations * classes.length * 2;
+        // The first rounds warm up the scanner's buffers, and JIT compile the scanning code. Use the lowest of the
+        // measured rounds, so that a one-off allocation elsewhere on this thread (e.g. by the JIT or class loading)
+        // does not make the test fail
+        long minAllocated = Long.MAX_VALUE;
+        for (int round = 0; round < 10; round++) {
+            long start = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < iterations; i++) {
+                for (int j = 0; j < classes.length; j++) {
+                    scanner.scanClass(classes[j], 0, classes[j].length);
+                    streams[j].reset();
+                    scanner.scanClass(streams[j]);
+                }
+            }
+            long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - start;
+            if (round >= 5) {
+                minAllocated = Math.min(minAllocated, allocated);
+            }
+        }
+        Assert.assertEquals(0, scanner.getUsages().size());
+        // Anything allocated on each scan would be at least one object header, so allow less than a byte per scan.
+        // ClassInfoScannerBenchmark reports the same for a larger class as gc.alloc.rate.norm with '-p references=miss'
+        double bytesPerScan = (double) minAllocated / scansPerRound;
+        Assert.assertTrue("Allocated " + bytesPerScan + " bytes per scan", bytesPerScan < 1);
+    }
+
     AnnotationUsage scanAndGetSingleAnnotationUsage(
             Class<?> clazz,
             AnnotationUsageType type) throws IOException {
@@ -313,4 +536,8 @@ public class ClassInfoScannerTestCase {
         }
     }
 
+    private static ByteArrayKey key(String value) throws IOException {
+        byte[] bytes = utf8(value);
+        return ByteArrayKey.create(bytes, 0, bytes.length);
+    }
 }
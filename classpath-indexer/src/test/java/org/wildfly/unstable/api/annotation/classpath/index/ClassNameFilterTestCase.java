@@ -0,0 +1,41 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class ClassNameFilterTestCase {
+
+    @Test
+    public void testEmptyFilter() {
+        ClassNameFilter filter = ClassNameFilter.create(new int[0]);
+        Assert.assertFalse(filter.mightContain(hash("org/acme/Test")));
+    }
+
+    @Test
+    public void testFilter() {
+        int[] hashes = new int[5000];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = hash("org/acme/Class" + i);
+        }
+        ClassNameFilter filter = ClassNameFilter.create(hashes);
+        for (int i = 0; i < hashes.length; i++) {
+            Assert.assertTrue(filter.mightContain(hash("org/acme/Class" + i)));
+        }
+
+        int falsePositives = 0;
+        int misses = 100000;
+        for (int i = 0; i < misses; i++) {
+            if (filter.mightContain(hash("java/lang/Class" + i))) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("Too many false positives: " + falsePositives, falsePositives < misses / 50);
+    }
+
+    private static int hash(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        return MemberTable.hash(bytes, 0, bytes.length);
+    }
+}
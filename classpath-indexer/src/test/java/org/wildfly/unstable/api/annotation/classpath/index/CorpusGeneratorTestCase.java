@@ -0,0 +1,103 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.wildfly.unstable.api.annotation.classpath.index.corpus.Corpus;
+import org.wildfly.unstable.api.annotation.classpath.index.corpus.CorpusGenerator;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotatedClassUsage;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotatedFieldReference;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotatedMethodReference;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsage;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ClassInfoScanner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+public class CorpusGeneratorTestCase {
+
+    @Test
+    public void testDeterministic() throws IOException {
+        Corpus corpus1 = createGenerator().generate(Paths.get("target/corpus/deterministic-1"));
+        Corpus corpus2 = createGenerator().generate(Paths.get("target/corpus/deterministic-2"));
+        Assert.assertEquals(corpus1.getUserClasses().size(), corpus2.getUserClasses().size());
+        for (int i = 0; i < corpus1.getUserClasses().size(); i++) {
+            Assert.assertArrayEquals(corpus1.getUserClasses().get(i), corpus2.getUserClasses().get(i));
+        }
+        Assert.assertArrayEquals(Files.readAllBytes(corpus1.getApiJar()), Files.readAllBytes(corpus2.getApiJar()));
+        Assert.assertArrayEquals(Files.readAllBytes(corpus1.getUserJar()), Files.readAllBytes(corpus2.getUserJar()));
+        Assert.assertEquals(corpus1.getOverallIndex(), corpus2.getOverallIndex());
+
+        Corpus other = createGenerator().setSeed(1).generate(Paths.get("target/corpus/deterministic-3"));
+        Assert.assertNotEquals(corpus1.getExpectedUsages(), other.getExpectedUsages());
+    }
+
+    @Test
+    public void testShape() throws IOException {
+        Corpus corpus = createGenerator().generate(Paths.get("target/corpus/shape"));
+        Assert.assertEquals(200, corpus.getUserClasses().size());
+        for (byte[] bytes : corpus.getUserClasses()) {
+            int constantPoolCount = ((bytes[8] & 0xff) << 8) | (bytes[9] & 0xff);
+            Assert.assertTrue(String.valueOf(constantPoolCount), constantPoolCount - 1 >= 100);
+        }
+        Assert.assertEquals(200 * 20, corpus.getRefCount());
+        double hitRatio = (double) corpus.getHitCount() / corpus.getRefCount();
+        Assert.assertTrue(String.valueOf(hitRatio), hitRatio > 0.15 && hitRatio < 0.25);
+
+        AnnotationIndex annotationIndex = corpus.getOverallIndex().getAnnotationIndex(CorpusGenerator.ANNOTATION);
+        Assert.assertEquals(3, annotationIndex.getAnnotatedClasses().size());
+        Assert.assertEquals(17 * 4, annotationIndex.getAnnotatedMethods().size());
+        Assert.assertEquals(17 * 2, annotationIndex.getAnnotatedFields().size());
+    }
+
+    @Test
+    public void testScanFindsExpectedUsages() throws IOException {
+        Corpus corpus = createGenerator().generate(Paths.get("target/corpus/scan"));
+        Path p = Paths.get("target/index/corpus-test.txt");
+        corpus.getOverallIndex().save(p);
+        RuntimeIndex runtimeIndex = RuntimeIndex.load(p);
+
+        ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex);
+        for (byte[] bytes : corpus.getUserClasses()) {
+            scanner.scanClass(bytes, 0, bytes.length);
+        }
+        Set<String> usages = new HashSet<>();
+        for (AnnotationUsage usage : scanner.getUsages()) {
+            Assert.assertEquals(Collections.singleton(CorpusGenerator.ANNOTATION), usage.getAnnotations());
+            switch (usage.getType()) {
+                case METHOD_REFERENCE: {
+                    AnnotatedMethodReference ref = usage.asAnnotatedMethodReference();
+                    usages.add(ref.getSourceClass() + " -> " + ref.getMethodClass() + "." + ref.getMethodName() + ref.getDescriptor());
+                }
+                break;
+                case FIELD_REFERENCE: {
+                    AnnotatedFieldReference ref = usage.asAnnotatedFieldReference();
+                    usages.add(ref.getSourceClass() + " -> " + ref.getFieldClass() + "." + ref.getFieldName());
+                }
+                break;
+                case CLASS_USAGE: {
+                    AnnotatedClassUsage ref = usage.asAnnotatedClassUsage();
+                    usages.add(ref.getSourceClass() + " -> " + ref.getReferencedClass());
+                }
+                break;
+                default:
+                    Assert.fail("Unexpected usage " + usage);
+            }
+        }
+        Assert.assertFalse(usages.isEmpty());
+        Assert.assertEquals(corpus.getExpectedUsages(), usages);
+    }
+
+    private static CorpusGenerator createGenerator() {
+        return new CorpusGenerator()
+                .setClasses(200)
+                .setApiClasses(20)
+                .setConstantPoolSize(100)
+                .setRefDensity(0.2)
+                .setHitRatio(0.2);
+    }
+}
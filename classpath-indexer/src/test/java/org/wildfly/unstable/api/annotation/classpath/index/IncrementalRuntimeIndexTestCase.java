@@ -0,0 +1,100 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+public class IncrementalRuntimeIndexTestCase {
+
+    @Test
+    public void testAddAndRemove() throws IOException {
+        IncrementalRuntimeIndex incremental = new IncrementalRuntimeIndex();
+        RuntimeIndex empty = incremental.getRuntimeIndex();
+        Assert.assertNull(empty.getAnnotationsForClass("org.acme.Both"));
+
+        incremental.add("a", createIndex("org.acme.A", "org.acme.Both", "org.acme.OnlyA"));
+        RuntimeIndex withA = incremental.getRuntimeIndex();
+        incremental.add("b", createIndex("org.acme.B", "org.acme.Both", "org.acme.OnlyB"));
+        RuntimeIndex withAB = incremental.getRuntimeIndex();
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("a", "b")), incremental.getContributions());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("org.acme.A", "org.acme.B")), withAB.getAnnotationsForClass("org.acme.Both"));
+        Assert.assertEquals(Collections.singleton("org.acme.B"), withAB.getAnnotationsForClass("org.acme.OnlyB"));
+
+        Assert.assertTrue(incremental.remove("a"));
+        Assert.assertFalse(incremental.remove("a"));
+        RuntimeIndex withB = incremental.getRuntimeIndex();
+        Assert.assertEquals(Collections.singleton("org.acme.B"), withB.getAnnotationsForClass("org.acme.Both"));
+        Assert.assertNull(withB.getAnnotationsForClass("org.acme.OnlyA"));
+        Assert.assertEquals(Collections.singleton("b"), incremental.getContributions());
+        // Once rebuilt the index is the same as one loaded from the remaining contributions
+        Assert.assertArrayEquals(
+                TestUtils.writeBinary(RuntimeIndex.convertOverallIndexToRuntimeIndex(createIndex("org.acme.B", "org.acme.Both", "org.acme.OnlyB"))),
+                TestUtils.writeBinary(withB));
+
+        // The earlier snapshots are unchanged
+        Assert.assertNull(empty.getAnnotationsForClass("org.acme.Both"));
+        Assert.assertEquals(Collections.singleton("org.acme.A"), withA.getAnnotationsForClass("org.acme.Both"));
+        Assert.assertNull(withA.getAnnotationsForClass("org.acme.OnlyB"));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("org.acme.A", "org.acme.B")), withAB.getAnnotationsForClass("org.acme.Both"));
+        Assert.assertEquals(Collections.singleton("org.acme.A"), withAB.getAnnotationsForClass("org.acme.OnlyA"));
+    }
+
+    @Test
+    public void testManyContributions() throws IOException {
+        // More than MAX_LAYERS, so the layers get combined along the way
+        IncrementalRuntimeIndex incremental = new IncrementalRuntimeIndex();
+        List<String> annotations = new ArrayList<>();
+        for (int i = 0; i < IncrementalRuntimeIndex.MAX_LAYERS * 3; i++) {
+            String annotation = "org.acme.Annotation" + i;
+            annotations.add(annotation);
+            incremental.add("c" + i, createIndex(annotation, "org.acme.Shared", "org.acme.Class" + i));
+
+            RuntimeIndex runtimeIndex = incremental.getRuntimeIndex();
+            Assert.assertEquals(new HashSet<>(annotations), runtimeIndex.getAnnotationsForClass("org.acme.Shared"));
+            for (int j = 0; j <= i; j++) {
+                Assert.assertEquals(Collections.singleton("org.acme.Annotation" + j), runtimeIndex.getAnnotationsForClass("org.acme.Class" + j));
+            }
+        }
+    }
+
+    @Test
+    public void testFailedAddLeavesIndexUnchanged() throws IOException {
+        IncrementalRuntimeIndex incremental = new IncrementalRuntimeIndex();
+        incremental.add("a", createIndex("org.acme.A", "org.acme.OnlyA"));
+        RuntimeIndex runtimeIndex = incremental.getRuntimeIndex();
+        try {
+            incremental.add("a", createIndex("org.acme.B", "org.acme.OnlyB"));
+            Assert.fail("Should have failed");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < AnnotationIds.MAX_ANNOTATIONS; i++) {
+            sb.append(indexText("org.acme.Annotation" + i, "org.acme.Class"));
+        }
+        OverallIndex tooMany = OverallIndex.load(new ByteArrayInputStream(sb.toString().getBytes()), OverallIndex.Format.TEXT);
+        try {
+            incremental.add("too-many", tooMany);
+            Assert.fail("Should have failed");
+        } catch (IllegalArgumentException expected) {
+        }
+        Assert.assertSame(runtimeIndex, incremental.getRuntimeIndex());
+        Assert.assertEquals(Collections.singleton("a"), incremental.getContributions());
+    }
+
+    private static OverallIndex createIndex(String annotation, String... classes) throws IOException {
+        return OverallIndex.load(new ByteArrayInputStream(indexText(annotation, classes).getBytes()), OverallIndex.Format.TEXT);
+    }
+
+    private static String indexText(String annotation, String... classes) {
+        return "==\n" + annotation + "\n=CLASSES\n" + String.join("\n", classes) + "\n\n=/\n";
+    }
+}
@@ -0,0 +1,168 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class IndexCacheTestCase {
+
+    private Path cacheDirectory;
+    private Path indexFile;
+
+    @Before
+    public void setup() throws IOException {
+        Path directory = Paths.get("target/index-cache");
+        if (Files.exists(directory)) {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.delete(path);
+                }
+            }
+        }
+        cacheDirectory = directory.resolve("cache");
+        indexFile = directory.resolve("index.txt");
+        Files.createDirectories(directory);
+    }
+
+    @Test
+    public void testCachedIndexIsUsed() throws IOException {
+        writeIndex(indexFile, "org.acme.ClassA");
+        List<URL> urls = Collections.singletonList(indexFile.toUri().toURL());
+
+        RuntimeIndex cold = RuntimeIndex.loadCached(urls, cacheDirectory);
+        Assert.assertNotNull(cold.getAnnotationsForClass("org.acme.ClassA"));
+        Path cacheFile = getCacheFile();
+
+        // Same size and modification time, so the cached index should be used rather than the new contents
+        FileTime modified = Files.getLastModifiedTime(indexFile);
+        writeIndex(indexFile, "org.acme.ClassB");
+        Files.setLastModifiedTime(indexFile, modified);
+
+        RuntimeIndex warm = RuntimeIndex.loadCached(urls, cacheDirectory);
+        Assert.assertNotNull(warm.getAnnotationsForClass("org.acme.ClassA"));
+        Assert.assertNull(warm.getAnnotationsForClass("org.acme.ClassB"));
+        Assert.assertArrayEquals(TestUtils.writeBinary(cold), TestUtils.writeBinary(warm));
+        Assert.assertEquals(cacheFile, getCacheFile());
+    }
+
+    @Test
+    public void testStaleCacheIsReplaced() throws IOException {
+        writeIndex(indexFile, "org.acme.ClassA");
+        List<URL> urls = Collections.singletonList(indexFile.toUri().toURL());
+        RuntimeIndex.loadCached(urls, cacheDirectory);
+
+        writeIndex(indexFile, "org.acme.ClassLongerName");
+        RuntimeIndex runtimeIndex = RuntimeIndex.loadCached(urls, cacheDirectory);
+        Assert.assertNull(runtimeIndex.getAnnotationsForClass("org.acme.ClassA"));
+        Assert.assertNotNull(runtimeIndex.getAnnotationsForClass("org.acme.ClassLongerName"));
+        // Still just the one cache file
+        getCacheFile();
+    }
+
+    @Test
+    public void testCorruptCacheIsReplaced() throws IOException {
+        writeIndex(indexFile, "org.acme.ClassA");
+        List<URL> urls = Collections.singletonList(indexFile.toUri().toURL());
+        byte[] expected = TestUtils.writeBinary(RuntimeIndex.loadCached(urls, cacheDirectory));
+        Path cacheFile = getCacheFile();
+        byte[] cached = Files.readAllBytes(cacheFile);
+
+        // Flip a bit in the lookup tables
+        byte[] corrupt = cached.clone();
+        corrupt[corrupt.length - 10] ^= 1;
+        Files.write(cacheFile, corrupt);
+        Assert.assertArrayEquals(expected, TestUtils.writeBinary(RuntimeIndex.loadCached(urls, cacheDirectory)));
+        Assert.assertArrayEquals(cached, Files.readAllBytes(cacheFile));
+
+        // Truncated
+        Files.write(cacheFile, Arrays.copyOf(cached, cached.length / 2));
+        Assert.assertArrayEquals(expected, TestUtils.writeBinary(RuntimeIndex.loadCached(urls, cacheDirectory)));
+        Assert.assertArrayEquals(cached, Files.readAllBytes(cacheFile));
+    }
+
+    @Test
+    public void testContentsAreHashedForOtherUrls() throws IOException {
+        // A URL whose contents can change without anything like a modification time to show it
+        String[] contents = new String[1];
+        URL url = new URL(null, "test:index.txt", new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection(URL u) {
+                return new URLConnection(u) {
+                    @Override
+                    public void connect() {
+                    }
+
+                    @Override
+                    public InputStream getInputStream() {
+                        return new ByteArrayInputStream(contents[0].getBytes());
+                    }
+                };
+            }
+        });
+        List<URL> urls = Collections.singletonList(url);
+
+        contents[0] = String.join("\n", indexLines("org.acme.ClassA")) + "\n";
+        Assert.assertNotNull(RuntimeIndex.loadCached(urls, cacheDirectory).getAnnotationsForClass("org.acme.ClassA"));
+        Assert.assertNotNull(RuntimeIndex.loadCached(urls, cacheDirectory).getAnnotationsForClass("org.acme.ClassA"));
+
+        contents[0] = String.join("\n", indexLines("org.acme.ClassB")) + "\n";
+        RuntimeIndex runtimeIndex = RuntimeIndex.loadCached(urls, cacheDirectory);
+        Assert.assertNull(runtimeIndex.getAnnotationsForClass("org.acme.ClassA"));
+        Assert.assertNotNull(runtimeIndex.getAnnotationsForClass("org.acme.ClassB"));
+        getCacheFile();
+    }
+
+    @Test
+    public void testBinaryIndexIsReadDirectly() throws IOException {
+        writeIndex(indexFile, "org.acme.ClassA");
+        byte[] binary = TestUtils.writeBinary(RuntimeIndex.load(indexFile));
+        Path binaryFile = indexFile.resolveSibling("index.idx");
+        Files.write(binaryFile, binary);
+
+        RuntimeIndex runtimeIndex = RuntimeIndex.loadCached(Collections.singletonList(binaryFile.toUri().toURL()), cacheDirectory);
+        Assert.assertNotNull(runtimeIndex.getAnnotationsForClass("org.acme.ClassA"));
+        Assert.assertArrayEquals(binary, TestUtils.writeBinary(runtimeIndex));
+        // Nothing is cached for it
+        Assert.assertFalse(Files.exists(cacheDirectory));
+
+        // Binary indexes can not be merged with other indexes
+        try {
+            RuntimeIndex.loadCached(Arrays.asList(indexFile.toUri().toURL(), binaryFile.toUri().toURL()), cacheDirectory);
+            Assert.fail("Should have failed");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private Path getCacheFile() throws IOException {
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            List<Path> list = files.collect(Collectors.toList());
+            Assert.assertEquals(list.toString(), 1, list.size());
+            return list.get(0);
+        }
+    }
+
+    private static void writeIndex(Path path, String clazz) throws IOException {
+        Files.write(path, indexLines(clazz));
+    }
+
+    private static List<String> indexLines(String clazz) {
+        return Arrays.asList("==", "org.acme.Experimental", "=CLASSES", clazz, "", "=/");
+    }
+}
@@ -0,0 +1,191 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+public class IndexReaderTestCase {
+
+    @Test
+    public void testReadEntries() throws IOException {
+        String index = "==\n" +
+                "org.acme.Experimental\n" +
+                "=INTERFACES\n" +
+                "org.acme.Interface\n" +
+                "\n" +
+                "=CLASSES\n" +
+                "org.acme.Class\n" +
+                "\n" +
+                "=ANNOTATIONS\n" +
+                "org.acme.Annotation\n" +
+                "\n" +
+                "=METHODS\n" +
+                "org.acme.Class±test±(Ljava/lang/String;)V\n" +
+                "\n" +
+                "=CONSTRUCTORS\n" +
+                "org.acme.Class±()V\n" +
+                "\n" +
+                "=FIELDS\n" +
+                "org.acme.Class±field\n" +
+                "\n" +
+                "=/\n";
+
+        List<String> expected = Arrays.asList(
+                "start org.acme.Experimental",
+                "interface org.acme.Interface",
+                "class org.acme.Class",
+                "annotation org.acme.Annotation",
+                "method org.acme.Class test (Ljava/lang/String;)V",
+                "constructor org.acme.Class ()V",
+                "field org.acme.Class field",
+                "end");
+        Assert.assertEquals(expected, read(new StringReader(index)));
+        // Windows line endings, and reading a char at a time so that a '\r' is always at the end of the buffer
+        Assert.assertEquals(expected, read(new OneCharReader(new StringReader(index.replace("\n", "\r\n")))));
+        Assert.assertEquals(expected, read(new StringReader(index.replace("\n", "\r"))));
+    }
+
+    @Test
+    public void testLongLines() throws IOException {
+        char[] chars = new char[20000];
+        Arrays.fill(chars, 'a');
+        String longName = "org.acme." + new String(chars);
+        String index = "==\norg.acme.Experimental\n=FIELDS\n" + longName + "±x\n" + "org.acme.Class±" + longName + "\n\n=/\n";
+
+        Assert.assertEquals(Arrays.asList(
+                "start org.acme.Experimental",
+                "field " + longName + " x",
+                "field org.acme.Class " + longName,
+                "end"), read(new StringReader(index)));
+    }
+
+    @Test
+    public void testInvalidEntries() throws IOException {
+        checkInvalid("=METHODS\norg.acme.Class±test\n\n");
+        checkInvalid("=METHODS\norg.acme.Class±test±()V±x\n\n");
+        checkInvalid("=METHODS\norg.acme.Class±test±\n\n");
+        checkInvalid("=CONSTRUCTORS\norg.acme.Class\n\n");
+        checkInvalid("=FIELDS\norg.acme.Class±a±b\n\n");
+    }
+
+    @Test
+    public void testPrematureEndOfFile() throws IOException {
+        for (String index : Arrays.asList("==\n", "==\norg.acme.Experimental\n", "==\norg.acme.Experimental\n=CLASSES\norg.acme.Class\n")) {
+            try {
+                read(new StringReader(index));
+                Assert.fail("Expected error for " + index);
+            } catch (RuntimeException expected) {
+                Assert.assertEquals("Premature end of file", expected.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testRuntimeIndexFromEntries() throws IOException {
+        // The annotation ids should follow the names rather than the order the annotations are seen in
+        String index = "==\n" +
+                "org.acme.B\n" +
+                "=CLASSES\n" +
+                "org.acme.Both\n" +
+                "org.acme.OnlyB\n" +
+                "\n" +
+                "=/\n" +
+                "==\n" +
+                "org.acme.A\n" +
+                "=CLASSES\n" +
+                "org.acme.Both\n" +
+                "\n" +
+                "=ANNOTATIONS\n" +
+                "org.acme.Annotation\n" +
+                "\n" +
+                "=FIELDS\n" +
+                "org.acme.Both±field\n" +
+                "\n" +
+                "=/\n";
+        RuntimeIndex runtimeIndex = RuntimeIndex.load(new ByteArrayInputStream(index.getBytes()), OverallIndex.Format.TEXT);
+
+        Assert.assertEquals(2, runtimeIndex.getAnnotationIds().size());
+        Assert.assertEquals("org.acme.A", runtimeIndex.getAnnotationIds().getName(0));
+        Assert.assertEquals("org.acme.B", runtimeIndex.getAnnotationIds().getName(1));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("org.acme.A", "org.acme.B")), runtimeIndex.getAnnotationsForClass("org.acme.Both"));
+        Assert.assertEquals(Collections.singleton("org.acme.B"), runtimeIndex.getAnnotationsForClass("org.acme.OnlyB"));
+        Assert.assertEquals(Collections.singleton("org.acme.A"), runtimeIndex.getAnnotationsForAnnotation("org.acme.Annotation"));
+        Assert.assertNull(runtimeIndex.getAnnotationsForClass("org.acme.Other"));
+    }
+
+    private static void checkInvalid(String section) throws IOException {
+        String index = "==\norg.acme.Experimental\n" + section + "=/\n";
+        try {
+            read(new StringReader(index));
+            Assert.fail("Expected error for " + section);
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static List<String> read(Reader reader) throws IOException {
+        List<String> events = new ArrayList<>();
+        new IndexReader(reader).accept(new IndexVisitor() {
+            @Override
+            public void startAnnotation(String annotation) {
+                events.add("start " + annotation);
+            }
+
+            @Override
+            public void onInterface(String className) {
+                events.add("interface " + className);
+            }
+
+            @Override
+            public void onClass(String className) {
+                events.add("class " + className);
+            }
+
+            @Override
+            public void onAnnotationType(String className) {
+                events.add("annotation " + className);
+            }
+
+            @Override
+            public void onMethod(String className, String methodName, String descriptor) {
+                events.add("method " + className + " " + methodName + " " + descriptor);
+            }
+
+            @Override
+            public void onConstructor(String className, String descriptor) {
+                events.add("constructor " + className + " " + descriptor);
+            }
+
+            @Override
+            public void onField(String className, String fieldName) {
+                events.add("field " + className + " " + fieldName);
+            }
+
+            @Override
+            public void endAnnotation() {
+                events.add("end");
+            }
+        });
+        return events;
+    }
+
+    private static class OneCharReader extends FilterReader {
+        OneCharReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            return super.read(cbuf, off, Math.min(len, 1));
+        }
+    }
+}
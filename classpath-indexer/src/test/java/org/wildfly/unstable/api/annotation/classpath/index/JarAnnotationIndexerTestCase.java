@@ -1,7 +1,15 @@
 package org.wildfly.unstable.api.annotation.classpath.index;
 
+import org.jboss.jandex.IndexWriter;
+import org.jboss.jandex.Indexer;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.ByteArrayAsset;
+import org.jboss.shrinkwrap.api.exporter.ZipExporter;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
 import org.junit.Assert;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.AnnotationWithExperimental;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.AnnotationWithExperimentalMethods;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.AnnotationWithExperimentalMethodsTypeUse;
@@ -10,21 +18,36 @@ import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExpe
 import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalConstructors;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalConstructorsTypeUse;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalFields;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalInnerClassConstructors;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalFieldsTypeUse;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalMethods;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalMethodsTypeUse;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalTypeUse;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.Experimental;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.ExperimentalTypeUse;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.Incubating;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithExperimental;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithExperimentalMethods;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithExperimentalMethodsTypeUse;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithExperimentalTypeUse;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithIncubating;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+@RunWith(Parameterized.class)
 public class JarAnnotationIndexerTestCase {
 
     // These feel a bit like corner cases, especially for our first iteration
@@ -34,11 +57,20 @@ public class JarAnnotationIndexerTestCase {
 
     private static final String EXPERIMENTAL_ANNOTATION = Experimental.class.getName();
     private static final String EXPERIMENTAL_ANNOTATION_WITH_TYPE_USE = ExperimentalTypeUse.class.getName();
+    private static final String INCUBATING_ANNOTATION = Incubating.class.getName();
+
+    @Parameterized.Parameters(name = "streamingExtractor={0}")
+    public static Iterable<Boolean> parameters() {
+        return List.of(false, true);
+    }
+
+    @Parameterized.Parameter
+    public boolean streamingExtractor;
 
     @Test
     public void testScanClassLevelAnnotations() throws Exception {
         File file = TestUtils.createJar(AnnotationWithExperimental.class, ClassWithExperimental.class, InterfaceWithExperimental.class);
-        JarAnnotationIndexer indexer = new JarAnnotationIndexer(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
+        JarAnnotationIndexer indexer = createIndexer(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
         JarAnnotationIndex result = indexer.scanForAnnotation();
         checkSet(result.getAnnotatedAnnotations(), AnnotationWithExperimental.class.getName());
         checkSet(result.getAnnotatedClasses(), ClassWithExperimental.class.getName());
@@ -49,7 +81,7 @@ public class JarAnnotationIndexerTestCase {
     public void testScanClassLevelAnnotationsWithTypeUse() throws Exception {
         // The Jandex lookup works differently when TYPE_USE is one of the targets
         File file = TestUtils.createJar(AnnotationWithExperimentalTypeUse.class, ClassWithExperimentalTypeUse.class, InterfaceWithExperimentalTypeUse.class);
-        JarAnnotationIndexer indexer = new JarAnnotationIndexer(file, EXPERIMENTAL_ANNOTATION_WITH_TYPE_USE, Collections.emptySet());
+        JarAnnotationIndexer indexer = createIndexer(file, EXPERIMENTAL_ANNOTATION_WITH_TYPE_USE, Collections.emptySet());
         JarAnnotationIndex result = indexer.scanForAnnotation();
         checkSet(result.getAnnotatedAnnotations(), AnnotationWithExperimentalTypeUse.class.getName());
         checkSet(result.getAnnotatedClasses(), ClassWithExperimentalTypeUse.class.getName());
@@ -59,7 +91,7 @@ public class JarAnnotationIndexerTestCase {
     @Test
     public void testScanMethodAnnotations() throws Exception {
         File file = TestUtils.createJar(ClassWithExperimentalMethods.class, InterfaceWithExperimentalMethods.class, AnnotationWithExperimentalMethods.class);
-        JarAnnotationIndexer indexer = new JarAnnotationIndexer(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
+        JarAnnotationIndexer indexer = createIndexer(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
         JarAnnotationIndex result = indexer.scanForAnnotation();
         Set<AnnotatedMethod> set = result.getAnnotatedMethods();
         Assert.assertEquals(7, set.size());
@@ -77,7 +109,7 @@ public class JarAnnotationIndexerTestCase {
     public void testScanMethodAnnotationsWithTypeUse() throws Exception {
         // The Jandex lookup works differently when TYPE_USE is one of the targets
         File file = TestUtils.createJar(ClassWithExperimentalMethodsTypeUse.class, InterfaceWithExperimentalMethodsTypeUse.class, AnnotationWithExperimentalMethodsTypeUse.class);
-        JarAnnotationIndexer indexer = new JarAnnotationIndexer(file, EXPERIMENTAL_ANNOTATION_WITH_TYPE_USE, Collections.emptySet());
+        JarAnnotationIndexer indexer = createIndexer(file, EXPERIMENTAL_ANNOTATION_WITH_TYPE_USE, Collections.emptySet());
         JarAnnotationIndex result = indexer.scanForAnnotation();
         Set<AnnotatedMethod> set = result.getAnnotatedMethods();
         Assert.assertEquals(11, set.size());
@@ -98,7 +130,7 @@ public class JarAnnotationIndexerTestCase {
     @Test
     public void testScanConstructorAnnotations() throws Exception {
         File file = TestUtils.createJar(ClassWithExperimentalConstructors.class);
-        JarAnnotationIndexer indexer = new JarAnnotationIndexer(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
+        JarAnnotationIndexer indexer = createIndexer(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
         JarAnnotationIndex result = indexer.scanForAnnotation();
         Set<AnnotatedConstructor> set = result.getAnnotatedConstructors();
         Assert.assertEquals(3, set.size());
@@ -108,11 +140,37 @@ public class JarAnnotationIndexerTestCase {
         Assert.assertTrue(set.contains(new AnnotatedConstructor(ClassWithExperimentalConstructors.class.getName(), "(I)V")));
     }
 
+    @Test
+    public void testScanInnerClassConstructorAnnotations() throws Exception {
+        File file = TestUtils.createJar(
+                ClassWithExperimentalInnerClassConstructors.class,
+                ClassWithExperimentalInnerClassConstructors.Inner.class,
+                ClassWithExperimentalInnerClassConstructors.GenericInner.class);
+        JarAnnotationIndexer indexer = createIndexer(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
+        JarAnnotationIndex result = indexer.scanForAnnotation();
+        Set<AnnotatedConstructor> set = result.getAnnotatedConstructors();
+        Assert.assertEquals(2, set.size());
+
+        String outer = "Lorg/wildfly/unstable/api/annotation/classpath/index/classes/ClassWithExperimentalInnerClassConstructors;";
+        String inner = ClassWithExperimentalInnerClassConstructors.Inner.class.getName();
+        String genericInner = ClassWithExperimentalInnerClassConstructors.GenericInner.class.getName();
+        if (streamingExtractor) {
+            // The descriptors from the class file, including the outer instance, as referred to by other classes
+            Assert.assertTrue(set.contains(new AnnotatedConstructor(inner, "(" + outer + "Ljava/lang/String;)V")));
+            Assert.assertTrue(set.contains(new AnnotatedConstructor(genericInner, "(" + outer + "Ljava/lang/Number;)V")));
+        } else {
+            // Jandex derives the descriptors from the generic signatures, which leave out the outer instance, and
+            // erases the type variables of the outer class to Object
+            Assert.assertTrue(set.contains(new AnnotatedConstructor(inner, "(Ljava/lang/String;)V")));
+            Assert.assertTrue(set.contains(new AnnotatedConstructor(genericInner, "(Ljava/lang/Object;)V")));
+        }
+    }
+
     @Test
     public void testScanConstructorAnnotationsWithTypeUse() throws Exception {
         // The Jandex lookup works differently when TYPE_USE is one of the targets
         File file = TestUtils.createJar(ClassWithExperimentalConstructorsTypeUse.class);
-        JarAnnotationIndexer indexer = new JarAnnotationIndexer(file, EXPERIMENTAL_ANNOTATION_WITH_TYPE_USE, Collections.emptySet());
+        JarAnnotationIndexer indexer = createIndexer(file, EXPERIMENTAL_ANNOTATION_WITH_TYPE_USE, Collections.emptySet());
         JarAnnotationIndex result = indexer.scanForAnnotation();
         Set<AnnotatedConstructor> set = result.getAnnotatedConstructors();
         Assert.assertEquals(4, set.size());
@@ -126,7 +184,7 @@ public class JarAnnotationIndexerTestCase {
     @Test
     public void testScanFieldAnnotations() throws Exception {
         File file = TestUtils.createJar(ClassWithExperimentalFields.class);
-        JarAnnotationIndexer indexer = new JarAnnotationIndexer(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
+        JarAnnotationIndexer indexer = createIndexer(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
         JarAnnotationIndex result = indexer.scanForAnnotation();
         Set<AnnotatedField> set = result.getAnnotatedFields();
         Assert.assertEquals(2, set.size());
@@ -138,7 +196,7 @@ public class JarAnnotationIndexerTestCase {
     public void testScanFieldAnnotationsWithTypeUse() throws Exception {
         // The Jandex lookup works differently when TYPE_USE is one of the targets
         File file = TestUtils.createJar(ClassWithExperimentalFieldsTypeUse.class);
-        JarAnnotationIndexer indexer = new JarAnnotationIndexer(file, EXPERIMENTAL_ANNOTATION_WITH_TYPE_USE, Collections.emptySet());
+        JarAnnotationIndexer indexer = createIndexer(file, EXPERIMENTAL_ANNOTATION_WITH_TYPE_USE, Collections.emptySet());
         JarAnnotationIndex result = indexer.scanForAnnotation();
         Set<AnnotatedField> set = result.getAnnotatedFields();
         Assert.assertEquals(3, set.size());
@@ -147,6 +205,147 @@ public class JarAnnotationIndexerTestCase {
         Assert.assertTrue(set.contains(new AnnotatedField(ClassWithExperimentalFieldsTypeUse.class.getName(), "fieldWithTypeAnnotation")));
     }
 
+    @Test
+    public void testScanMultipleAnnotations() throws Exception {
+        File file = TestUtils.createJar(ClassWithExperimental.class, ClassWithExperimentalFields.class, InterfaceWithIncubating.class);
+        Map<String, Set<String>> excludedClassesByAnnotation = new LinkedHashMap<>();
+        excludedClassesByAnnotation.put(EXPERIMENTAL_ANNOTATION, Collections.singleton(ClassWithExperimentalFields.class.getName()));
+        excludedClassesByAnnotation.put(INCUBATING_ANNOTATION, Collections.emptySet());
+        JarAnnotationIndexer indexer = createIndexer(file, excludedClassesByAnnotation);
+        Map<String, JarAnnotationIndex> results = indexer.scanForAnnotations();
+        Assert.assertEquals(2, results.size());
+
+        JarAnnotationIndex experimental = results.get(EXPERIMENTAL_ANNOTATION);
+        Assert.assertEquals(EXPERIMENTAL_ANNOTATION, experimental.getAnnotationName());
+        checkSet(experimental.getAnnotatedClasses(), ClassWithExperimental.class.getName());
+        checkSet(experimental.getAnnotatedInterfaces());
+        Assert.assertTrue(experimental.getAnnotatedFields().isEmpty());
+
+        JarAnnotationIndex incubating = results.get(INCUBATING_ANNOTATION);
+        Assert.assertEquals(INCUBATING_ANNOTATION, incubating.getAnnotationName());
+        checkSet(incubating.getAnnotatedClasses());
+        checkSet(incubating.getAnnotatedInterfaces(), InterfaceWithIncubating.class.getName());
+
+        try {
+            indexer.scanForAnnotation();
+            Assert.fail("Should not be able to get a single result when searching for two annotations");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testScanDoesNotWriteFiles() throws Exception {
+        Path dir = Paths.get("target/no-side-files");
+        if (Files.exists(dir)) {
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path path : files.collect(Collectors.toList())) {
+                    Files.delete(path);
+                }
+            }
+        }
+        Files.createDirectories(dir);
+        Path jar = Files.copy(TestUtils.createJar(ClassWithExperimental.class).toPath(), dir.resolve("test.jar"));
+
+        JarAnnotationIndexer indexer = createIndexer(jar.toFile(), EXPERIMENTAL_ANNOTATION, Collections.emptySet());
+        checkSet(indexer.scanForAnnotation().getAnnotatedClasses(), ClassWithExperimental.class.getName());
+        try (Stream<Path> files = Files.list(dir)) {
+            Assert.assertEquals(Collections.singletonList(jar), files.collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testClassesWithoutAnnotationDescriptorAreSkipped() throws Exception {
+        // Only InterfaceWithIncubating mentions @Incubating, so the other classes never get to Jandex
+        File file = TestUtils.createJar(ClassWithExperimental.class, ClassWithExperimentalMethods.class, InterfaceWithIncubating.class);
+        JarAnnotationIndexer indexer = createIndexer(file, INCUBATING_ANNOTATION, Collections.emptySet());
+        JarAnnotationIndex result = indexer.scanForAnnotation();
+        checkSet(result.getAnnotatedInterfaces(), InterfaceWithIncubating.class.getName());
+        Assert.assertEquals(0, result.getAnnotatedClasses().size());
+        Assert.assertEquals(0, result.getAnnotatedMethods().size());
+    }
+
+    @Test
+    public void testEmbeddedIndex() throws Exception {
+        File file = createJarWithEmbeddedIndex(createIndex(ClassWithExperimental.class, ClassWithExperimentalMethods.class),
+                ClassWithExperimental.class, ClassWithExperimentalMethods.class);
+        JarAnnotationIndex expected = createIndexer(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet()).scanForAnnotation();
+
+        JarAnnotationIndexer indexer = createIndexer(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
+        JarAnnotationIndex result = indexer.scanForAnnotation();
+        Assert.assertFalse(indexer.isEmbeddedIndexUsed());
+
+        indexer.setUseEmbeddedIndex(true);
+        result = indexer.scanForAnnotation();
+        Assert.assertTrue(indexer.isEmbeddedIndexUsed());
+        Assert.assertEquals(expected, result);
+        checkSet(result.getAnnotatedClasses(), ClassWithExperimental.class.getName());
+        Assert.assertEquals(3, result.getAnnotatedMethods().size());
+    }
+
+    @Test
+    public void testStaleEmbeddedIndex() throws Exception {
+        // The index is missing one of the classes in the jar
+        File file = createJarWithEmbeddedIndex(createIndex(ClassWithExperimental.class),
+                ClassWithExperimental.class, ClassWithExperimentalMethods.class);
+        JarAnnotationIndexer indexer = createIndexer(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
+        indexer.setUseEmbeddedIndex(true);
+        JarAnnotationIndex result = indexer.scanForAnnotation();
+        Assert.assertFalse(indexer.isEmbeddedIndexUsed());
+        checkSet(result.getAnnotatedClasses(), ClassWithExperimental.class.getName());
+        Assert.assertEquals(3, result.getAnnotatedMethods().size());
+
+        // The index contains a class which is not in the jar
+        file = createJarWithEmbeddedIndex(createIndex(ClassWithExperimental.class, ClassWithExperimentalMethods.class),
+                ClassWithExperimental.class);
+        indexer = createIndexer(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
+        indexer.setUseEmbeddedIndex(true);
+        result = indexer.scanForAnnotation();
+        Assert.assertFalse(indexer.isEmbeddedIndexUsed());
+        checkSet(result.getAnnotatedClasses(), ClassWithExperimental.class.getName());
+        Assert.assertEquals(0, result.getAnnotatedMethods().size());
+    }
+
+    @Test
+    public void testInvalidEmbeddedIndex() throws Exception {
+        File file = createJarWithEmbeddedIndex("Not an index".getBytes(StandardCharsets.UTF_8), ClassWithExperimental.class);
+        JarAnnotationIndexer indexer = createIndexer(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
+        indexer.setUseEmbeddedIndex(true);
+        JarAnnotationIndex result = indexer.scanForAnnotation();
+        Assert.assertFalse(indexer.isEmbeddedIndexUsed());
+        checkSet(result.getAnnotatedClasses(), ClassWithExperimental.class.getName());
+    }
+
+    private JarAnnotationIndexer createIndexer(File file, String annotation, Set<String> excludedClasses) {
+        JarAnnotationIndexer indexer = new JarAnnotationIndexer(file, annotation, excludedClasses);
+        indexer.setUseStreamingExtractor(streamingExtractor);
+        return indexer;
+    }
+
+    private JarAnnotationIndexer createIndexer(File file, Map<String, Set<String>> excludedClassesByAnnotation) {
+        JarAnnotationIndexer indexer = new JarAnnotationIndexer(file, excludedClassesByAnnotation);
+        indexer.setUseStreamingExtractor(streamingExtractor);
+        return indexer;
+    }
+
+    private static byte[] createIndex(Class<?>... classes) throws IOException {
+        Indexer indexer = new Indexer();
+        for (Class<?> clazz : classes) {
+            indexer.indexClass(clazz);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new IndexWriter(out).write(indexer.complete());
+        return out.toByteArray();
+    }
+
+    private static File createJarWithEmbeddedIndex(byte[] index, Class<?>... classes) throws IOException {
+        JavaArchive archive = ShrinkWrap.create(JavaArchive.class);
+        archive.addClasses(classes);
+        archive.add(new ByteArrayAsset(index), "META-INF/jandex.idx");
+        Path path = Files.createDirectories(Paths.get("target/test-archives")).resolve(archive.getName());
+        archive.as(ZipExporter.class).exportTo(path.toFile(), true);
+        path.toFile().deleteOnExit();
+        return path.toFile();
+    }
 
     private void checkSet(Set<String> set, String... expected) {
         Assert.assertEquals(expected.length, set.size());
@@ -0,0 +1,148 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.AnnotationWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.AnnotationWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalConstructors;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalFields;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.Experimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassArrayUsageInMethodBody;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassExtendsUsage;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassImplementsUsage;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassUsageAndMethodReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassUsageInMethodBody;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ConstructorReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.FieldReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.MethodReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.NoUsage;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.StaticFieldReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.StaticMethodReference;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ClassInfoScanner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+public class LayeredRuntimeIndexTestCase {
+    private static final String EXPERIMENTAL_ANNOTATION = Experimental.class.getName();
+
+    private static final Class<?>[] USAGE_CLASSES = new Class<?>[] {
+            NoUsage.class,
+            ClassExtendsUsage.class,
+            ClassImplementsUsage.class,
+            ConstructorReference.class,
+            FieldReference.class,
+            StaticFieldReference.class,
+            MethodReference.class,
+            StaticMethodReference.class,
+            ClassUsageInMethodBody.class,
+            ClassArrayUsageInMethodBody.class,
+            ClassUsageAndMethodReference.class
+    };
+
+    @Test
+    public void testScanWithOverlay() throws Exception {
+        Path basePath = createIndex("layered-base.txt",
+                AnnotationWithExperimental.class,
+                ClassWithExperimental.class,
+                InterfaceWithExperimental.class,
+                AnnotationWithExperimentalMethods.class);
+        Path overlayPath = createIndex("layered-overlay.txt",
+                ClassWithExperimentalMethods.class,
+                InterfaceWithExperimentalMethods.class,
+                ClassWithExperimentalConstructors.class,
+                ClassWithExperimentalFields.class);
+
+        RuntimeIndex full = RuntimeIndex.load(basePath, overlayPath);
+        RuntimeIndex base = RuntimeIndex.load(basePath);
+        RuntimeIndex layered = base.withOverlay(Collections.singletonList(overlayPath.toUri().toURL()));
+
+        ClassInfoScanner fullScanner = new ClassInfoScanner(full);
+        ClassInfoScanner layeredScanner = new ClassInfoScanner(layered);
+        ClassInfoScanner baseScanner = new ClassInfoScanner(base);
+        for (Class<?> clazz : USAGE_CLASSES) {
+            try (InputStream in = TestUtils.openClass(clazz)) {
+                fullScanner.scanClass(in);
+            }
+            try (InputStream in = TestUtils.openClass(clazz)) {
+                layeredScanner.scanClass(in);
+            }
+            try (InputStream in = TestUtils.openClass(clazz)) {
+                baseScanner.scanClass(in);
+            }
+        }
+        Assert.assertEquals(11, layeredScanner.getUsages().size());
+        Assert.assertEquals(new ArrayList<>(fullScanner.getUsages()), new ArrayList<>(layeredScanner.getUsages()));
+        // The base is shared, so it must not see the overlay
+        Assert.assertTrue(baseScanner.getUsages().size() < layeredScanner.getUsages().size());
+
+        Assert.assertEquals(full.getAnnotatedAnnotations(), layered.getAnnotatedAnnotations());
+        Assert.assertEquals(
+                Collections.singleton(EXPERIMENTAL_ANNOTATION),
+                layered.getAnnotationsForClass(ClassWithExperimental.class.getName()));
+    }
+
+    @Test
+    public void testOverlayAnnotationIds() throws IOException {
+        Path basePath = writeIndex("ids-base.txt", "org.acme.B", "org.acme.Both", "org.acme.OnlyB");
+        Path overlayPath = writeIndex("ids-overlay.txt", "org.acme.A", "org.acme.Both", "org.acme.OnlyA");
+
+        RuntimeIndex base = RuntimeIndex.load(basePath);
+        RuntimeIndex layered = base.withOverlay(Collections.singletonList(overlayPath.toUri().toURL()));
+
+        // The ids of the base are kept, and the new annotations come after them
+        Assert.assertEquals(1, base.getAnnotationIds().size());
+        Assert.assertEquals(2, layered.getAnnotationIds().size());
+        Assert.assertEquals("org.acme.B", layered.getAnnotationIds().getName(0));
+        Assert.assertEquals("org.acme.A", layered.getAnnotationIds().getName(1));
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("org.acme.A", "org.acme.B")), layered.getAnnotationsForClass("org.acme.Both"));
+        Assert.assertEquals(Collections.singleton("org.acme.A"), layered.getAnnotationsForClass("org.acme.OnlyA"));
+        Assert.assertEquals(Collections.singleton("org.acme.B"), layered.getAnnotationsForClass("org.acme.OnlyB"));
+        Assert.assertEquals(Collections.singleton("org.acme.B"), base.getAnnotationsForClass("org.acme.Both"));
+        Assert.assertNull(base.getAnnotationsForClass("org.acme.OnlyA"));
+
+        // Overlays can be layered too
+        Path secondPath = writeIndex("ids-second.txt", "org.acme.C", "org.acme.Both", "org.acme.OnlyC");
+        RuntimeIndex second = layered.withOverlay(Collections.singletonList(secondPath.toUri().toURL()));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("org.acme.A", "org.acme.B", "org.acme.C")), second.getAnnotationsForClass("org.acme.Both"));
+        Assert.assertEquals(Collections.singleton("org.acme.A"), second.getAnnotationsForClass("org.acme.OnlyA"));
+
+        try {
+            layered.writeBinary(new ByteArrayOutputStream());
+            Assert.fail("Should have failed");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    private static Path createIndex(String name, Class<?>... classes) throws IOException {
+        OverallIndex overallIndex = new OverallIndex();
+        overallIndex.scanJar(TestUtils.createJar(name.replace(".txt", ".jar"), classes), EXPERIMENTAL_ANNOTATION);
+        Path path = Paths.get("target/index").resolve(name);
+        overallIndex.save(path);
+        return path;
+    }
+
+    private static Path writeIndex(String name, String annotation, String... classes) throws IOException {
+        List<String> lines = new ArrayList<>(Arrays.asList("==", annotation, "=CLASSES"));
+        lines.addAll(Arrays.asList(classes));
+        lines.addAll(Arrays.asList("", "=/"));
+        Path path = Paths.get("target/index").resolve(name);
+        Files.createDirectories(path.getParent());
+        Files.write(path, lines);
+        return path;
+    }
+}
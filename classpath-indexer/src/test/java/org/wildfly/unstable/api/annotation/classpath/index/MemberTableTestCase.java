@@ -0,0 +1,104 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.wildfly.unstable.api.annotation.classpath.index.TestUtils.utf8;
+
+public class MemberTableTestCase {
+    private static final long A = 1;
+    private static final long B = 1 << 1;
+    private static final long C = 1 << 2;
+
+    @Test
+    public void testEmptyTable() throws IOException {
+        MemberTable table = new MemberTable.Builder().build();
+        Assert.assertEquals(0, table.size());
+        byte[] key = utf8("org/acme/Test");
+        Assert.assertEquals(0, table.get(key, 0, key.length));
+    }
+
+    @Test
+    public void testOnePartKeys() throws IOException {
+        MemberTable.Builder builder = new MemberTable.Builder();
+        for (int i = 0; i < 1000; i++) {
+            builder.add(1L << (i % 3), utf8("org/acme/Class" + i));
+            builder.add(1L << 3, utf8("org/acme/Class" + i));
+        }
+        MemberTable table = builder.build();
+        Assert.assertEquals(1000, table.size());
+
+        for (int i = 0; i < 1000; i++) {
+            // Put the key at an offset into a larger array to make sure the ranges are used correctly
+            byte[] key = withPadding(utf8("org/acme/Class" + i));
+            long expected = (1L << (i % 3)) | (1L << 3);
+            Assert.assertEquals(expected, table.get(key, 3, key.length - 6));
+        }
+        byte[] missing = utf8("org/acme/Class1000");
+        Assert.assertEquals(0, table.get(missing, 0, missing.length));
+    }
+
+    @Test
+    public void testMultiPartKeys() throws IOException {
+        MemberTable.Builder builder = new MemberTable.Builder();
+        builder.add(A, utf8("org/acme/Test"), utf8("method"), utf8("()V"));
+        builder.add(B, utf8("org/acme/Test"), utf8("method"), utf8("(I)V"));
+        builder.add(C, utf8("org/acme/Test"), utf8("field"));
+        MemberTable methods = builder.build();
+
+        byte[] clazz = utf8("org/acme/Test");
+        byte[] method = utf8("method");
+        byte[] voidDesc = utf8("()V");
+        byte[] intDesc = utf8("(I)V");
+        byte[] otherDesc = utf8("(J)V");
+        byte[] field = utf8("field");
+
+        Assert.assertEquals(A, methods.get(clazz, 0, clazz.length, method, 0, method.length, voidDesc, 0, voidDesc.length));
+        Assert.assertEquals(B, methods.get(clazz, 0, clazz.length, method, 0, method.length, intDesc, 0, intDesc.length));
+        Assert.assertEquals(0, methods.get(clazz, 0, clazz.length, method, 0, method.length, otherDesc, 0, otherDesc.length));
+        Assert.assertEquals(C, methods.get(clazz, 0, clazz.length, field, 0, field.length));
+        Assert.assertEquals(0, methods.get(clazz, 0, clazz.length));
+
+        // The same bytes split differently between the parts must not match
+        byte[] all = utf8("org/acme/Test");
+        Assert.assertEquals(0, methods.get(all, 0, all.length - 1, all, all.length - 1, 1));
+    }
+
+    @Test
+    public void testHash() throws IOException {
+        // Reference values for MurmurHash3_x86_32 with seed 0, covering all tail lengths
+        Assert.assertEquals(0, hash(""));
+        Assert.assertEquals(0x248bfa47, hash("hello"));
+        Assert.assertEquals(0x2e4ff723, hash("The quick brown fox jumps over the lazy dog"));
+        byte[] padded = withPadding("hello".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(0x248bfa47, MemberTable.hash(padded, 3, padded.length - 6));
+
+        // The hash of a stored key is calculated from the hashes of its parts
+        byte[] clazz = utf8("org/acme/Test");
+        byte[] method = utf8("method");
+        byte[] desc = utf8("()V");
+        byte[] key = new byte[clazz.length + method.length + desc.length];
+        System.arraycopy(clazz, 0, key, 0, clazz.length);
+        System.arraycopy(method, 0, key, clazz.length, method.length);
+        System.arraycopy(desc, 0, key, clazz.length + method.length, desc.length);
+        int expected = MemberTable.combine(MemberTable.combine(
+                MemberTable.hash(clazz, 0, clazz.length), MemberTable.hash(method, 0, method.length)), MemberTable.hash(desc, 0, desc.length));
+        Assert.assertEquals(expected, MemberTable.keyHash(key, 0, key.length));
+        Assert.assertEquals(MemberTable.hash(clazz, 0, clazz.length), MemberTable.keyHash(clazz, 0, clazz.length));
+        Assert.assertEquals(MemberTable.hash(clazz, 0, clazz.length), RuntimeIndex.ByteArrayKey.create(clazz, 0, clazz.length).hashCode());
+    }
+
+    private static int hash(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        return MemberTable.hash(bytes, 0, bytes.length);
+    }
+
+    private static byte[] withPadding(byte[] bytes) {
+        byte[] padded = new byte[bytes.length + 6];
+        System.arraycopy(bytes, 0, padded, 3, bytes.length);
+        return padded;
+    }
+}
@@ -14,12 +14,28 @@ import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWith
 import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithExperimentalMethods;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithIncubating;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 public class OverallIndexTestCase {
 
@@ -91,6 +107,174 @@ public class OverallIndexTestCase {
         Assert.assertEquals(overallIndex, loaded);
     }
 
+    @Test
+    public void testScanJarForTwoAnnotations() throws Exception {
+        File file = TestUtils.createJar(ClassWithExperimental.class, ClassWithExperimentalFields.class, InterfaceWithIncubating.class);
+        OverallIndex separately = new OverallIndex();
+        separately.scanJar(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
+        separately.scanJar(file, INCUBATING_ANNOTATION, Collections.emptySet());
+
+        OverallIndex together = new OverallIndex();
+        Map<String, Set<String>> excludedClassesByAnnotation = new HashMap<>();
+        excludedClassesByAnnotation.put(EXPERIMENTAL_ANNOTATION, Collections.emptySet());
+        excludedClassesByAnnotation.put(INCUBATING_ANNOTATION, Collections.emptySet());
+        together.scanJar(file, excludedClassesByAnnotation);
+
+        Assert.assertEquals(separately, together);
+        checkSet(together.getAnnotationIndex(INCUBATING_ANNOTATION).getAnnotatedInterfaces(), InterfaceWithIncubating.class.getName());
+        checkSet(together.getAnnotationIndex(EXPERIMENTAL_ANNOTATION).getAnnotatedClasses(), ClassWithExperimental.class.getName());
+    }
+
+    @Test
+    public void testScanJarsInParallel() throws Exception {
+        Class<?>[][] contents = {
+                {AnnotationWithExperimental.class, InterfaceWithIncubating.class},
+                {ClassWithExperimental.class},
+                {InterfaceWithExperimental.class, ClassWithExperimentalMethods.class},
+                {InterfaceWithExperimentalMethods.class},
+                {AnnotationWithExperimentalMethods.class, ClassWithExperimentalConstructors.class},
+                {ClassWithExperimentalFields.class, ClassWithExperimental.class}
+        };
+        List<Path> jars = new ArrayList<>();
+        for (int i = 0; i < contents.length; i++) {
+            jars.add(TestUtils.createJar("parallel-" + i + ".jar", contents[i]).toPath());
+        }
+        Map<String, Set<String>> excludedClassesByAnnotation = new LinkedHashMap<>();
+        excludedClassesByAnnotation.put(EXPERIMENTAL_ANNOTATION, Collections.singleton(ClassWithExperimentalMethods.class.getName()));
+        excludedClassesByAnnotation.put(INCUBATING_ANNOTATION, Collections.emptySet());
+
+        OverallIndex serial = new OverallIndex();
+        for (Path jar : jars) {
+            serial.scanJar(jar.toFile(), excludedClassesByAnnotation);
+        }
+        Path serialPath = Paths.get("target/index/serial.txt");
+        serial.save(serialPath);
+
+        OverallIndex parallel = new OverallIndex();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            parallel.scanJars(jars, excludedClassesByAnnotation, executor);
+        } finally {
+            executor.shutdown();
+        }
+        Path parallelPath = Paths.get("target/index/parallel.txt");
+        parallel.save(parallelPath);
+
+        Assert.assertEquals(serial, parallel);
+        Assert.assertArrayEquals(Files.readAllBytes(serialPath), Files.readAllBytes(parallelPath));
+        // ClassWithExperimentalMethods is excluded, so the methods all come from the interface
+        for (AnnotatedMethod method : parallel.getAnnotationIndex(EXPERIMENTAL_ANNOTATION).getAnnotatedMethods()) {
+            Assert.assertNotEquals(ClassWithExperimentalMethods.class.getName(), method.getClassName());
+        }
+    }
+
+    @Test
+    public void testScanJarsFailure() throws Exception {
+        Path jar = TestUtils.createJar("parallel-ok.jar", ClassWithExperimental.class).toPath();
+        Path missing = Paths.get("target/test-archives/does-not-exist.jar");
+        OverallIndex index = new OverallIndex();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            index.scanJars(List.of(jar, missing), Collections.singletonMap(EXPERIMENTAL_ANNOTATION, Collections.emptySet()), executor);
+            Assert.fail("Should have failed");
+        } catch (IOException expected) {
+        } finally {
+            executor.shutdown();
+        }
+        // Nothing is added if any of the jars could not be read
+        Assert.assertTrue(index.getAnnotations().isEmpty());
+    }
+
+    @Test
+    public void testLoadZippedIndex() throws Exception {
+        OverallIndex index = createOverallIndexWithEverythingExperimental();
+        Path path = Paths.get("target/index/zipped.zip");
+        index.save(path);
+
+        // A file: URL is opened as a ZipFile
+        Assert.assertEquals(index, OverallIndex.load(path));
+
+        // Other URLs are streamed through. Put the zipped index in a jar, and load it with a jar: URL
+        Path outer = Paths.get("target/index/zipped-outer.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(outer))) {
+            out.putNextEntry(new ZipEntry("META-INF/index.zip"));
+            Files.copy(path, out);
+            out.closeEntry();
+        }
+        URL url = new URL("jar:" + outer.toUri() + "!/META-INF/index.zip");
+        Assert.assertEquals(index, OverallIndex.load(List.of(url)));
+
+        // An open stream is read, but not closed
+        boolean[] closed = new boolean[1];
+        try (InputStream in = new FilterInputStream(Files.newInputStream(path)) {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+                super.close();
+            }
+        }) {
+            Assert.assertEquals(index, OverallIndex.load(in, OverallIndex.Format.ZIP));
+            Assert.assertFalse(closed[0]);
+        }
+    }
+
+    @Test
+    public void testLoadInvalidZippedIndex() throws Exception {
+        Path path = Paths.get("target/index/invalid-zipped.zip");
+        Files.createDirectories(path.getParent());
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(path))) {
+            out.putNextEntry(new ZipEntry("other.txt"));
+            out.closeEntry();
+        }
+        try {
+            OverallIndex.load(path);
+            Assert.fail("Should have failed");
+        } catch (IllegalArgumentException expected) {
+        }
+        try (InputStream in = Files.newInputStream(path)) {
+            OverallIndex.load(in, OverallIndex.Format.ZIP);
+            Assert.fail("Should have failed");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testSaveToStream() throws Exception {
+        OverallIndex index = createOverallIndexWithEverythingExperimental();
+        for (OverallIndex.Format format : OverallIndex.Format.values()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            index.save(out, format);
+            if (format == OverallIndex.Format.ZIP) {
+                Assert.assertEquals(index, OverallIndex.load(new ByteArrayInputStream(out.toByteArray()), format));
+            } else {
+                Path path = Paths.get("target/index/stream-test" + format.getSuffix());
+                index.save(path);
+                Assert.assertArrayEquals(Files.readAllBytes(path), out.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void testZipCompressionLevel() throws Exception {
+        OverallIndex index = createOverallIndexWithEverythingExperimental();
+        ByteArrayOutputStream stored = new ByteArrayOutputStream();
+        index.setZipCompressionLevel(Deflater.NO_COMPRESSION);
+        index.save(stored, OverallIndex.Format.ZIP);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        index.setZipCompressionLevel(Deflater.BEST_COMPRESSION);
+        index.save(compressed, OverallIndex.Format.ZIP);
+
+        Assert.assertTrue(compressed.size() < stored.size());
+        Assert.assertEquals(index, OverallIndex.load(new ByteArrayInputStream(stored.toByteArray()), OverallIndex.Format.ZIP));
+        Assert.assertEquals(index, OverallIndex.load(new ByteArrayInputStream(compressed.toByteArray()), OverallIndex.Format.ZIP));
+
+        try {
+            index.setZipCompressionLevel(10);
+            Assert.fail("Should have failed");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
     private OverallIndex createOverallIndexWithEverythingExperimental() throws IOException {
         OverallIndex overallIndex = new OverallIndex();
         addJarIndex(overallIndex, AnnotationWithExperimental.class);
@@ -0,0 +1,139 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.AnnotationWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.AnnotationWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalConstructors;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalFields;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.Experimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassArrayUsageInMethodBody;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassExtendsUsage;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassImplementsUsage;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassUsageAndMethodReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassUsageInMethodBody;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ConstructorReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.FieldReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.MethodReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.NoUsage;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.StaticFieldReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.StaticMethodReference;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsage;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ClassInfoScanner;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ParallelClassInfoScanner;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ParallelClassInfoScanner.ClassSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ParallelClassInfoScannerTestCase {
+    private static final String EXPERIMENTAL_ANNOTATION = Experimental.class.getName();
+
+    private static final Class<?>[] USAGE_CLASSES = new Class<?>[] {
+            NoUsage.class,
+            ClassExtendsUsage.class,
+            ClassImplementsUsage.class,
+            ConstructorReference.class,
+            FieldReference.class,
+            StaticFieldReference.class,
+            MethodReference.class,
+            StaticMethodReference.class,
+            ClassUsageInMethodBody.class,
+            ClassArrayUsageInMethodBody.class,
+            ClassUsageAndMethodReference.class
+    };
+
+    RuntimeIndex runtimeIndex;
+    ExecutorService executor;
+
+    @Before
+    public void createRuntimeIndex() throws IOException {
+        OverallIndex overallIndex = new OverallIndex();
+        File file = TestUtils.createJar(
+                AnnotationWithExperimental.class,
+                ClassWithExperimental.class,
+                InterfaceWithExperimental.class,
+                ClassWithExperimentalMethods.class,
+                InterfaceWithExperimentalMethods.class,
+                AnnotationWithExperimentalMethods.class,
+                ClassWithExperimentalConstructors.class,
+                ClassWithExperimentalFields.class);
+        overallIndex.scanJar(file, EXPERIMENTAL_ANNOTATION);
+
+        Path p = Paths.get("target/index/parallel-runtime-test.txt");
+        overallIndex.save(p);
+
+        runtimeIndex = RuntimeIndex.load(p);
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testSameResultsAsSerialScan() throws Exception {
+        // Repeat the classes a few times, so that each shard contains several classes and
+        // the same usages are found in several shards
+        List<Class<?>> classes = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Collections.addAll(classes, USAGE_CLASSES);
+        }
+
+        ClassInfoScanner serial = new ClassInfoScanner(runtimeIndex);
+        for (Class<?> clazz : classes) {
+            try (InputStream in = TestUtils.openClass(clazz)) {
+                serial.scanClass(in);
+            }
+        }
+
+        List<ClassSource> sources = new ArrayList<>();
+        for (Class<?> clazz : classes) {
+            sources.add(() -> TestUtils.openClass(clazz));
+        }
+        ParallelClassInfoScanner parallel = new ParallelClassInfoScanner(runtimeIndex, executor, 3);
+        parallel.scanClasses(sources);
+
+        Assert.assertEquals(11, serial.getUsages().size());
+        // Compare as lists to make sure the order is the same too
+        Assert.assertEquals(new ArrayList<>(serial.getUsages()), new ArrayList<>(parallel.getUsages()));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        ParallelClassInfoScanner parallel = new ParallelClassInfoScanner(runtimeIndex, executor, 3);
+        parallel.scanClasses(Collections.emptyList());
+        Assert.assertEquals(0, parallel.getUsages().size());
+    }
+
+    @Test
+    public void testIOExceptionIsPropagated() throws Exception {
+        ParallelClassInfoScanner parallel = new ParallelClassInfoScanner(runtimeIndex, executor, 3);
+        List<ClassSource> sources = new ArrayList<>();
+        sources.add(() -> TestUtils.openClass(NoUsage.class));
+        sources.add(() -> {
+            throw new IOException("Expected");
+        });
+        try {
+            parallel.scanClasses(sources);
+            Assert.fail("Should have failed");
+        } catch (IOException expected) {
+            Assert.assertEquals("Expected", expected.getMessage());
+        }
+    }
+}
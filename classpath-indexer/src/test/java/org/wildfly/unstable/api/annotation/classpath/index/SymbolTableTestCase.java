@@ -0,0 +1,72 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.wildfly.unstable.api.annotation.classpath.index.SymbolTable.KIND_CLASS;
+import static org.wildfly.unstable.api.annotation.classpath.index.SymbolTable.KIND_FIELD_NAME;
+import static org.wildfly.unstable.api.annotation.classpath.index.SymbolTable.KIND_METHOD_DESCRIPTOR;
+import static org.wildfly.unstable.api.annotation.classpath.index.SymbolTable.KIND_METHOD_NAME;
+import static org.wildfly.unstable.api.annotation.classpath.index.TestUtils.utf8;
+
+public class SymbolTableTestCase {
+
+    @Test
+    public void testSymbols() throws IOException {
+        SymbolTable.Builder builder = new SymbolTable.Builder();
+        builder.add(key("org/acme/Test"), KIND_CLASS);
+        builder.add(key("value"), KIND_FIELD_NAME);
+        builder.add(key("value"), KIND_METHOD_NAME);
+        builder.add(key("(Lorg/acme/Test;)V"), KIND_METHOD_DESCRIPTOR);
+        builder.add(key("org/acme/Test"), KIND_CLASS);
+        builder.add(key("caf\u00e9"), KIND_METHOD_NAME);
+        for (int i = 0; i < 1000; i++) {
+            builder.add(key("org/acme/Class" + i), KIND_CLASS);
+        }
+        SymbolTable table = builder.build();
+        checkSymbols(table);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bout)) {
+            table.write(out);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bout.toByteArray());
+        SymbolTable read = SymbolTable.read(buffer);
+        Assert.assertFalse(buffer.hasRemaining());
+        checkSymbols(read);
+    }
+
+    private void checkSymbols(SymbolTable table) throws IOException {
+        Assert.assertEquals(1004, table.size());
+
+        Assert.assertEquals("org.acme.Test", getString(table, "org/acme/Test", KIND_CLASS));
+        Assert.assertNull(getString(table, "org/acme/Test", KIND_METHOD_NAME));
+        Assert.assertEquals("value", getString(table, "value", KIND_FIELD_NAME));
+        Assert.assertEquals("value", getString(table, "value", KIND_METHOD_NAME));
+        Assert.assertNull(getString(table, "value", KIND_CLASS));
+        Assert.assertEquals("(Lorg/acme/Test;)V", getString(table, "(Lorg/acme/Test;)V", KIND_METHOD_DESCRIPTOR));
+        Assert.assertEquals("caf\u00e9", getString(table, "caf\u00e9", KIND_METHOD_NAME));
+        Assert.assertNull(getString(table, "unknown", KIND_METHOD_NAME));
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals("org.acme.Class" + i, getString(table, "org/acme/Class" + i, KIND_CLASS));
+        }
+        // The strings are cached
+        Assert.assertSame(getString(table, "org/acme/Class1", KIND_CLASS), getString(table, "org/acme/Class1", KIND_CLASS));
+    }
+
+    private static String getString(SymbolTable table, String s, int kind) throws IOException {
+        RuntimeIndex.ByteArrayKey key = key(s);
+        byte[] bytes = utf8(s);
+        return table.getString(bytes, 0, bytes.length, key.hashCode(), kind);
+    }
+
+    private static RuntimeIndex.ByteArrayKey key(String s) throws IOException {
+        byte[] bytes = utf8(s);
+        return RuntimeIndex.ByteArrayKey.create(bytes, 0, bytes.length);
+    }
+}
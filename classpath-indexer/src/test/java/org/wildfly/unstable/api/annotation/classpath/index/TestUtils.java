@@ -4,15 +4,22 @@ import org.jboss.shrinkwrap.api.ShrinkWrap;
 import org.jboss.shrinkwrap.api.exporter.ZipExporter;
 import org.jboss.shrinkwrap.api.spec.JavaArchive;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
 public class TestUtils {
     public static File createJar(Class<?>... classes) throws IOException {
-        String archiveName = System.currentTimeMillis() + ".jar";
+        return createJar(System.currentTimeMillis() + ".jar", classes);
+    }
+
+    public static File createJar(String archiveName, Class<?>... classes) throws IOException {
         JavaArchive archive = ShrinkWrap.create(JavaArchive.class, archiveName);
         archive.addClasses(classes);
         ZipExporter exporter = archive.as(ZipExporter.class);
@@ -31,4 +38,34 @@ public class TestUtils {
         file.deleteOnExit();
         return file;
     }
+
+    public static InputStream openClass(Class<?> clazz) throws IOException {
+        String classLocation = clazz.getName().replaceAll("\\.", "/") + ".class";
+        URL url = TestUtils.class.getClassLoader().getResource(classLocation);
+        return url.openStream();
+    }
+
+    public static byte[] readClass(Class<?> clazz) throws IOException {
+        try (InputStream in = openClass(clazz)) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Gets the bytes of a string in the format written by {@link DataOutputStream#writeUTF(String)}, which is also
+     * the format of the UTF8 entries in the class file constant pool
+     */
+    public static byte[] utf8(String value) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bout)) {
+            out.writeUTF(value);
+        }
+        return bout.toByteArray();
+    }
+
+    static byte[] writeBinary(RuntimeIndex runtimeIndex) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        runtimeIndex.writeBinary(out);
+        return out.toByteArray();
+    }
 }
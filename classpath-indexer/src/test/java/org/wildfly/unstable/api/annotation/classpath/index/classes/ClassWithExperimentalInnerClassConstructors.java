@@ -0,0 +1,18 @@
+package org.wildfly.unstable.api.annotation.classpath.index.classes;
+
+public class ClassWithExperimentalInnerClassConstructors<T extends Number> {
+
+    public class Inner {
+        @Experimental
+        public Inner(String s) {
+
+        }
+    }
+
+    public class GenericInner {
+        @Experimental
+        public GenericInner(T t) {
+
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package org.wildfly.unstable.api.annotation.classpath.index.classes.usage;
+
+import org.wildfly.unstable.api.annotation.classpath.index.classes.AnnotationWithExperimental;
+
+import java.lang.annotation.Annotation;
+
+public class AnnotationImplementsUsage implements AnnotationWithExperimental {
+    @Override
+    public Class<? extends Annotation> annotationType() {
+        return AnnotationWithExperimental.class;
+    }
+}
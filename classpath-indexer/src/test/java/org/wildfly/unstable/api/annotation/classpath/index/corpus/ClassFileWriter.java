@@ -0,0 +1,198 @@
+package org.wildfly.unstable.api.annotation.classpath.index.corpus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes minimal, but valid, class files. Only what is needed for the corpus is supported: the constant pool,
+ * interfaces, fields and methods without code, and {@code RuntimeVisibleAnnotations} attributes without values.
+ * Constant pool entries are shared as they would be by javac.
+ */
+class ClassFileWriter {
+    private static final int MAJOR_VERSION = 55;
+    private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> entries = new HashMap<>();
+    private int poolCount = 1;
+
+    private final int accessFlags;
+    private final int thisClass;
+    private final int superClass;
+    private final List<Integer> interfaces = new ArrayList<>();
+    private final ByteArrayOutputStream fieldBytes = new ByteArrayOutputStream();
+    private final DataOutputStream fields = new DataOutputStream(fieldBytes);
+    private int fieldCount;
+    private int methodCount;
+    private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+    private final DataOutputStream methods = new DataOutputStream(methodBytes);
+    private final List<Integer> classAnnotations = new ArrayList<>();
+
+    ClassFileWriter(int accessFlags, String className, String superClassName) throws IOException {
+        this.accessFlags = accessFlags;
+        this.thisClass = addClass(className);
+        this.superClass = addClass(superClassName);
+    }
+
+    int getConstantPoolSize() {
+        return poolCount - 1;
+    }
+
+    int addUtf8(String value) throws IOException {
+        Integer index = entries.get("U" + value);
+        if (index == null) {
+            pool.writeByte(1);
+            pool.writeUTF(value);
+            index = newEntry("U" + value);
+        }
+        return index;
+    }
+
+    int addClass(String className) throws IOException {
+        Integer index = entries.get("C" + className);
+        if (index == null) {
+            int name = addUtf8(className);
+            pool.writeByte(7);
+            pool.writeShort(name);
+            index = newEntry("C" + className);
+        }
+        return index;
+    }
+
+    int addString(String value) throws IOException {
+        Integer index = entries.get("S" + value);
+        if (index == null) {
+            int utf8 = addUtf8(value);
+            pool.writeByte(8);
+            pool.writeShort(utf8);
+            index = newEntry("S" + value);
+        }
+        return index;
+    }
+
+    int addFieldRef(String className, String name, String descriptor) throws IOException {
+        return addRef(9, className, name, descriptor);
+    }
+
+    int addMethodRef(String className, String name, String descriptor) throws IOException {
+        return addRef(10, className, name, descriptor);
+    }
+
+    void addInterface(String interfaceName) throws IOException {
+        interfaces.add(addClass(interfaceName));
+    }
+
+    void addAnnotation(String annotationDescriptor) throws IOException {
+        classAnnotations.add(addUtf8(annotationDescriptor));
+    }
+
+    void addField(int accessFlags, String name, String descriptor, String annotationDescriptor) throws IOException {
+        writeMember(fields, accessFlags, name, descriptor, annotationDescriptor);
+        fieldCount++;
+    }
+
+    void addMethod(int accessFlags, String name, String descriptor, String annotationDescriptor) throws IOException {
+        writeMember(methods, accessFlags, name, descriptor, annotationDescriptor);
+        methodCount++;
+    }
+
+    byte[] toByteArray() throws IOException {
+        // Add the attribute name before writing the pool, so it is included
+        int classAnnotationsAttribute = classAnnotations.isEmpty() ? 0 : addUtf8(RUNTIME_VISIBLE_ANNOTATIONS);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bout)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(MAJOR_VERSION);
+            out.writeShort(poolCount);
+            pool.flush();
+            poolBytes.writeTo(out);
+            out.writeShort(accessFlags);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.size());
+            for (int iface : interfaces) {
+                out.writeShort(iface);
+            }
+            out.writeShort(fieldCount);
+            fields.flush();
+            fieldBytes.writeTo(out);
+            out.writeShort(methodCount);
+            methods.flush();
+            methodBytes.writeTo(out);
+            if (classAnnotations.isEmpty()) {
+                out.writeShort(0);
+            } else {
+                out.writeShort(1);
+                writeAnnotationsAttribute(out, classAnnotationsAttribute, classAnnotations);
+            }
+        }
+        return bout.toByteArray();
+    }
+
+    private int addRef(int tag, String className, String name, String descriptor) throws IOException {
+        String key = tag + className + '.' + name + ':' + descriptor;
+        Integer index = entries.get(key);
+        if (index == null) {
+            int classIndex = addClass(className);
+            int nameAndType = addNameAndType(name, descriptor);
+            pool.writeByte(tag);
+            pool.writeShort(classIndex);
+            pool.writeShort(nameAndType);
+            index = newEntry(key);
+        }
+        return index;
+    }
+
+    private int addNameAndType(String name, String descriptor) throws IOException {
+        Integer index = entries.get("N" + name + ':' + descriptor);
+        if (index == null) {
+            int nameIndex = addUtf8(name);
+            int descriptorIndex = addUtf8(descriptor);
+            pool.writeByte(12);
+            pool.writeShort(nameIndex);
+            pool.writeShort(descriptorIndex);
+            index = newEntry("N" + name + ':' + descriptor);
+        }
+        return index;
+    }
+
+    private int newEntry(String key) {
+        if (poolCount == 0xFFFF) {
+            throw new IllegalStateException("Constant pool is full");
+        }
+        int index = poolCount++;
+        entries.put(key, index);
+        return index;
+    }
+
+    private void writeMember(DataOutputStream out, int accessFlags, String name, String descriptor, String annotationDescriptor) throws IOException {
+        out.writeShort(accessFlags);
+        out.writeShort(addUtf8(name));
+        out.writeShort(addUtf8(descriptor));
+        if (annotationDescriptor == null) {
+            out.writeShort(0);
+        } else {
+            out.writeShort(1);
+            writeAnnotationsAttribute(out, addUtf8(RUNTIME_VISIBLE_ANNOTATIONS), List.of(addUtf8(annotationDescriptor)));
+        }
+    }
+
+    private static void writeAnnotationsAttribute(DataOutputStream out, int attributeName, List<Integer> annotations) throws IOException {
+        out.writeShort(attributeName);
+        // num_annotations, and for each annotation the type_index and num_element_value_pairs
+        out.writeInt(2 + annotations.size() * 4);
+        out.writeShort(annotations.size());
+        for (int annotation : annotations) {
+            out.writeShort(annotation);
+            out.writeShort(0);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.wildfly.unstable.api.annotation.classpath.index.corpus;
+
+import org.wildfly.unstable.api.annotation.classpath.index.OverallIndex;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A corpus of classes created by {@link CorpusGenerator}.
+ */
+public class Corpus {
+    private final Path apiJar;
+    private final Path userJar;
+    private final OverallIndex overallIndex;
+    private final List<byte[]> userClasses;
+    private final Set<String> expectedUsages;
+    private final int refCount;
+    private final int hitCount;
+
+    Corpus(Path apiJar, Path userJar, OverallIndex overallIndex, List<byte[]> userClasses, Set<String> expectedUsages, int refCount, int hitCount) {
+        this.apiJar = apiJar;
+        this.userJar = userJar;
+        this.overallIndex = overallIndex;
+        this.userClasses = Collections.unmodifiableList(userClasses);
+        this.expectedUsages = Collections.unmodifiableSet(expectedUsages);
+        this.refCount = refCount;
+        this.hitCount = hitCount;
+    }
+
+    /**
+     * Gets the jar containing the annotation and the API classes
+     * @return the jar
+     */
+    public Path getApiJar() {
+        return apiJar;
+    }
+
+    /**
+     * Gets the jar containing the user classes
+     * @return the jar
+     */
+    public Path getUserJar() {
+        return userJar;
+    }
+
+    /**
+     * Gets the index of the API jar for {@link CorpusGenerator#ANNOTATION}
+     * @return the index
+     */
+    public OverallIndex getOverallIndex() {
+        return overallIndex;
+    }
+
+    /**
+     * Gets the class files of the user classes, in the same order as in the user jar
+     * @return the class files
+     */
+    public List<byte[]> getUserClasses() {
+        return userClasses;
+    }
+
+    /**
+     * Gets the usages that scanning the user classes should find, as {@code <user class> -> <usage>} where the usage
+     * is the name of the annotated class, {@code <class>.<field>} or {@code <class>.<method><descriptor>}
+     * @return the expected usages
+     */
+    public Set<String> getExpectedUsages() {
+        return expectedUsages;
+    }
+
+    /**
+     * Gets the total number of field and method references generated in the user classes
+     * @return the number of references
+     */
+    public int getRefCount() {
+        return refCount;
+    }
+
+    /**
+     * Gets the number of generated references which are hits
+     * @return the number of hits
+     */
+    public int getHitCount() {
+        return hitCount;
+    }
+}
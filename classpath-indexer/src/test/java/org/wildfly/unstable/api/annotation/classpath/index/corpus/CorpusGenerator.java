@@ -0,0 +1,280 @@
+package org.wildfly.unstable.api.annotation.classpath.index.corpus;
+
+import org.wildfly.unstable.api.annotation.classpath.index.OverallIndex;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex.convertClassNameToDotFormat;
+
+/**
+ * Generates a deterministic corpus of class files to benchmark and test scanning against, so that results can be
+ * reproduced without a real classpath or WildFly installation. The same settings always give byte for byte the
+ * same classes.
+ *
+ * The corpus consists of:
+ * <ul>
+ *     <li>An API jar containing the {@link #ANNOTATION} annotation, and classes with fields and methods. Every eighth
+ *     class is annotated, and in the other classes every other field and method is annotated. The API jar is indexed
+ *     to give the {@link OverallIndex} of the corpus.</li>
+ *     <li>A user jar containing classes whose constant pools reference the API. Each reference is a hit, i.e. a reference
+ *     to an annotated member or to a member of an annotated class, with the configured probability. Misses are
+ *     references to members of library classes which are not in the index, or to members of the API which are not
+ *     annotated, with equal probability. The constant pools are padded with string constants to the configured size.</li>
+ * </ul>
+ */
+public class CorpusGenerator {
+    public static final String ANNOTATION = "org.wildfly.unstable.api.annotation.corpus.api.Unstable";
+
+    private static final String API_PACKAGE = "org/wildfly/unstable/api/annotation/corpus/api/";
+    private static final String USER_PACKAGE = "org/wildfly/unstable/api/annotation/corpus/user/";
+    private static final String LIB_PACKAGE = "org/wildfly/unstable/api/annotation/corpus/lib/";
+    private static final String ANNOTATION_DESCRIPTOR = "L" + ANNOTATION.replace('.', '/') + ";";
+    private static final String OBJECT = "java/lang/Object";
+    private static final int METHODS_PER_CLASS = 8;
+    private static final int FIELDS_PER_CLASS = 4;
+    private static final int LIB_CLASSES = 500;
+    private static final String[] METHOD_DESCRIPTORS = {"()V", "(I)I", "(Ljava/lang/String;)Ljava/lang/String;", "(JLjava/util/List;)Z"};
+    private static final String[] FIELD_DESCRIPTORS = {"I", "Ljava/lang/String;"};
+    // A fixed time for the jar entries, so the jars are the same each time
+    private static final long ENTRY_TIME = 1_577_836_800_000L;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_SUPER = 0x0020;
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_ABSTRACT = 0x0400;
+    private static final int ACC_ANNOTATION = 0x2000;
+
+    private long seed;
+    private int classes = 1000;
+    private int apiClasses = 100;
+    private int constantPoolSize = 200;
+    private double refDensity = 0.1;
+    private double hitRatio = 0.05;
+
+    /**
+     * Sets the seed for the random choices. Defaults to 0
+     * @param seed the seed
+     * @return this generator
+     */
+    public CorpusGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Sets the number of user classes. Defaults to 1000
+     * @param classes the number of classes
+     * @return this generator
+     */
+    public CorpusGenerator setClasses(int classes) {
+        if (classes < 0) {
+            throw new IllegalArgumentException("Negative number of classes");
+        }
+        this.classes = classes;
+        return this;
+    }
+
+    /**
+     * Sets the number of API classes. Defaults to 100
+     * @param apiClasses the number of API classes
+     * @return this generator
+     */
+    public CorpusGenerator setApiClasses(int apiClasses) {
+        if (apiClasses < 2) {
+            throw new IllegalArgumentException("There must be at least two API classes");
+        }
+        this.apiClasses = apiClasses;
+        return this;
+    }
+
+    /**
+     * Sets the minimum number of constant pool entries in the user classes. The pools of classes with a lot of
+     * references may be bigger. Defaults to 200
+     * @param constantPoolSize the number of constant pool entries
+     * @return this generator
+     */
+    public CorpusGenerator setConstantPoolSize(int constantPoolSize) {
+        if (constantPoolSize < 2 || constantPoolSize > 0xFFFE) {
+            throw new IllegalArgumentException("Invalid constant pool size " + constantPoolSize);
+        }
+        this.constantPoolSize = constantPoolSize;
+        return this;
+    }
+
+    /**
+     * Sets the number of field and method references in the user classes, relative to the constant pool size.
+     * Each reference uses up to five constant pool entries, so values above 0.2 give bigger constant pools than
+     * configured. Defaults to 0.1
+     * @param refDensity the number of references per constant pool entry
+     * @return this generator
+     */
+    public CorpusGenerator setRefDensity(double refDensity) {
+        if (refDensity < 0 || refDensity > 1) {
+            throw new IllegalArgumentException("Invalid reference density " + refDensity);
+        }
+        this.refDensity = refDensity;
+        return this;
+    }
+
+    /**
+     * Sets the probability of a reference in the user classes being to an annotated member or class. Defaults to 0.05
+     * @param hitRatio the probability
+     * @return this generator
+     */
+    public CorpusGenerator setHitRatio(double hitRatio) {
+        if (hitRatio < 0 || hitRatio > 1) {
+            throw new IllegalArgumentException("Invalid hit ratio " + hitRatio);
+        }
+        this.hitRatio = hitRatio;
+        return this;
+    }
+
+    /**
+     * Generates the corpus
+     * @param dir the directory to write the jars to
+     * @return the corpus
+     * @throws IOException if there were problems writing the jars
+     */
+    public Corpus generate(Path dir) throws IOException {
+        Random random = new Random(seed);
+        Files.createDirectories(dir);
+
+        List<Target> hitTargets = new ArrayList<>();
+        List<Target> missTargets = new ArrayList<>();
+        Path apiJar = dir.resolve("corpus-api.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(apiJar))) {
+            writeEntry(out, ANNOTATION.replace('.', '/'), createAnnotation());
+            for (int i = 0; i < apiClasses; i++) {
+                String className = API_PACKAGE + "Api" + i;
+                writeEntry(out, className, createApiClass(className, i % 8 == 0, hitTargets, missTargets));
+            }
+        }
+
+        List<byte[]> userClasses = new ArrayList<>(classes);
+        Set<String> expectedUsages = new LinkedHashSet<>();
+        int refCount = 0;
+        int hitCount = 0;
+        Path userJar = dir.resolve("corpus-user.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(userJar))) {
+            int refsPerClass = (int) Math.round(constantPoolSize * refDensity);
+            for (int i = 0; i < classes; i++) {
+                String className = USER_PACKAGE + "User" + i;
+                ClassFileWriter writer = new ClassFileWriter(ACC_PUBLIC | ACC_SUPER | ACC_ABSTRACT, className, OBJECT);
+                for (int j = 0; j < refsPerClass; j++) {
+                    Target target;
+                    if (random.nextDouble() < hitRatio) {
+                        target = hitTargets.get(random.nextInt(hitTargets.size()));
+                        expectedUsages.add(convertClassNameToDotFormat(className) + " -> " + target.usage);
+                        hitCount++;
+                    } else if (random.nextBoolean()) {
+                        target = missTargets.get(random.nextInt(missTargets.size()));
+                    } else {
+                        String libClass = LIB_PACKAGE + "Lib" + random.nextInt(LIB_CLASSES);
+                        int member = random.nextInt(METHODS_PER_CLASS);
+                        target = new Target(false, libClass, "method" + member, METHOD_DESCRIPTORS[member % METHOD_DESCRIPTORS.length], null);
+                    }
+                    target.addRef(writer);
+                    refCount++;
+                }
+                while (writer.getConstantPoolSize() < constantPoolSize) {
+                    String constant = "constant-" + Long.toHexString(random.nextLong());
+                    if (constantPoolSize - writer.getConstantPoolSize() > 1) {
+                        writer.addString(constant);
+                    } else {
+                        writer.addUtf8(constant);
+                    }
+                }
+                byte[] bytes = writer.toByteArray();
+                userClasses.add(bytes);
+                writeEntry(out, className, bytes);
+            }
+        }
+
+        OverallIndex overallIndex = new OverallIndex();
+        overallIndex.scanJar(apiJar.toFile(), ANNOTATION);
+        return new Corpus(apiJar, userJar, overallIndex, userClasses, expectedUsages, refCount, hitCount);
+    }
+
+    private static byte[] createAnnotation() throws IOException {
+        ClassFileWriter writer = new ClassFileWriter(
+                ACC_PUBLIC | ACC_INTERFACE | ACC_ABSTRACT | ACC_ANNOTATION, ANNOTATION.replace('.', '/'), OBJECT);
+        writer.addInterface("java/lang/annotation/Annotation");
+        return writer.toByteArray();
+    }
+
+    private static byte[] createApiClass(String className, boolean annotatedClass, List<Target> hitTargets, List<Target> missTargets) throws IOException {
+        ClassFileWriter writer = new ClassFileWriter(ACC_PUBLIC | ACC_SUPER | ACC_ABSTRACT, className, OBJECT);
+        String dotName = convertClassNameToDotFormat(className);
+        if (annotatedClass) {
+            writer.addAnnotation(ANNOTATION_DESCRIPTOR);
+        }
+        for (int i = 0; i < FIELDS_PER_CLASS; i++) {
+            String name = "field" + i;
+            String descriptor = FIELD_DESCRIPTORS[i % FIELD_DESCRIPTORS.length];
+            boolean annotated = !annotatedClass && i % 2 == 0;
+            writer.addField(ACC_PUBLIC, name, descriptor, annotated ? ANNOTATION_DESCRIPTOR : null);
+            addTarget(new Target(true, className, name, descriptor, dotName + "." + name), annotatedClass, annotated, hitTargets, missTargets);
+        }
+        for (int i = 0; i < METHODS_PER_CLASS; i++) {
+            String name = "method" + i;
+            String descriptor = METHOD_DESCRIPTORS[i % METHOD_DESCRIPTORS.length];
+            boolean annotated = !annotatedClass && i % 2 == 0;
+            writer.addMethod(ACC_PUBLIC | ACC_ABSTRACT, name, descriptor, annotated ? ANNOTATION_DESCRIPTOR : null);
+            addTarget(new Target(false, className, name, descriptor, dotName + "." + name + descriptor), annotatedClass, annotated, hitTargets, missTargets);
+        }
+        return writer.toByteArray();
+    }
+
+    private static void addTarget(Target target, boolean annotatedClass, boolean annotated, List<Target> hitTargets, List<Target> missTargets) {
+        if (annotatedClass) {
+            // References to the members of annotated classes are reported as usages of the class
+            hitTargets.add(new Target(target.field, target.className, target.name, target.descriptor, convertClassNameToDotFormat(target.className)));
+        } else if (annotated) {
+            hitTargets.add(target);
+        } else {
+            missTargets.add(target);
+        }
+    }
+
+    private static void writeEntry(ZipOutputStream out, String className, byte[] bytes) throws IOException {
+        ZipEntry entry = new ZipEntry(className + ".class");
+        entry.setTime(ENTRY_TIME);
+        out.putNextEntry(entry);
+        out.write(bytes);
+        out.closeEntry();
+    }
+
+    private static class Target {
+        private final boolean field;
+        private final String className;
+        private final String name;
+        private final String descriptor;
+        // The description of the usage a reference to this target is reported as, if it is a hit
+        private final String usage;
+
+        Target(boolean field, String className, String name, String descriptor, String usage) {
+            this.field = field;
+            this.className = className;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.usage = usage;
+        }
+
+        void addRef(ClassFileWriter writer) throws IOException {
+            if (field) {
+                writer.addFieldRef(className, name, descriptor);
+            } else {
+                writer.addMethodRef(className, name, descriptor);
+            }
+        }
+    }
+}